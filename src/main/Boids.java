@@ -1,17 +1,33 @@
 package main;
 
+import main.simulation.TrajectoryPlayer;
 import main.ui.BoidPanel;
+import main.ui.ReplayPanel;
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
 
+// With replay=<file>, plays back a recording from Headless record=<file> instead of
+// running a simulation.
 public class Boids {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        TrajectoryPlayer player = null;
+        for (String arg : args) {
+            if (!arg.startsWith("replay=")) {
+                System.err.println("Unknown argument '" + arg + "', expected replay=<file>");
+                System.exit(2);
+            }
+            player = new TrajectoryPlayer(Path.of(arg.substring("replay=".length())));
+        }
+        TrajectoryPlayer replay = player;
+
         SwingUtilities.invokeLater(() -> {
-            JFrame frame = new JFrame("Boids Simulation");
+            JFrame frame = new JFrame(replay != null ? "Boids Replay" : "Boids Simulation");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setResizable(false);
             
-            BoidPanel boidPanel = new BoidPanel();
-            frame.add(boidPanel);
+            JPanel panel = replay != null ? new ReplayPanel(replay) : new BoidPanel();
+            frame.add(panel);
             
             frame.pack();
             frame.setLocationRelativeTo(null);
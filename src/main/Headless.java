@@ -0,0 +1,321 @@
+package main;
+
+import main.behavior.BehaviorStrategy;
+import main.behavior.CrashAvoidanceBehavior;
+import main.behavior.FlockBehavior;
+import main.model.BoidType;
+import main.model.FlockState;
+import main.model.Precision;
+import main.simulation.Checkpoint;
+import main.simulation.FlockSimulation;
+import main.simulation.PrecisionDrift;
+import main.simulation.RandomSource;
+import main.simulation.TrajectoryRecorder;
+import main.spatial.SpatialIndexes;
+
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Runs a simulation without Swing or java.awt, for batch runs on headless servers.
+// Parameters are key=value, e.g.
+//
+//   java -cp build main.Headless boids=50000 index=grid behavior=flock steps=2000 seed=7
+//
+// save=<file> writes a checkpoint after the run; load=<file> starts from one instead of
+// spawning, taking world size, boids, index, radius and precision from the file.
+// record=<file> records every frame for replay with main.Boids replay=<file>.
+//
+// precision=float or fixed16 rounds the state as that storage would; drift=true also
+// steps an unrounded copy and reports the drift between them.
+public class Headless {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("width", "1200");
+        DEFAULTS.put("height", "800");
+        DEFAULTS.put("boids", "1000");
+        DEFAULTS.put("index", "grid");
+        DEFAULTS.put("behavior", "flock");
+        DEFAULTS.put("periodic", "false");
+        DEFAULTS.put("radius", "50");
+        DEFAULTS.put("k", "0");
+        DEFAULTS.put("pairs", "false");
+        DEFAULTS.put("skin", "0");
+        DEFAULTS.put("steps", "1000");
+        DEFAULTS.put("seed", "42");
+        DEFAULTS.put("threads", "1");
+        DEFAULTS.put("report", "0");
+        DEFAULTS.put("metrics", "false");
+        DEFAULTS.put("jfr", "");
+        DEFAULTS.put("load", "");
+        DEFAULTS.put("save", "");
+        DEFAULTS.put("record", "");
+        DEFAULTS.put("precision", "double");
+        DEFAULTS.put("drift", "false");
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> params = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+                System.err.println("Unknown argument '" + arg + "', expected key=value with key one of " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int steps = Integer.parseInt(params.get("steps"));
+        int report = Integer.parseInt(params.get("report"));
+        boolean restored = !params.get("load").isEmpty();
+        boolean drift = Boolean.parseBoolean(params.get("drift"));
+
+        FlockSimulation simulation = restored ? restore(params) : create(params);
+        configure(simulation, params, restored);
+        simulation.setPrecision(Precision.parse(params.get("precision")));
+        // Set up the same way, so both start from the same flock before it is rounded.
+        FlockSimulation reference = null;
+        if (drift) {
+            reference = restored ? restore(params) : create(params);
+            configure(reference, params, restored);
+            reference.setPrecision(Precision.DOUBLE);
+        }
+        boolean metrics = Boolean.parseBoolean(params.get("metrics"));
+        simulation.setInstrumented(metrics);
+
+        Recording recording = startRecording(params.get("jfr"));
+        TrajectoryRecorder trajectory = startTrajectory(simulation, params.get("record"));
+        System.out.println("Running " + params);
+
+        double[] frameMs = new double[steps];
+        double indexMs = 0;
+        double stepMs = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            simulation.update();
+            frameMs[i] = simulation.getLastIterationTimeMs();
+            indexMs += simulation.getLastIndexTimeMs();
+            stepMs += simulation.getLastStepTimeMs();
+            if (trajectory != null) {
+                trajectory = recordFrame(trajectory, simulation, params.get("record"));
+            }
+            if (reference != null) {
+                reference.update();
+            }
+            if (report > 0 && (i + 1) % report == 0) {
+                System.out.println(String.format(Locale.ROOT, "step %d: %.3f ms", i + 1, frameMs[i])
+                        + (reference != null ? "  " + PrecisionDrift.between(reference, simulation).describe() : ""));
+            }
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        stopRecording(recording, params.get("jfr"));
+        stopTrajectory(trajectory, simulation, params.get("record"));
+
+        if (!params.get("save").isEmpty()) {
+            save(simulation, params);
+        }
+
+        printSummary(simulation, frameMs, indexMs, stepMs, wallSeconds);
+        if (reference != null) {
+            System.out.println("Drift vs double: " + PrecisionDrift.between(reference, simulation).describe());
+        }
+        if (metrics) {
+            System.out.println();
+            simulation.getMetrics().describe().forEach(System.out::println);
+        }
+    }
+
+    private static void configure(FlockSimulation simulation, Map<String, String> params, boolean restored) {
+        int threads = Integer.parseInt(params.get("threads"));
+        simulation.setMaxNeighbors(Integer.parseInt(params.get("k")));
+        simulation.setPairwise(Boolean.parseBoolean(params.get("pairs")));
+        simulation.setNeighborSkin(Double.parseDouble(params.get("skin")));
+        simulation.setBehavior(behavior(params.get("behavior")));
+        simulation.setRandomSource(new RandomSource(Long.parseLong(params.get("seed"))));
+        if (threads > 1) {
+            simulation.setDoubleBuffered(true);
+            simulation.setParallelism(threads);
+        }
+        if (!restored) {
+            simulation.setBoidCount(Integer.parseInt(params.get("boids")));
+        }
+    }
+
+    private static FlockSimulation create(Map<String, String> params) {
+        int width = Integer.parseInt(params.get("width"));
+        int height = Integer.parseInt(params.get("height"));
+        FlockSimulation simulation = new FlockSimulation(width, height);
+        simulation.setSpatialIndex(SpatialIndexes.create(params.get("index"), width, height,
+                Boolean.parseBoolean(params.get("periodic"))));
+        simulation.setNeighborRadius(Double.parseDouble(params.get("radius")));
+        return simulation;
+    }
+
+    // Overwrites the parameters the checkpoint decides, so the run is reported as it is.
+    private static FlockSimulation restore(Map<String, String> params) {
+        String file = params.get("load");
+        long start = System.nanoTime();
+        Checkpoint checkpoint;
+        try {
+            checkpoint = Checkpoint.read(Path.of(file));
+        } catch (IOException e) {
+            System.err.println("Could not load checkpoint " + file + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+        FlockSimulation simulation = checkpoint.getSimulation();
+        System.out.println(String.format(Locale.ROOT, "Loaded %d boids from %s in %.1f ms",
+                simulation.getBoidCount(), file, (System.nanoTime() - start) / 1e6));
+
+        params.put("width", Integer.toString(simulation.getWidth()));
+        params.put("height", Integer.toString(simulation.getHeight()));
+        params.put("boids", Integer.toString(simulation.getBoidCount()));
+        params.put("index", checkpoint.getIndexName());
+        params.put("periodic", Boolean.toString(checkpoint.isPeriodic()));
+        params.put("radius", Double.toString(simulation.getNeighborRadius()));
+        params.put("precision", simulation.getPrecision().name().toLowerCase(Locale.ROOT));
+        return simulation;
+    }
+
+    private static void save(FlockSimulation simulation, Map<String, String> params) {
+        String file = params.get("save");
+        long start = System.nanoTime();
+        try {
+            Checkpoint.write(Path.of(file), simulation, params.get("index"));
+            System.out.println(String.format(Locale.ROOT, "Saved %d boids to %s in %.1f ms",
+                    simulation.getBoidCount(), file, (System.nanoTime() - start) / 1e6));
+        } catch (IOException e) {
+            System.err.println("Could not save checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Records the simulation's own events, plus GC and CPU load for context, to the given file.
+    private static Recording startRecording(String file) {
+        if (file.isEmpty()) {
+            return null;
+        }
+        Recording recording = new Recording();
+        for (String event : new String[] {"main.simulation.Frame", "main.simulation.IndexUpdate",
+                "main.simulation.NeighborQuery", "jdk.GarbageCollection", "jdk.CPULoad"}) {
+            recording.enable(event);
+        }
+        recording.start();
+        return recording;
+    }
+
+    private static void stopRecording(Recording recording, String file) {
+        if (recording == null) {
+            return;
+        }
+        try {
+            recording.stop();
+            recording.dump(Path.of(file));
+            System.out.println("Wrote flight recording to " + file);
+        } catch (IOException e) {
+            System.err.println("Could not write flight recording to " + file + ": " + e.getMessage());
+        } finally {
+            recording.close();
+        }
+    }
+
+    // Records the starting state as frame 0, so frame n is the flock after n steps.
+    private static TrajectoryRecorder startTrajectory(FlockSimulation simulation, String file) {
+        if (file.isEmpty()) {
+            return null;
+        }
+        try {
+            TrajectoryRecorder recorder = new TrajectoryRecorder(Path.of(file), simulation.getWidth(),
+                    simulation.getHeight());
+            recorder.record(simulation);
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("Could not record to " + file + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    // Returns null, ending the recording but not the run, once recording has failed.
+    private static TrajectoryRecorder recordFrame(TrajectoryRecorder recorder, FlockSimulation simulation,
+                                                  String file) {
+        try {
+            recorder.record(simulation);
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("Stopped recording to " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void stopTrajectory(TrajectoryRecorder recorder, FlockSimulation simulation, String file) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.close();
+            System.out.println(String.format(Locale.ROOT,
+                    "Recorded %d frames to %s: %.1f MB, %.2f bytes per boid and frame, waited %.1f ms for the writer",
+                    recorder.getFrameCount(), file, recorder.getBytesWritten() / 1e6,
+                    (double) recorder.getBytesWritten() / Math.max(1, recorder.getFrameCount() * simulation.getBoidCount()),
+                    recorder.getWaitNanos() / 1e6));
+        } catch (IOException e) {
+            System.err.println("Could not finish recording to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static BehaviorStrategy behavior(String name) {
+        return switch (name) {
+            case "flock" -> new FlockBehavior();
+            case "crash" -> new CrashAvoidanceBehavior();
+            default -> throw new IllegalArgumentException("Unknown behavior '" + name + "', expected flock or crash");
+        };
+    }
+
+    private static void printSummary(FlockSimulation simulation, double[] frameMs, double indexMs, double stepMs,
+                                     double wallSeconds) {
+        int steps = frameMs.length;
+        double totalMs = Arrays.stream(frameMs).sum();
+        double[] sorted = frameMs.clone();
+        Arrays.sort(sorted);
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "Steps:           %d in %.3f s (%.1f steps/s)",
+                steps, wallSeconds, steps / wallSeconds));
+        if (steps > 0) {
+            System.out.println(String.format(Locale.ROOT, "Frame time (ms): mean %.3f  p50 %.3f  p90 %.3f  p99 %.3f  max %.3f",
+                    totalMs / steps, percentile(sorted, 0.50), percentile(sorted, 0.90),
+                    percentile(sorted, 0.99), sorted[steps - 1]));
+            System.out.println(String.format(Locale.ROOT, "Index phase:     mean %.3f ms  total %.1f ms  (%.1f%%)",
+                    indexMs / steps, indexMs, 100 * indexMs / totalMs));
+            System.out.println(String.format(Locale.ROOT, "Step phase:      mean %.3f ms  total %.1f ms  (%.1f%%)",
+                    stepMs / steps, stepMs, 100 * stepMs / totalMs));
+        }
+
+        if (simulation.getNeighborSkin() > 0) {
+            System.out.println(String.format(Locale.ROOT, "Neighbor lists:  rebuilt %d times in %d steps (skin %.1f)",
+                    simulation.getNeighborListBuilds(), steps, simulation.getNeighborSkin()));
+        }
+
+        FlockState state = simulation.getState();
+        double speed = 0;
+        for (int i = 0; i < state.size(); i++) {
+            speed += Math.sqrt(state.vx()[i] * state.vx()[i] + state.vy()[i] * state.vy()[i]);
+        }
+        System.out.println(String.format(Locale.ROOT, "Mean speed:      %.4f", state.size() > 0 ? speed / state.size() : 0));
+        for (BoidType type : BoidType.values()) {
+            System.out.println(String.format(Locale.ROOT, "%-16s %d", type + ":", simulation.getCountByType(type)));
+        }
+    }
+
+    private static double percentile(double[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
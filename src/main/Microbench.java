@@ -1,61 +1,456 @@
 package main;
 
+import main.model.FlockState;
+import main.simulation.Checkpoint;
 import main.simulation.FlockSimulation;
-import main.spatial.*;
+import main.spatial.DistanceFilters;
+import main.spatial.SpatialIndexes;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// JMH-style benchmark harness: each configuration runs in forked JVMs with time-based
+// warm-up and measurement, and reports error bars, allocation and GC. Parameters are
+// key=value[,value...], e.g.
+//
+//   java -cp build main.Microbench index=grid,kdtree boids=1000,100000 radius=30
+//        distribution=uniform,clustered forks=2 json=results.json
+//
+// distribution=checkpoint:<file> starts from a flock saved by Headless save=<file>.
+// filter=scalar,vector needs --add-modules jdk.incubator.vector. Forks inherit only
+// module, heap and collector options; pass others as -J<option>. Allocation is summed
+// over all of a fork's threads.
 public class Microbench {
 
-    private static final int WARMUP_ITERATIONS = 50;
-    private static final int MEASUREMENT_ITERATIONS = 200;
-    private static final int[] BOID_COUNTS = { 50, 100, 200, 500, 1000 };
-    private static final double[] SEARCH_RADIUS = { 30.0, 75.0, 150.0 };
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
 
-    public static void main(String[] args) {
+    static {
+        DEFAULTS.put("index", String.join(",", SpatialIndexes.names()));
+        DEFAULTS.put("boids", "50,100,200,500,1000");
+        DEFAULTS.put("radius", "30,75,150");
+        DEFAULTS.put("distribution", "uniform");
+        DEFAULTS.put("filter", DistanceFilters.current().getName());
+        DEFAULTS.put("world", "1200x800");
+        DEFAULTS.put("threads", "1");
+        DEFAULTS.put("forks", "1");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("measure", "10");
+        DEFAULTS.put("iterationMs", "200");
+        DEFAULTS.put("seed", "42");
+        DEFAULTS.put("json", "");
+    }
 
-        for (double radius : SEARCH_RADIUS) {
-            System.out.println("\n--- Search Radius: " + radius + " pixels ---");
-            System.out.println("Boids\tNaive\t\tSpatialHash\tKD-Tree\t\tQuadTree");
+    private static final String FORK_MARKER = "--fork";
+    private static final String CHECKPOINT_PREFIX = "checkpoint:";
+    private static final String RESULT_PREFIX = "#RESULT ";
+    private static final String JVM_OPTION_PREFIX = "-J";
+    private static final List<String> INHERITED_JVM_OPTIONS = List.of(
+            "--add-modules", "-Xms", "-Xmx", "-XX:+UseSerialGC", "-XX:+UseParallelGC", "-XX:+UseG1GC", "-XX:+UseZGC");
 
-            for (int boidCount : BOID_COUNTS) {
-                System.out.print(boidCount + "\t");
+    // Written after every iteration so the JIT cannot treat the simulated state as dead.
+    private static volatile double sink;
 
-                double naiveTime = runBenchmark(new NaiveSpatialIndex(), boidCount, radius);
-                System.out.print(String.format("%.3f ms\t", naiveTime));
+    private record Config(String index, int boids, double radius, String distribution, String filter,
+                          int width, int height, int threads, int warmup, int measure,
+                          long iterationMs, long seed) {
 
-                double hashTime = runBenchmark(new SpatialHashIndex(1200, 800, 50.0), boidCount, radius);
-                System.out.print(String.format("%.3f ms\t", hashTime));
+        String encode() {
+            return String.join(";", index, Integer.toString(boids), Double.toString(radius), distribution, filter,
+                    Integer.toString(width), Integer.toString(height), Integer.toString(threads),
+                    Integer.toString(warmup), Integer.toString(measure), Long.toString(iterationMs),
+                    Long.toString(seed));
+        }
 
-                double kdTime = runBenchmark(new KDTreeSpatialIndex(), boidCount, radius);
-                System.out.print(String.format("%.3f ms\t", kdTime));
+        static Config decode(String text) {
+            String[] f = text.split(";");
+            return new Config(f[0], Integer.parseInt(f[1]), Double.parseDouble(f[2]), f[3], f[4],
+                    Integer.parseInt(f[5]), Integer.parseInt(f[6]), Integer.parseInt(f[7]),
+                    Integer.parseInt(f[8]), Integer.parseInt(f[9]), Long.parseLong(f[10]), Long.parseLong(f[11]));
+        }
+    }
 
-                double quadTime = runBenchmark(new QuadTreeSpatialIndex(1200, 800), boidCount, radius);
-                System.out.println(String.format("%.3f ms", quadTime));
+    // One fork's measurement: per-iteration milliseconds per frame plus totals for the
+    // whole measurement phase.
+    private record ForkResult(double[] msPerFrame, long frames, long nanos, long allocatedBytes,
+                              long gcCount, long gcTimeMs) {
 
+        String encode() {
+            StringBuilder sb = new StringBuilder();
+            for (double ms : msPerFrame) {
+                sb.append(ms).append(',');
             }
+            sb.setLength(Math.max(0, sb.length() - 1));
+            return sb + ";" + frames + ";" + nanos + ";" + allocatedBytes + ";" + gcCount + ";" + gcTimeMs;
         }
 
+        static ForkResult decode(String text) {
+            String[] f = text.split(";");
+            String[] raw = f[0].isEmpty() ? new String[0] : f[0].split(",");
+            double[] ms = new double[raw.length];
+            for (int i = 0; i < raw.length; i++) {
+                ms[i] = Double.parseDouble(raw[i]);
+            }
+            return new ForkResult(ms, Long.parseLong(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]),
+                    Long.parseLong(f[4]), Long.parseLong(f[5]));
+        }
     }
 
-    private static double runBenchmark(SpatialIndex spatialIndex, int boidCount, double searchRadius) {
-        FlockSimulation simulation = new FlockSimulation(1200, 800);
-        simulation.setSpatialIndex(spatialIndex);
-        simulation.setNeighborRadius(searchRadius);
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals(FORK_MARKER)) {
+            System.out.println(RESULT_PREFIX + runFork(Config.decode(args[1])).encode());
+            return;
+        }
 
-        for (int i = 0; i < boidCount; i++) {
-            simulation.addBoid();
+        Map<String, String> params = new LinkedHashMap<>(DEFAULTS);
+        List<String> jvmOptions = new ArrayList<>();
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (INHERITED_JVM_OPTIONS.stream().anyMatch(arg::startsWith)) {
+                jvmOptions.add(arg);
+            }
         }
-        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
-            simulation.update();
+        for (String arg : args) {
+            if (arg.startsWith(JVM_OPTION_PREFIX)) {
+                jvmOptions.add(arg.substring(JVM_OPTION_PREFIX.length()));
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown argument '" + arg + "', expected one of " + DEFAULTS.keySet());
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        String[] world = params.get("world").split("x");
+        int width = Integer.parseInt(world[0]);
+        int height = Integer.parseInt(world[1]);
+        int forks = Integer.parseInt(params.get("forks"));
+
+        List<Config> configs = new ArrayList<>();
+        for (String index : params.get("index").split(",")) {
+            if (!SpatialIndexes.names().contains(index)) {
+                throw new IllegalArgumentException("Unknown index '" + index + "', expected one of " + SpatialIndexes.names());
+            }
+            for (String distribution : params.get("distribution").split(",")) {
+                for (String radius : params.get("radius").split(",")) {
+                    for (String boids : params.get("boids").split(",")) {
+                        for (String filter : params.get("filter").split(",")) {
+                            DistanceFilters.get(filter);
+                            configs.add(new Config(index, Integer.parseInt(boids), Double.parseDouble(radius),
+                                    distribution, filter, width, height, Integer.parseInt(params.get("threads")),
+                                    Integer.parseInt(params.get("warmup")), Integer.parseInt(params.get("measure")),
+                                    Long.parseLong(params.get("iterationMs")), Long.parseLong(params.get("seed"))));
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println("Allocation is summed over all threads of each fork.");
+        System.out.println(String.format(Locale.ROOT, "%-12s %-10s %-7s %8s %7s %20s %12s %14s %10s %5s",
+                "Index", "Dist", "Filter", "Boids", "Radius", "ms/frame", "frames/s", "alloc B/frame", "MB/s", "GCs"));
+
+        List<String> json = new ArrayList<>();
+        for (Config config : configs) {
+            List<ForkResult> results = new ArrayList<>();
+            if (forks == 0) {
+                results.add(runFork(config));
+            }
+            for (int fork = 0; fork < forks; fork++) {
+                results.add(fork(config, jvmOptions));
+            }
+            json.add(report(config, forks, results));
+        }
+
+        String jsonPath = params.get("json");
+        if (!jsonPath.isEmpty()) {
+            Files.writeString(Path.of(jsonPath), "[\n" + String.join(",\n", json) + "\n]\n", StandardCharsets.UTF_8);
+            System.out.println("Results written to " + jsonPath);
+        }
+    }
+
+    private static ForkResult fork(Config config, List<String> jvmOptions) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Microbench.class.getName());
+        command.add(FORK_MARKER);
+        command.add(config.encode());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ForkResult result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = ForkResult.decode(line.substring(RESULT_PREFIX.length()));
+                } else {
+                    System.out.println("  [fork] " + line);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || result == null) {
+            throw new IllegalStateException("Forked benchmark " + config + " failed with exit code " + exitCode);
+        }
+        return result;
+    }
+
+    private static ForkResult runFork(Config config) {
+        DistanceFilters.select(config.filter());
+        FlockSimulation simulation = new FlockSimulation(config.width(), config.height());
+        simulation.setSpatialIndex(SpatialIndexes.create(config.index(), config.width(), config.height()));
+        simulation.setNeighborRadius(config.radius());
+        if (config.threads() > 1) {
+            simulation.setDoubleBuffered(true);
+            simulation.setParallelism(config.threads());
+        }
+        simulation.setBoidCount(config.boids());
+        distribute(simulation.getState(), config);
+
+        for (int i = 0; i < config.warmup(); i++) {
+            runIteration(simulation, config.iterationMs());
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTimeMs();
+
+        double[] msPerFrame = new double[config.measure()];
+        long frames = 0;
+        long nanos = 0;
+        for (int i = 0; i < config.measure(); i++) {
+            long[] iteration = runIteration(simulation, config.iterationMs());
+            frames += iteration[0];
+            nanos += iteration[1];
+            msPerFrame[i] = iteration[1] / 1_000_000.0 / iteration[0];
         }
-        long startTime = System.nanoTime();
 
-        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+        return new ForkResult(msPerFrame, frames, nanos,
+                allocatedBytes() - allocatedBefore,
+                gcCount() - gcCountBefore, gcTimeMs() - gcTimeBefore);
+    }
+
+    // Runs whole frames until the iteration time has passed; a frame is never cut short.
+    private static long[] runIteration(FlockSimulation simulation, long iterationMs) {
+        long budget = iterationMs * 1_000_000L;
+        long frames = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
             simulation.update();
+            frames++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budget);
+
+        FlockState state = simulation.getState();
+        double checksum = 0;
+        for (int i = 0; i < state.size(); i++) {
+            checksum += state.x()[i] + state.y()[i];
+        }
+        sink = checksum;
+        return new long[] { frames, elapsed };
+    }
+
+    private static void distribute(FlockState state, Config config) {
+        if (config.distribution().startsWith(CHECKPOINT_PREFIX)) {
+            restore(state, config, config.distribution().substring(CHECKPOINT_PREFIX.length()));
+            return;
         }
+        Random random = new Random(config.seed());
+        int width = config.width();
+        int height = config.height();
+        double[] x = state.x();
+        double[] y = state.y();
+        double[] vx = state.vx();
+        double[] vy = state.vy();
+
+        switch (config.distribution()) {
+            case "uniform" -> {
+                for (int i = 0; i < state.size(); i++) {
+                    x[i] = random.nextDouble() * width;
+                    y[i] = random.nextDouble() * height;
+                    vx[i] = (random.nextDouble() - 0.5) * 2;
+                    vy[i] = (random.nextDouble() - 0.5) * 2;
+                }
+            }
+            case "clustered" -> {
+                int clusters = 20;
+                double spread = Math.min(width, height) * 0.03;
+                double[] centerX = new double[clusters];
+                double[] centerY = new double[clusters];
+                for (int c = 0; c < clusters; c++) {
+                    centerX[c] = random.nextDouble() * width;
+                    centerY[c] = random.nextDouble() * height;
+                }
+                for (int i = 0; i < state.size(); i++) {
+                    int c = random.nextInt(clusters);
+                    x[i] = clamp(centerX[c] + random.nextGaussian() * spread, width);
+                    y[i] = clamp(centerY[c] + random.nextGaussian() * spread, height);
+                    vx[i] = (random.nextDouble() - 0.5) * 2;
+                    vy[i] = (random.nextDouble() - 0.5) * 2;
+                }
+            }
+            case "flock" -> {
+                double spread = Math.min(width, height) * 0.05;
+                double heading = random.nextDouble() * 2 * Math.PI;
+                for (int i = 0; i < state.size(); i++) {
+                    double angle = heading + random.nextGaussian() * 0.2;
+                    x[i] = clamp(width / 2.0 + random.nextGaussian() * spread, width);
+                    y[i] = clamp(height / 2.0 + random.nextGaussian() * spread, height);
+                    vx[i] = Math.cos(angle) * 1.5;
+                    vy[i] = Math.sin(angle) * 1.5;
+                }
+            }
+            default -> throw new IllegalArgumentException(
+                    "Unknown distribution '" + config.distribution() + "', expected uniform, clustered, flock or "
+                            + CHECKPOINT_PREFIX + "<file>");
+        }
+    }
+
+    private static void restore(FlockState state, Config config, String file) {
+        FlockState saved;
+        try {
+            FlockSimulation simulation = Checkpoint.read(Path.of(file)).getSimulation();
+            if (simulation.getWidth() != config.width() || simulation.getHeight() != config.height()) {
+                throw new IllegalArgumentException("Checkpoint " + file + " is for a " + simulation.getWidth() + "x"
+                        + simulation.getHeight() + " world, not " + config.width() + "x" + config.height());
+            }
+            saved = simulation.getState();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load checkpoint " + file, e);
+        }
+        if (saved.size() < state.size()) {
+            throw new IllegalArgumentException("Checkpoint " + file + " has " + saved.size() + " boids, not "
+                    + state.size());
+        }
+        System.arraycopy(saved.x(), 0, state.x(), 0, state.size());
+        System.arraycopy(saved.y(), 0, state.y(), 0, state.size());
+        System.arraycopy(saved.vx(), 0, state.vx(), 0, state.size());
+        System.arraycopy(saved.vy(), 0, state.vy(), 0, state.size());
+        System.arraycopy(saved.type(), 0, state.type(), 0, state.size());
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(value, max));
+    }
 
-        long endTime = System.nanoTime();
+    // Bytes allocated by the fork's live threads. The step pool keeps its workers alive
+    // between frames, so none of them retire with their counts during a measurement.
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    // Prints the summary row and returns the configuration's JSON object. The error is
+    // the half-width of a 99.9% confidence interval under a normal approximation.
+    private static String report(Config config, int forks, List<ForkResult> results) {
+        List<Double> samples = new ArrayList<>();
+        long frames = 0, nanos = 0, allocated = 0, gcCount = 0, gcTime = 0;
+        for (ForkResult result : results) {
+            for (double ms : result.msPerFrame()) {
+                samples.add(ms);
+            }
+            frames += result.frames();
+            nanos += result.nanos();
+            allocated += result.allocatedBytes();
+            gcCount += result.gcCount();
+            gcTime += result.gcTimeMs();
+        }
+
+        double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        double variance = samples.stream().mapToDouble(s -> (s - mean) * (s - mean)).sum()
+                / Math.max(1, samples.size() - 1);
+        double error = samples.size() > 1 ? 3.291 * Math.sqrt(variance / samples.size()) : Double.NaN;
+        double framesPerSecond = frames / (nanos / 1e9);
+        double allocPerFrame = (double) allocated / frames;
+        double allocRate = allocated / (nanos / 1e9) / (1024 * 1024);
+
+        System.out.println(String.format(Locale.ROOT, "%-12s %-10s %-7s %8d %7.1f %10.3f +- %6.3f %12.1f %14.1f %10.2f %5d",
+                config.index(), config.distribution(), config.filter(), config.boids(), config.radius(), mean, error,
+                framesPerSecond, allocPerFrame, allocRate, gcCount));
+
+        StringBuilder raw = new StringBuilder();
+        for (ForkResult result : results) {
+            raw.append(raw.length() == 0 ? "[" : ", [");
+            for (int i = 0; i < result.msPerFrame().length; i++) {
+                raw.append(i == 0 ? "" : ", ").append(result.msPerFrame()[i]);
+            }
+            raw.append(']');
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("  {\n");
+        json.append("    \"benchmark\": \"main.Microbench.update\",\n");
+        json.append("    \"mode\": \"avgt\",\n");
+        json.append(String.format(Locale.ROOT, "    \"forks\": %d,%n", forks));
+        json.append(String.format(Locale.ROOT, "    \"threads\": %d,%n", config.threads()));
+        json.append(String.format(Locale.ROOT, "    \"warmupIterations\": %d,%n", config.warmup()));
+        json.append(String.format(Locale.ROOT, "    \"measurementIterations\": %d,%n", config.measure()));
+        json.append(String.format(Locale.ROOT, "    \"iterationTimeMs\": %d,%n", config.iterationMs()));
+        json.append("    \"params\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"index\": \"%s\",%n", config.index()));
+        json.append(String.format(Locale.ROOT, "      \"boids\": \"%d\",%n", config.boids()));
+        json.append(String.format(Locale.ROOT, "      \"radius\": \"%s\",%n", config.radius()));
+        json.append(String.format(Locale.ROOT, "      \"distribution\": \"%s\",%n", config.distribution()));
+        json.append(String.format(Locale.ROOT, "      \"filter\": \"%s\",%n", config.filter()));
+        json.append(String.format(Locale.ROOT, "      \"world\": \"%dx%d\",%n", config.width(), config.height()));
+        json.append(String.format(Locale.ROOT, "      \"seed\": \"%d\"%n", config.seed()));
+        json.append("    },\n");
+        json.append("    \"primaryMetric\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"score\": %s,%n", number(mean)));
+        json.append(String.format(Locale.ROOT, "      \"scoreError\": %s,%n", number(error)));
+        json.append("      \"scoreUnit\": \"ms/op\",\n");
+        json.append("      \"rawData\": [").append(raw).append("]\n");
+        json.append("    },\n");
+        json.append("    \"secondaryMetrics\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"thrpt\": { \"score\": %s, \"scoreUnit\": \"ops/s\" },%n", number(framesPerSecond)));
+        json.append(String.format(Locale.ROOT, "      \"gc.alloc.rate\": { \"score\": %s, \"scoreUnit\": \"MB/sec\" },%n", number(allocRate)));
+        json.append(String.format(Locale.ROOT, "      \"gc.alloc.rate.norm\": { \"score\": %s, \"scoreUnit\": \"B/op\", \"threads\": \"all\" },%n", number(allocPerFrame)));
+        json.append(String.format(Locale.ROOT, "      \"gc.count\": { \"score\": %d, \"scoreUnit\": \"counts\" },%n", gcCount));
+        json.append(String.format(Locale.ROOT, "      \"gc.time\": { \"score\": %d, \"scoreUnit\": \"ms\" }%n", gcTime));
+        json.append("    }\n");
+        json.append("  }");
+        return json.toString();
+    }
 
-        double totalTimeMs = (endTime - startTime) / 1_000_000.0;
-        return totalTimeMs / MEASUREMENT_ITERATIONS;
+    private static String number(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.6f", value) : "\"NaN\"";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package main.behavior;
+
+import main.model.BoidType;
+
+import java.util.Arrays;
+
+// Which strategy steers each BoidType; every boid of a type shares one instance.
+public class BehaviorRegistry {
+    private final BehaviorStrategy[] byType = new BehaviorStrategy[BoidType.values().length];
+
+    public BehaviorRegistry(BehaviorStrategy strategy) {
+        setAll(strategy);
+    }
+
+    public BehaviorStrategy get(BoidType type) {
+        return byType[type.ordinal()];
+    }
+
+    // Looks up a type by its ordinal, as FlockState stores it.
+    public BehaviorStrategy get(int ordinal) {
+        return byType[ordinal];
+    }
+
+    public void set(BoidType type, BehaviorStrategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("No strategy given for " + type);
+        }
+        byType[type.ordinal()] = strategy;
+    }
+
+    public void setAll(BehaviorStrategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("No strategy given");
+        }
+        Arrays.fill(byType, strategy);
+    }
+
+    // The strategy every type uses, or null when types differ.
+    public BehaviorStrategy getShared() {
+        for (BehaviorStrategy strategy : byType) {
+            if (strategy != byType[0]) {
+                return null;
+            }
+        }
+        return byType[0];
+    }
+}
@@ -7,4 +7,18 @@ import java.util.List;
 
 public interface BehaviorStrategy {
     Forces calculateForces(Boid boid, List<Boid> neighbors);
-}
\ No newline at end of file
+
+    // Single-pass entry point used by the simulation: begin() once per boid, accumulate()
+    // for every neighbor as the spatial index finds it, then finish() to leave the forces
+    // in the steering. The defaults collect the neighbors and fall back to calculateForces.
+    default void begin(Boid boid, Steering steering) {
+    }
+
+    default void accumulate(Boid boid, Boid neighbor, double distanceSquared, Steering steering) {
+        steering.neighbors.add(neighbor);
+    }
+
+    default void finish(Boid boid, Steering steering) {
+        steering.setForces(calculateForces(boid, steering.neighbors));
+    }
+}
@@ -5,9 +5,13 @@ import java.util.List;
 import main.model.Boid;
 import main.model.BoidType;
 import main.simulation.Forces;
-import main.simulation.Vector2D;
 
 public class CrashAvoidanceBehavior implements BehaviorStrategy {
+    private static final double CRASH_RADIUS_SQUARED = 8.0 * 8.0;
+    private static final double SEPARATION_RADIUS_SQUARED = 40 * 40;
+    private static final double FLOCK_RADIUS_SQUARED = 50 * 50;
+
+    private final FlockWeights weights = FlockWeights.standard();
 
     public double distanceTo(Boid current, Boid other) {
         double dx = current.getX() - other.getX();
@@ -15,39 +19,70 @@ public class CrashAvoidanceBehavior implements BehaviorStrategy {
         return Math.sqrt(dx * dx + dy * dy);
     }
 
-    private void crashDetector(Boid current, List<Boid> neighbors) {
+    @Override
+    public void begin(Boid boid, Steering steering) {
+        steering.skip = boid.getType() == BoidType.CRASHED;
+    }
 
-        for (Boid neighbor : neighbors) {
-            double distance = distanceTo(current, neighbor);
+    @Override
+    public void accumulate(Boid current, Boid neighbor, double distanceSquared, Steering steering) {
+        if (steering.skip) {
+            return;
+        }
 
-            if (distance < 8.0) {
-                current.setType(BoidType.CRASHED);
-                neighbor.setType(BoidType.CRASHED);
-            }
+        if (distanceSquared < CRASH_RADIUS_SQUARED) {
+            current.setType(BoidType.CRASHED);
+            neighbor.setType(BoidType.CRASHED);
         }
 
-    }
+        if (distanceSquared <= 0 || distanceSquared >= FLOCK_RADIUS_SQUARED) {
+            return;
+        }
 
-    private Vector2D calculateAlignment(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double avgVx = 0, avgVy = 0;
-        int count = 0;
+        boolean crashed = neighbor.getType() == BoidType.CRASHED;
 
-        for (Boid neighbor : neighbors) {
-            if (neighbor.getType() == BoidType.CRASHED) {
-                continue;
-            }
+        if (distanceSquared < SEPARATION_RADIUS_SQUARED) {
+            double distance = Math.sqrt(distanceSquared);
+            double diffX = (current.getX() - steering.neighborX) / distance;
+            double diffY = (current.getY() - steering.neighborY) / distance;
 
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 50) {
-                avgVx += neighbor.getVx();
-                avgVy += neighbor.getVy();
-                count++;
+            if (crashed) {
+                diffX *= 5;
+                diffY *= 5;
             }
+
+            steering.separationX += diffX;
+            steering.separationY += diffY;
+            steering.separationCount++;
         }
 
-        if (count > 0) {
-            avgVx /= count;
-            avgVy /= count;
+        if (crashed) {
+            return;
+        }
+
+        steering.alignmentX += neighbor.getVx();
+        steering.alignmentY += neighbor.getVy();
+        steering.alignmentCount++;
+
+        steering.cohesionX += steering.neighborX;
+        steering.cohesionY += steering.neighborY;
+        steering.cohesionCount++;
+    }
+
+    @Override
+    public void finish(Boid current, Steering steering) {
+        double separationX = 0, separationY = 0;
+        double alignmentX = 0, alignmentY = 0;
+        double cohesionX = 0, cohesionY = 0;
+
+        if (steering.skip) {
+            steering.setForces(separationX, separationY, alignmentX, alignmentY, cohesionX, cohesionY);
+            return;
+        }
+
+        if (steering.alignmentCount > 0) {
+            double avgVx = steering.alignmentX / steering.alignmentCount;
+            double avgVy = steering.alignmentY / steering.alignmentCount;
 
             double magnitude = Math.sqrt(avgVx * avgVx + avgVy * avgVy);
             if (magnitude > 0) {
@@ -63,33 +98,14 @@ public class CrashAvoidanceBehavior implements BehaviorStrategy {
                     steerY = (steerY / force) * 0.03;
                 }
 
-                return new Vector2D(steerX * weights.alignment(), steerY * weights.alignment());
-            }
-        }
-
-        return Vector2D.ZERO;
-    }
-
-    private Vector2D calculateCohesion(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double centerX = 0, centerY = 0;
-        int count = 0;
-
-        for (Boid neighbor : neighbors) {
-            if (neighbor.getType() == BoidType.CRASHED) {
-                continue;
-            }
-
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 50) {
-                centerX += neighbor.getX();
-                centerY += neighbor.getY();
-                count++;
+                alignmentX = steerX * weights.alignment();
+                alignmentY = steerY * weights.alignment();
             }
         }
 
-        if (count > 0) {
-            centerX /= count;
-            centerY /= count;
+        if (steering.cohesionCount > 0) {
+            double centerX = steering.cohesionX / steering.cohesionCount;
+            double centerY = steering.cohesionY / steering.cohesionCount;
 
             double steerX = centerX - current.getX();
             double steerY = centerY - current.getY();
@@ -108,41 +124,14 @@ public class CrashAvoidanceBehavior implements BehaviorStrategy {
                     steerY = (steerY / force) * 0.03;
                 }
 
-                return new Vector2D(steerX * weights.cohesion(), steerY * weights.cohesion());
+                cohesionX = steerX * weights.cohesion();
+                cohesionY = steerY * weights.cohesion();
             }
         }
 
-        return Vector2D.ZERO;
-    }
-
-    private Vector2D calculateSeparation(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double steerX = 0, steerY = 0;
-        int count = 0;
-
-        for (Boid neighbor : neighbors) {
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 40) {
-                double diffX = current.getX() - neighbor.getX();
-                double diffY = current.getY() - neighbor.getY();
-
-                diffX /= distance;
-                diffY /= distance;
-
-                if (neighbor.getType() == BoidType.CRASHED) {
-                    diffX *= 5;
-                    diffY *= 5;
-                }
-
-                steerX += diffX;
-                steerY += diffY;
-                count++;
-            }
-
-        }
-
-        if (count > 0) {
-            steerX /= count;
-            steerY /= count;
+        if (steering.separationCount > 0) {
+            double steerX = steering.separationX / steering.separationCount;
+            double steerY = steering.separationY / steering.separationCount;
 
             double magnitude = Math.sqrt(steerX * steerX + steerY * steerY);
             if (magnitude > 0) {
@@ -158,13 +147,15 @@ public class CrashAvoidanceBehavior implements BehaviorStrategy {
                     steerY = (steerY / force) * 0.05;
                 }
             }
+            separationX = steerX * weights.separation();
+            separationY = steerY * weights.separation();
         }
-        return new Vector2D(steerX * weights.separation(), steerY * weights.separation());
 
+        steering.setForces(separationX, separationY, alignmentX, alignmentY, cohesionX, cohesionY);
     }
 
     public FlockWeights getFlockWeights() {
-        return FlockWeights.standard();
+        return weights;
     }
 
     @Override
@@ -173,14 +164,14 @@ public class CrashAvoidanceBehavior implements BehaviorStrategy {
             return new Forces();
         }
 
-        FlockWeights weights = getFlockWeights();
-
-        crashDetector(boid, neighbors);
-
-        Vector2D separation = calculateSeparation(boid, neighbors, weights);
-        Vector2D alignment = calculateAlignment(boid, neighbors, weights);
-        Vector2D cohesion = calculateCohesion(boid, neighbors, weights);
-
-        return new Forces(separation, alignment, cohesion);
+        Steering steering = new Steering();
+        steering.begin(boid, this);
+        for (Boid neighbor : neighbors) {
+            double dx = boid.getX() - neighbor.getX();
+            double dy = boid.getY() - neighbor.getY();
+            steering.visit(neighbor, dx * dx + dy * dy);
+        }
+        steering.finish();
+        return steering.toForces();
     }
 }
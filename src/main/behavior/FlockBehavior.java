@@ -4,9 +4,12 @@ import java.util.List;
 
 import main.model.Boid;
 import main.simulation.Forces;
-import main.simulation.Vector2D;
 
-public class FlockBehavior implements BehaviorStrategy {
+public class FlockBehavior implements PairwiseBehavior {
+    private static final double SEPARATION_RADIUS_SQUARED = 25 * 25;
+    private static final double FLOCK_RADIUS_SQUARED = 50 * 50;
+
+    private final FlockWeights weights = FlockWeights.standard();
 
     public double distanceTo(Boid current, Boid other) {
         double dx = current.getX() - other.getX();
@@ -14,22 +17,73 @@ public class FlockBehavior implements BehaviorStrategy {
         return Math.sqrt(dx * dx + dy * dy);
     }
 
-    private Vector2D calculateAlignment(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double avgVx = 0, avgVy = 0;
-        int count = 0;
+    @Override
+    public void accumulate(Boid current, Boid neighbor, double distanceSquared, Steering steering) {
+        if (distanceSquared <= 0 || distanceSquared >= FLOCK_RADIUS_SQUARED) {
+            return;
+        }
+
+        steering.alignmentX += neighbor.getVx();
+        steering.alignmentY += neighbor.getVy();
+        steering.alignmentCount++;
 
-        for (Boid neighbor : neighbors) {
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 50) {
-                avgVx += neighbor.getVx();
-                avgVy += neighbor.getVy();
-                count++;
-            }
+        steering.cohesionX += steering.neighborX;
+        steering.cohesionY += steering.neighborY;
+        steering.cohesionCount++;
+
+        if (distanceSquared < SEPARATION_RADIUS_SQUARED) {
+            double distance = Math.sqrt(distanceSquared);
+            steering.separationX += (current.getX() - steering.neighborX) / distance;
+            steering.separationY += (current.getY() - steering.neighborY) / distance;
+            steering.separationCount++;
+        }
+    }
+
+    // The same sums accumulate() builds, for both ends of the pair at once.
+    @Override
+    public void accumulatePair(Boid a, Boid b, double dx, double dy, double distanceSquared, PairAccumulator sums) {
+        if (distanceSquared <= 0 || distanceSquared >= FLOCK_RADIUS_SQUARED) {
+            return;
+        }
+        int i = a.getIndex();
+        int j = b.getIndex();
+
+        sums.alignmentX[i] += b.getVx();
+        sums.alignmentY[i] += b.getVy();
+        sums.alignmentCount[i]++;
+        sums.alignmentX[j] += a.getVx();
+        sums.alignmentY[j] += a.getVy();
+        sums.alignmentCount[j]++;
+
+        sums.cohesionX[i] += a.getX() - dx;
+        sums.cohesionY[i] += a.getY() - dy;
+        sums.cohesionCount[i]++;
+        sums.cohesionX[j] += b.getX() + dx;
+        sums.cohesionY[j] += b.getY() + dy;
+        sums.cohesionCount[j]++;
+
+        if (distanceSquared < SEPARATION_RADIUS_SQUARED) {
+            double distance = Math.sqrt(distanceSquared);
+            double awayX = dx / distance;
+            double awayY = dy / distance;
+            sums.separationX[i] += awayX;
+            sums.separationY[i] += awayY;
+            sums.separationCount[i]++;
+            sums.separationX[j] -= awayX;
+            sums.separationY[j] -= awayY;
+            sums.separationCount[j]++;
         }
+    }
+
+    @Override
+    public void finish(Boid current, Steering steering) {
+        double separationX = 0, separationY = 0;
+        double alignmentX = 0, alignmentY = 0;
+        double cohesionX = 0, cohesionY = 0;
 
-        if (count > 0) {
-            avgVx /= count;
-            avgVy /= count;
+        if (steering.alignmentCount > 0) {
+            double avgVx = steering.alignmentX / steering.alignmentCount;
+            double avgVy = steering.alignmentY / steering.alignmentCount;
 
             double magnitude = Math.sqrt(avgVx * avgVx + avgVy * avgVy);
             if (magnitude > 0) {
@@ -45,29 +99,14 @@ public class FlockBehavior implements BehaviorStrategy {
                     steerY = (steerY / force) * 0.03;
                 }
 
-                return new Vector2D(steerX * weights.alignment(), steerY * weights.alignment());
-            }
-        }
-
-        return Vector2D.ZERO;
-    }
-
-    private Vector2D calculateCohesion(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double centerX = 0, centerY = 0;
-        int count = 0;
-
-        for (Boid neighbor : neighbors) {
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 50) {
-                centerX += neighbor.getX();
-                centerY += neighbor.getY();
-                count++;
+                alignmentX = steerX * weights.alignment();
+                alignmentY = steerY * weights.alignment();
             }
         }
 
-        if (count > 0) {
-            centerX /= count;
-            centerY /= count;
+        if (steering.cohesionCount > 0) {
+            double centerX = steering.cohesionX / steering.cohesionCount;
+            double centerY = steering.cohesionY / steering.cohesionCount;
 
             double steerX = centerX - current.getX();
             double steerY = centerY - current.getY();
@@ -86,58 +125,38 @@ public class FlockBehavior implements BehaviorStrategy {
                     steerY = (steerY / force) * 0.03;
                 }
 
-                return new Vector2D(steerX * weights.cohesion(), steerY * weights.cohesion());
+                cohesionX = steerX * weights.cohesion();
+                cohesionY = steerY * weights.cohesion();
             }
         }
 
-        return Vector2D.ZERO;
-    }
-
-    private Vector2D calculateSeparation(Boid current, List<Boid> neighbors, FlockWeights weights) {
-        double steerX = 0, steerY = 0;
-        int count = 0;
+        if (steering.separationCount > 0) {
+            double steerX = steering.separationX / steering.separationCount;
+            double steerY = steering.separationY / steering.separationCount;
 
-        for (Boid neighbor : neighbors) {
-            double distance = distanceTo(current, neighbor);
-            if (distance > 0 && distance < 25) {
-                double diffX = current.getX() - neighbor.getX();
-                double diffY = current.getY() - neighbor.getY();
-
-                diffX /= distance;
-                diffY /= distance;
-
-                steerX += diffX;
-                steerY += diffY;
-                count++;
-            }
-
-        }
-
-            if (count > 0) {
-                steerX /= count;
-                steerY /= count;
-
-                double magnitude = Math.sqrt(steerX * steerX + steerY * steerY);
-                if (magnitude > 0) {
-                    steerX = (steerX / magnitude) * 2.0;
-                    steerY = (steerY / magnitude) * 2.0;
+            double magnitude = Math.sqrt(steerX * steerX + steerY * steerY);
+            if (magnitude > 0) {
+                steerX = (steerX / magnitude) * 2.0;
+                steerY = (steerY / magnitude) * 2.0;
 
-                    steerX -= current.getVx();
-                    steerY -= current.getVy();
+                steerX -= current.getVx();
+                steerY -= current.getVy();
 
-                    double force = Math.sqrt(steerX * steerX + steerY * steerY);
-                    if (force > 0.03) {
-                        steerX = (steerX / force) * 0.03;
-                        steerY = (steerY / force) * 0.03;
-                    }
+                double force = Math.sqrt(steerX * steerX + steerY * steerY);
+                if (force > 0.03) {
+                    steerX = (steerX / force) * 0.03;
+                    steerY = (steerY / force) * 0.03;
                 }
             }
-        return new Vector2D(steerX * weights.separation(), steerY * weights.separation());
+            separationX = steerX * weights.separation();
+            separationY = steerY * weights.separation();
+        }
 
+        steering.setForces(separationX, separationY, alignmentX, alignmentY, cohesionX, cohesionY);
     }
 
     public FlockWeights getFlockWeights() {
-        return FlockWeights.standard();
+        return weights;
     }
 
     @Override
@@ -146,12 +165,14 @@ public class FlockBehavior implements BehaviorStrategy {
             return new Forces();
         }
 
-        FlockWeights weights = getFlockWeights();
-
-        Vector2D separation = calculateSeparation(boid, neighbors, weights);
-        Vector2D alignment = calculateAlignment(boid, neighbors, weights);
-        Vector2D cohesion = calculateCohesion(boid, neighbors, weights);
-
-        return new Forces(separation, alignment, cohesion);
+        Steering steering = new Steering();
+        steering.begin(boid, this);
+        for (Boid neighbor : neighbors) {
+            double dx = boid.getX() - neighbor.getX();
+            double dy = boid.getY() - neighbor.getY();
+            steering.visit(neighbor, dx * dx + dy * dy);
+        }
+        steering.finish();
+        return steering.toForces();
     }
 }
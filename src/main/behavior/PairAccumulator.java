@@ -0,0 +1,72 @@
+package main.behavior;
+
+import main.model.Boid;
+import main.spatial.PairVisitor;
+
+import java.util.Arrays;
+
+// Per-boid running sums for symmetric evaluation, laid out like Steering's fields but one
+// slot per boid index. The pair pass scatters each pair's contributions into both slots;
+// afterwards load() hands a boid's sums to a Steering for the behavior's finish().
+public class PairAccumulator implements PairVisitor {
+    double[] separationX = new double[0], separationY = new double[0];
+    int[] separationCount = new int[0];
+    double[] alignmentX = new double[0], alignmentY = new double[0];
+    int[] alignmentCount = new int[0];
+    double[] cohesionX = new double[0], cohesionY = new double[0];
+    int[] cohesionCount = new int[0];
+    int[] neighborCount = new int[0];
+
+    private PairwiseBehavior behavior;
+
+    // Clears the sums of the first size boids and sets the behavior that scores pairs.
+    public void begin(int size, PairwiseBehavior behavior) {
+        if (separationX.length < size) {
+            int capacity = Math.max(size, separationX.length * 2);
+            separationX = new double[capacity];
+            separationY = new double[capacity];
+            separationCount = new int[capacity];
+            alignmentX = new double[capacity];
+            alignmentY = new double[capacity];
+            alignmentCount = new int[capacity];
+            cohesionX = new double[capacity];
+            cohesionY = new double[capacity];
+            cohesionCount = new int[capacity];
+            neighborCount = new int[capacity];
+        }
+        Arrays.fill(separationX, 0, size, 0);
+        Arrays.fill(separationY, 0, size, 0);
+        Arrays.fill(separationCount, 0, size, 0);
+        Arrays.fill(alignmentX, 0, size, 0);
+        Arrays.fill(alignmentY, 0, size, 0);
+        Arrays.fill(alignmentCount, 0, size, 0);
+        Arrays.fill(cohesionX, 0, size, 0);
+        Arrays.fill(cohesionY, 0, size, 0);
+        Arrays.fill(cohesionCount, 0, size, 0);
+        Arrays.fill(neighborCount, 0, size, 0);
+        this.behavior = behavior;
+    }
+
+    @Override
+    public void visit(Boid a, Boid b, double dx, double dy, double distanceSquared) {
+        neighborCount[a.getIndex()]++;
+        neighborCount[b.getIndex()]++;
+        behavior.accumulatePair(a, b, dx, dy, distanceSquared, this);
+    }
+
+    void load(int index, Steering steering) {
+        steering.separationX = separationX[index];
+        steering.separationY = separationY[index];
+        steering.separationCount = separationCount[index];
+        steering.alignmentX = alignmentX[index];
+        steering.alignmentY = alignmentY[index];
+        steering.alignmentCount = alignmentCount[index];
+        steering.cohesionX = cohesionX[index];
+        steering.cohesionY = cohesionY[index];
+        steering.cohesionCount = cohesionCount[index];
+    }
+
+    int getNeighborCount(int index) {
+        return neighborCount[index];
+    }
+}
@@ -0,0 +1,9 @@
+package main.behavior;
+
+import main.model.Boid;
+
+// A behavior whose pair contributions depend only on the two boids, so it can be
+// evaluated once per unordered pair; accumulatePair() adds both boids' shares.
+public interface PairwiseBehavior extends BehaviorStrategy {
+    void accumulatePair(Boid a, Boid b, double dx, double dy, double distanceSquared, PairAccumulator sums);
+}
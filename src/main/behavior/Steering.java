@@ -0,0 +1,235 @@
+package main.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import main.model.Boid;
+import main.simulation.Forces;
+import main.simulation.Histogram;
+import main.simulation.NeighborQueryEvent;
+import main.simulation.Vector2D;
+import main.spatial.NeighborHeap;
+import main.spatial.NeighborSource;
+import main.spatial.NeighborVisitor;
+
+// Caller-owned scratch storage for one boid's steering. A simulation thread keeps one
+// instance and reuses it for every boid, so the fused kernels allocate nothing.
+public class Steering implements NeighborVisitor {
+    double separationX, separationY;
+    int separationCount;
+    double alignmentX, alignmentY;
+    int alignmentCount;
+    double cohesionX, cohesionY;
+    int cohesionCount;
+    boolean skip;
+    double neighborX, neighborY;
+
+    final List<Boid> neighbors = new ArrayList<>();
+
+    private Boid boid;
+    private BehaviorStrategy behavior;
+    private NeighborHeap nearest;
+
+    // Instrumentation, gathered only while timing is on: nanoseconds per phase summed
+    // over the boids this instance stepped, and how many neighbors each boid considered.
+    private boolean timing;
+    private long mark;
+    private long queryNanos;
+    private long behaviorNanos;
+    private long integrationNanos;
+    private int neighborCount;
+    private Histogram neighborCounts;
+
+    // One query in QUERY_SAMPLE_INTERVAL is wrapped in a JFR event, so recordings show
+    // the shape of the queries without paying for an event per boid.
+    private static final int QUERY_SAMPLE_INTERVAL = 1024;
+    private static final NeighborQueryEvent QUERY_EVENTS = new NeighborQueryEvent();
+    private int queriesUntilSample = QUERY_SAMPLE_INTERVAL;
+
+    public void begin(Boid boid, BehaviorStrategy behavior) {
+        this.boid = boid;
+        this.behavior = behavior;
+        separationX = separationY = 0;
+        alignmentX = alignmentY = 0;
+        cohesionX = cohesionY = 0;
+        separationCount = alignmentCount = cohesionCount = 0;
+        skip = false;
+        neighbors.clear();
+        neighborCount = 0;
+        if (timing) {
+            mark = System.nanoTime();
+        }
+        behavior.begin(boid, this);
+    }
+
+    @Override
+    public void visit(Boid neighbor, double distanceSquared) {
+        visit(neighbor, neighbor.getX(), neighbor.getY(), distanceSquared);
+    }
+
+    // Kernels read the neighbor's position from neighborX/neighborY rather than from the
+    // boid, so that on a periodic index they see the image nearest the current boid. The
+    // distance is measured again from that position: indices that query build-time copies
+    // report one that is stale once earlier boids have moved in a sequential step.
+    @Override
+    public void visit(Boid neighbor, double imageX, double imageY, double distanceSquared) {
+        neighborX = imageX;
+        neighborY = imageY;
+        neighborCount++;
+        double dx = boid.getX() - imageX;
+        double dy = boid.getY() - imageY;
+        behavior.accumulate(boid, neighbor, dx * dx + dy * dy, this);
+    }
+
+    // Feeds the current boid's neighbors to the behavior, nearest first when limited.
+    public void gather(NeighborSource neighborSource, double radius) {
+        if (--queriesUntilSample == 0) {
+            queriesUntilSample = QUERY_SAMPLE_INTERVAL;
+            if (QUERY_EVENTS.isEnabled()) {
+                NeighborQueryEvent event = new NeighborQueryEvent();
+                event.begin();
+                query(neighborSource, radius);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.indexName = neighborSource.getName();
+                    event.radius = radius;
+                    event.maxNeighbors = getMaxNeighbors();
+                    event.resultSize = neighborCount;
+                    event.commit();
+                }
+                return;
+            }
+        }
+        query(neighborSource, radius);
+    }
+
+    private void query(NeighborSource neighborSource, double radius) {
+        if (nearest == null) {
+            neighborSource.forEachNeighbor(boid, radius, this);
+        } else {
+            neighborSource.collectNearest(boid, radius, nearest);
+            nearest.forEachNearest(this);
+        }
+        if (timing) {
+            long now = System.nanoTime();
+            queryNanos += now - mark;
+            mark = now;
+        }
+    }
+
+    // Symmetric evaluation: the pair pass has already summed the boid's contributions, so
+    // this stands in for begin() and gather() and finishes the boid.
+    public void finish(Boid boid, BehaviorStrategy behavior, PairAccumulator sums) {
+        this.boid = boid;
+        this.behavior = behavior;
+        sums.load(boid.getIndex(), this);
+        skip = false;
+        neighborCount = sums.getNeighborCount(boid.getIndex());
+        if (timing) {
+            mark = System.nanoTime();
+        }
+        finish();
+    }
+
+    // Books time spent outside this instance, e.g. a shared pair pass, as query time.
+    public void addQueryNanos(long nanos) {
+        queryNanos += nanos;
+    }
+
+    public void finish() {
+        behavior.finish(boid, this);
+        if (timing) {
+            long now = System.nanoTime();
+            behaviorNanos += now - mark;
+            mark = now;
+        }
+    }
+
+    // Called once the boid's new position has been written, to close its timing.
+    public void endBoid() {
+        if (timing) {
+            integrationNanos += System.nanoTime() - mark;
+            neighborCounts.record(neighborCount);
+        }
+    }
+
+    public void setTiming(boolean timing) {
+        this.timing = timing;
+        if (timing && neighborCounts == null) {
+            neighborCounts = new Histogram();
+        }
+    }
+
+    public boolean isTiming() {
+        return timing;
+    }
+
+    public void resetTimings() {
+        queryNanos = behaviorNanos = integrationNanos = 0;
+        if (neighborCounts != null) {
+            neighborCounts.reset();
+        }
+    }
+
+    public long getQueryNanos() {
+        return queryNanos;
+    }
+
+    public long getBehaviorNanos() {
+        return behaviorNanos;
+    }
+
+    public long getIntegrationNanos() {
+        return integrationNanos;
+    }
+
+    public Histogram getNeighborCounts() {
+        return neighborCounts;
+    }
+
+    // With a limit, behaviors only see the k nearest neighbors inside the radius. Zero
+    // means no limit.
+    public void setMaxNeighbors(int maxNeighbors) {
+        if (maxNeighbors <= 0) {
+            nearest = null;
+        } else if (nearest == null || nearest.capacity() != maxNeighbors) {
+            nearest = new NeighborHeap(maxNeighbors);
+        }
+    }
+
+    public int getMaxNeighbors() {
+        return nearest == null ? 0 : nearest.capacity();
+    }
+
+    // After finish() the separation, alignment and cohesion fields hold the weighted forces.
+    void setForces(double separationX, double separationY, double alignmentX, double alignmentY,
+                   double cohesionX, double cohesionY) {
+        this.separationX = separationX;
+        this.separationY = separationY;
+        this.alignmentX = alignmentX;
+        this.alignmentY = alignmentY;
+        this.cohesionX = cohesionX;
+        this.cohesionY = cohesionY;
+    }
+
+    void setForces(Forces forces) {
+        setForces(forces.separation().x(), forces.separation().y(),
+                forces.alignment().x(), forces.alignment().y(),
+                forces.cohesion().x(), forces.cohesion().y());
+    }
+
+    public double getForceX() {
+        return separationX + alignmentX + cohesionX;
+    }
+
+    public double getForceY() {
+        return separationY + alignmentY + cohesionY;
+    }
+
+    public Forces toForces() {
+        return new Forces(
+                new Vector2D(separationX, separationY),
+                new Vector2D(alignmentX, alignmentY),
+                new Vector2D(cohesionX, cohesionY));
+    }
+}
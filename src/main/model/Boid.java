@@ -1,63 +1,108 @@
 package main.model;
 
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import main.behavior.BehaviorStrategy;
-import main.behavior.CrashAvoidanceBehavior;
 import main.behavior.FlockBehavior;
+import main.behavior.PairAccumulator;
+import main.behavior.Steering;
 import main.simulation.Forces;
+import main.spatial.NeighborSource;
 
 import java.awt.Graphics2D;
+import java.awt.Polygon;
 import java.awt.geom.AffineTransform;
 
 public class Boid {
-    private double x, y;
-    private double vx, vy;
-    private final int id;
-    private BoidType type;
-    private BehaviorStrategy behavior = new FlockBehavior(); // Sæt hvilken behavior man vil simulere her
+    private final FlockState state;
+    private final int index;
     private static final double MAX_SPEED = 2.0;
     private static final double MAX_FORCE = 0.03;
     private static final int BOID_SIZE = 8;
+    private static final int[] SHAPE_X = { BOID_SIZE, -BOID_SIZE / 2, -BOID_SIZE / 2 };
+    private static final int[] SHAPE_Y = { 0, BOID_SIZE / 2, -BOID_SIZE / 2 };
+    // FlockBehavior is stateless, so every boid updated without a strategy shares one.
+    private static final BehaviorStrategy DEFAULT_BEHAVIOR = new FlockBehavior();
 
     public Boid(int id, double x, double y) {
         this(id, x, y, BoidType.STANDARD);
     }
 
     public Boid(int id, double x, double y, BoidType type) {
-        this.id = id;
-        this.x = x;
-        this.y = y;
-        this.type = type;
-        this.vx = (Math.random() - 0.5) * 2;
-        this.vy = (Math.random() - 0.5) * 2;
+        this(new FlockState(1), 0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        state.add(id, x, y, (random.nextDouble() - 0.5) * 2, (random.nextDouble() - 0.5) * 2, type);
     }
 
+    public Boid(FlockState state, int index) {
+        this.state = state;
+        this.index = index;
+    }
+
+    // Steers with the default FlockBehavior, as every boid did before strategies were
+    // shared per type.
     public void update(List<Boid> neighbors, int width, int height) {
+        update(neighbors, DEFAULT_BEHAVIOR, width, height);
+    }
+
+    // Boids hold no strategy of their own; the caller passes the one for the boid's type.
+    public void update(List<Boid> neighbors, BehaviorStrategy behavior, int width, int height) {
         Forces forces = behavior.calculateForces(this, neighbors);
+        double forceX = forces.separation().x() + forces.alignment().x() + forces.cohesion().x();
+        double forceY = forces.separation().y() + forces.alignment().y() + forces.cohesion().y();
+        integrate(forceX, forceY, state.x(), state.y(), state.vx(), state.vy(), width, height);
+    }
 
-        vx += forces.separation().x() + forces.alignment().x() + forces.cohesion().x();
-        vy += forces.separation().y() + forces.alignment().y() + forces.cohesion().y();
+    public void update(NeighborSource neighborSource, double radius, BehaviorStrategy behavior, Steering steering,
+                       int width, int height) {
+        steer(neighborSource, radius, behavior, steering);
+        integrate(steering.getForceX(), steering.getForceY(), state.x(), state.y(), state.vx(), state.vy(), width, height);
+        steering.endBoid();
+    }
 
-        limitVelocity();
+    // Pair-wise evaluation has already summed this boid's neighbors. Every boid's sums
+    // were taken from frame t before any boid moved, so the new state is written in place.
+    public void update(PairAccumulator sums, BehaviorStrategy behavior, Steering steering, int width, int height) {
+        steering.finish(this, behavior, sums);
+        integrate(steering.getForceX(), steering.getForceY(), state.x(), state.y(), state.vx(), state.vy(), width, height);
+        steering.endBoid();
+    }
 
-        if (this.type != BoidType.CRASHED) {
-            x += vx;
-            y += vy;
-        }
+    // Reads frame t from the state and writes frame t+1 into its next buffers.
+    // Only this boid's slot is written, so boids can be stepped concurrently.
+    public void step(NeighborSource neighborSource, double radius, BehaviorStrategy behavior, Steering steering,
+                     int width, int height) {
+        steer(neighborSource, radius, behavior, steering);
+        integrate(steering.getForceX(), steering.getForceY(),
+                state.nextX(), state.nextY(), state.nextVx(), state.nextVy(), width, height);
+        steering.endBoid();
+    }
 
-        wrapAround(width, height);
+    private void steer(NeighborSource neighborSource, double radius, BehaviorStrategy behavior, Steering steering) {
+        steering.begin(this, behavior);
+        steering.gather(neighborSource, radius);
+        steering.finish();
     }
 
-    private void limitVelocity() {
+    private void integrate(double forceX, double forceY, double[] outX, double[] outY, double[] outVx, double[] outVy,
+                           int width, int height) {
+        double vx = state.vx()[index] + forceX;
+        double vy = state.vy()[index] + forceY;
+
         double speed = Math.sqrt(vx * vx + vy * vy);
         if (speed > MAX_SPEED) {
             vx = (vx / speed) * MAX_SPEED;
             vy = (vy / speed) * MAX_SPEED;
         }
-    }
 
-    private void wrapAround(int width, int height) {
+        double x = state.x()[index];
+        double y = state.y()[index];
+        if (getType() != BoidType.CRASHED) {
+            x += vx;
+            y += vy;
+        }
+
         if (x < 0)
             x = width;
         if (x > width)
@@ -66,50 +111,79 @@ public class Boid {
             y = height;
         if (y > height)
             y = 0;
+
+        Precision precision = state.getPrecision();
+        outX[index] = precision.roundPosition(x, width);
+        outY[index] = precision.roundPosition(y, height);
+        outVx[index] = precision.roundVelocity(vx, MAX_SPEED);
+        outVy[index] = precision.roundVelocity(vy, MAX_SPEED);
     }
 
     public void render(Graphics2D g2d) {
-        g2d.setColor(type.getColor());
+        render(g2d, state, index);
+    }
 
-        double angle = Math.atan2(vy, vx);
+    public static void render(Graphics2D g2d, FlockState state, int index) {
+        g2d.setColor(state.getType(index).getColor());
+
+        double angle = Math.atan2(state.vy()[index], state.vx()[index]);
         AffineTransform oldTransform = g2d.getTransform();
 
-        g2d.translate(x, y);
+        g2d.translate(state.x()[index], state.y()[index]);
         g2d.rotate(angle);
 
-        int[] xPoints = { BOID_SIZE, -BOID_SIZE / 2, -BOID_SIZE / 2 };
-        int[] yPoints = { 0, BOID_SIZE / 2, -BOID_SIZE / 2 };
-        g2d.fillPolygon(xPoints, yPoints, 3);
+        g2d.fillPolygon(SHAPE_X, SHAPE_Y, 3);
 
         g2d.setTransform(oldTransform);
     }
 
+    // The boid's outline pointing along +x, centered on its position.
+    public static Polygon getShape() {
+        return new Polygon(SHAPE_X, SHAPE_Y, 3);
+    }
+
+    public static int getSize() {
+        return BOID_SIZE;
+    }
+
+    public static double getMaxSpeed() {
+        return MAX_SPEED;
+    }
+
     public double getX() {
-        return x;
+        return state.x()[index];
     }
 
     public double getY() {
-        return y;
+        return state.y()[index];
     }
 
     public double getVx() {
-        return vx;
+        return state.vx()[index];
     }
 
     public double getVy() {
-        return vy;
+        return state.vy()[index];
     }
 
     public int getId() {
-        return id;
+        return state.id()[index];
     }
 
     public BoidType getType() {
-        return type;
+        return state.getType(index);
     }
 
     public void setType(BoidType type) {
-        this.type = type;
+        state.setType(index, type);
+    }
+
+    public FlockState getState() {
+        return state;
+    }
+
+    public int getIndex() {
+        return index;
     }
 
-}
\ No newline at end of file
+}
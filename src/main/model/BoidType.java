@@ -3,16 +3,32 @@ package main.model;
 import java.awt.Color;
 
 public enum BoidType {
-    STANDARD(Color.WHITE),
-    CRASHED(Color.RED);
+    STANDARD(0xFFFFFF),
+    CRASHED(0xFF0000);
 
-    private final Color color;
+    private final int rgb;
 
-    BoidType(Color color) {
-        this.color = color;
+    BoidType(int rgb) {
+        this.rgb = rgb;
     }
 
+    public int getRgb() {
+        return rgb;
+    }
+
+    // Colors are looked up through a holder class so that headless runs, which never
+    // render, do not load java.awt.Color and the AWT native libraries with it.
     public Color getColor() {
-        return color;
+        return Colors.BY_TYPE[ordinal()];
+    }
+
+    private static final class Colors {
+        static final Color[] BY_TYPE = new Color[values().length];
+
+        static {
+            for (BoidType type : values()) {
+                BY_TYPE[type.ordinal()] = new Color(type.rgb);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,193 @@
+package main.model;
+
+import java.util.Arrays;
+
+public class FlockState {
+    private static final BoidType[] TYPES = BoidType.values();
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private double[] x, y;
+    private double[] vx, vy;
+    private byte[] type;
+    private int[] id;
+    private int size;
+
+    private double[] nextX, nextY;
+    private double[] nextVx, nextVy;
+    private byte[] nextType;
+    private boolean stepping;
+    private Precision precision = Precision.DOUBLE;
+
+    public FlockState() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FlockState(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.vx = new double[capacity];
+        this.vy = new double[capacity];
+        this.type = new byte[capacity];
+        this.id = new int[capacity];
+    }
+
+    public int add(int id, double x, double y, double vx, double vy, BoidType type) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        this.id[index] = id;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        this.type[index] = (byte) type.ordinal();
+        return index;
+    }
+
+    // Extends the state to newSize slots. The new slots must be filled in by the caller.
+    public void grow(int newSize) {
+        if (newSize < size) {
+            throw new IllegalArgumentException("Cannot grow " + size + " boids to " + newSize);
+        }
+        ensureCapacity(newSize);
+        size = newSize;
+    }
+
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IllegalArgumentException("Cannot truncate " + size + " boids to " + newSize);
+        }
+        size = newSize;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length * 2);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        type = Arrays.copyOf(type, newCapacity);
+        id = Arrays.copyOf(id, newCapacity);
+    }
+
+    // Opens a double-buffered step: the current arrays stay readable as frame t
+    // while the next* arrays receive frame t+1, until swap() publishes them.
+    public void beginStep() {
+        if (nextX == null || nextX.length < x.length) {
+            nextX = new double[x.length];
+            nextY = new double[x.length];
+            nextVx = new double[x.length];
+            nextVy = new double[x.length];
+            nextType = new byte[x.length];
+        }
+        System.arraycopy(type, 0, nextType, 0, size);
+        stepping = true;
+    }
+
+    public void swap() {
+        double[] tmp = x;
+        x = nextX;
+        nextX = tmp;
+        tmp = y;
+        y = nextY;
+        nextY = tmp;
+        tmp = vx;
+        vx = nextVx;
+        nextVx = tmp;
+        tmp = vy;
+        vy = nextVy;
+        nextVy = tmp;
+        byte[] tmpType = type;
+        type = nextType;
+        nextType = tmpType;
+        stepping = false;
+    }
+
+    // Boid rounds what it stores to this precision; FlockSimulation.setPrecision() sets it
+    // and rounds the boids already stored.
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    public boolean isStepping() {
+        return stepping;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The arrays below may be replaced when the state grows, so callers should
+    // not hold on to them across calls to add().
+    public double[] x() {
+        return x;
+    }
+
+    public double[] y() {
+        return y;
+    }
+
+    public double[] vx() {
+        return vx;
+    }
+
+    public double[] vy() {
+        return vy;
+    }
+
+    public byte[] type() {
+        return type;
+    }
+
+    public int[] id() {
+        return id;
+    }
+
+    public double[] nextX() {
+        return nextX;
+    }
+
+    public double[] nextY() {
+        return nextY;
+    }
+
+    public double[] nextVx() {
+        return nextVx;
+    }
+
+    public double[] nextVy() {
+        return nextVy;
+    }
+
+    public BoidType getType(int index) {
+        return TYPES[type[index]];
+    }
+
+    // During a double-buffered step type changes only become visible after swap(),
+    // so every reader of frame t sees the same types regardless of thread timing.
+    public void setType(int index, BoidType boidType) {
+        if (stepping) {
+            nextType[index] = (byte) boidType.ordinal();
+        } else {
+            type[index] = (byte) boidType.ordinal();
+        }
+    }
+
+    public int countByType(BoidType boidType) {
+        byte ordinal = (byte) boidType.ordinal();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (type[i] == ordinal) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,49 @@
+package main.model;
+
+import java.util.Locale;
+
+// Rounding emulation of float or 16-bit fixed-point state: positions and velocities are
+// rounded to what such storage would hold, but FlockState keeps them in double[] and steps
+// compute in double. FIXED16 uses 65536 codes with a power-of-two step, so values are also
+// exact as floats: 1/32 px in a 1200 px world, 1/8192 px per step for velocities.
+public enum Precision {
+    DOUBLE, FLOAT, FIXED16;
+
+    private static final int MAX_CODE = 0xFFFF;
+
+    public static Precision parse(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown precision '" + name + "', expected double, float or fixed16");
+        }
+    }
+
+    // Positions lie in [0, extent].
+    public double roundPosition(double value, double extent) {
+        return round(value, 0, extent);
+    }
+
+    public double roundVelocity(double value, double maxSpeed) {
+        return round(value, -maxSpeed, maxSpeed);
+    }
+
+    private double round(double value, double min, double max) {
+        return switch (this) {
+            case DOUBLE -> value;
+            case FLOAT -> (float) value;
+            case FIXED16 -> {
+                double step = fixedStep(max - min);
+                double code = Math.rint((value - min) / step);
+                yield min + Math.max(0, Math.min(code, MAX_CODE)) * step;
+            }
+        };
+    }
+
+    // The smallest power of two that covers range with MAX_CODE steps.
+    private static double fixedStep(double range) {
+        double needed = range / MAX_CODE;
+        double step = Math.scalb(1.0, Math.getExponent(needed));
+        return step < needed ? step * 2 : step;
+    }
+}
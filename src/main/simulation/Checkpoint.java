@@ -0,0 +1,167 @@
+package main.simulation;
+
+import main.model.BoidType;
+import main.model.FlockState;
+import main.model.Precision;
+import main.spatial.SpatialIndexes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// A saved flock: world size, neighbor radius, index, precision and every boid. Stepping
+// options such as the behavior are not saved. Files are little-endian: a header padded
+// to 8 bytes, then the x, y, vx, vy, id and type arrays, each mapped separately.
+public final class Checkpoint {
+    private static final int MAGIC = 0x424F4944; // "BOID"
+    private static final int VERSION = 2;
+    // magic, version, width, height, count, flags, precision, radius, index name length.
+    // Version 1 had no precision and was always saved at double precision.
+    private static final int HEADER_BYTES = 40;
+    private static final int VERSION_1_HEADER_BYTES = 36;
+    private static final int BYTES_PER_BOID = 4 * Double.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final int PERIODIC = 1;
+
+    private final FlockSimulation simulation;
+    private final String indexName;
+    private final boolean periodic;
+
+    private Checkpoint(FlockSimulation simulation, String indexName, boolean periodic) {
+        this.simulation = simulation;
+        this.indexName = indexName;
+        this.periodic = periodic;
+    }
+
+    // indexName is the SpatialIndexes name the simulation's index was created with. Must
+    // not run concurrently with update().
+    public static void write(Path file, FlockSimulation simulation, String indexName) throws IOException {
+        FlockState state = simulation.getState();
+        int count = state.size();
+        byte[] name = indexName.getBytes(StandardCharsets.UTF_8);
+        long offset = dataStart(HEADER_BYTES, name.length);
+
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            map(channel, FileChannel.MapMode.READ_WRITE, 0, offset)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(simulation.getWidth())
+                    .putInt(simulation.getHeight())
+                    .putInt(count)
+                    .putInt(simulation.isPeriodic() ? PERIODIC : 0)
+                    .putInt(simulation.getPrecision().ordinal())
+                    .putDouble(simulation.getNeighborRadius())
+                    .putInt(name.length)
+                    .put(name);
+            for (double[] values : new double[][] {state.x(), state.y(), state.vx(), state.vy()}) {
+                map(channel, FileChannel.MapMode.READ_WRITE, offset, (long) count * Double.BYTES)
+                        .asDoubleBuffer().put(values, 0, count);
+                offset += (long) count * Double.BYTES;
+            }
+            map(channel, FileChannel.MapMode.READ_WRITE, offset, (long) count * Integer.BYTES)
+                    .asIntBuffer().put(state.id(), 0, count);
+            offset += (long) count * Integer.BYTES;
+            map(channel, FileChannel.MapMode.READ_WRITE, offset, count).put(state.type(), 0, count);
+        }
+    }
+
+    // Restores a new simulation with the saved world, radius, index, precision and boids.
+    // Boids keep the default behavior until setBehavior() is called.
+    public static Checkpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size < 2 * Integer.BYTES) {
+                throw new IOException(file + " is not a flock checkpoint: only " + size + " bytes");
+            }
+            ByteBuffer start = map(channel, FileChannel.MapMode.READ_ONLY, 0, 2 * Integer.BYTES);
+            if (start.getInt() != MAGIC) {
+                throw new IOException(file + " is not a flock checkpoint");
+            }
+            int version = start.getInt();
+            int headerBytes = switch (version) {
+                case 1 -> VERSION_1_HEADER_BYTES;
+                case VERSION -> HEADER_BYTES;
+                default -> throw new IOException(file + " has checkpoint version " + version + ", expected 1 to "
+                        + VERSION);
+            };
+            if (size < headerBytes) {
+                throw new IOException(file + " is truncated: only " + size + " bytes");
+            }
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 2 * Integer.BYTES,
+                    headerBytes - 2 * Integer.BYTES);
+            int width = header.getInt();
+            int height = header.getInt();
+            int count = header.getInt();
+            boolean periodic = (header.getInt() & PERIODIC) != 0;
+            int precisionCode = version == 1 ? Precision.DOUBLE.ordinal() : header.getInt();
+            if (precisionCode < 0 || precisionCode >= Precision.values().length) {
+                throw new IOException(file + " is corrupt: unknown precision " + precisionCode);
+            }
+            Precision precision = Precision.values()[precisionCode];
+            double radius = header.getDouble();
+            int nameLength = header.getInt();
+            if (count < 0 || nameLength < 0
+                    || size != dataStart(headerBytes, nameLength) + (long) count * BYTES_PER_BOID) {
+                throw new IOException(file + " is truncated or corrupt: " + size + " bytes for " + count + " boids");
+            }
+            byte[] name = new byte[nameLength];
+            map(channel, FileChannel.MapMode.READ_ONLY, headerBytes, nameLength).get(name);
+            String indexName = new String(name, StandardCharsets.UTF_8);
+
+            FlockSimulation simulation = new FlockSimulation(width, height);
+            simulation.setSpatialIndex(SpatialIndexes.create(indexName, width, height, periodic));
+            simulation.setNeighborRadius(radius);
+            simulation.resize(count);
+            FlockState state = simulation.getState();
+
+            long offset = dataStart(headerBytes, nameLength);
+            for (double[] values : new double[][] {state.x(), state.y(), state.vx(), state.vy()}) {
+                map(channel, FileChannel.MapMode.READ_ONLY, offset, (long) count * Double.BYTES)
+                        .asDoubleBuffer().get(values, 0, count);
+                offset += (long) count * Double.BYTES;
+            }
+            map(channel, FileChannel.MapMode.READ_ONLY, offset, (long) count * Integer.BYTES)
+                    .asIntBuffer().get(state.id(), 0, count);
+            offset += (long) count * Integer.BYTES;
+            map(channel, FileChannel.MapMode.READ_ONLY, offset, count).get(state.type(), 0, count);
+
+            byte[] types = state.type();
+            for (int i = 0; i < count; i++) {
+                if (types[i] < 0 || types[i] >= BoidType.values().length) {
+                    throw new IOException(file + " is corrupt: boid " + i + " has type " + types[i]);
+                }
+            }
+            // The saved values are already rounded, so this only tells the state and index.
+            simulation.setPrecision(precision);
+            return new Checkpoint(simulation, indexName, periodic);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size)
+            throws IOException {
+        return channel.map(mode, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long dataStart(int headerBytes, int nameLength) {
+        return (headerBytes + nameLength + 7) & ~7L;
+    }
+
+    public FlockSimulation getSimulation() {
+        return simulation;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public boolean isPeriodic() {
+        return periodic;
+    }
+}
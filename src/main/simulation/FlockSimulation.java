@@ -1,28 +1,75 @@
 package main.simulation;
 
+import main.behavior.BehaviorRegistry;
+import main.behavior.BehaviorStrategy;
+import main.behavior.FlockBehavior;
+import main.behavior.PairAccumulator;
+import main.behavior.PairwiseBehavior;
+import main.behavior.Steering;
 import main.model.Boid;
 import main.model.BoidType;
+import main.model.FlockState;
+import main.model.Precision;
 import main.spatial.*;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 public class FlockSimulation {
-    private final List<Boid> boids;
+    private final FlockState state;
+    private final ArrayList<Boid> boids;
     private SpatialIndex spatialIndex;
     private final int width;
     private final int height;
     private double neighborRadius = 50.0;
     private double lastIterationTimeMs = 0;
+    private double lastIndexTimeMs = 0;
+    private double lastStepTimeMs = 0;
+    private final BehaviorRegistry behaviors = new BehaviorRegistry(new FlockBehavior());
+    private boolean doubleBuffered = false;
+    private boolean pairwise = false;
+    private final PairAccumulator pairSums = new PairAccumulator();
+    private VerletNeighborList neighborList;
+    private long neighborListBuilds;
+    private boolean incrementalIndex = true;
+    private boolean indexStale = true;
+    // Whether the last index update relocated boids in place rather than rebuilding.
+    private boolean indexRefitted;
+    private ForkJoinPool pool;
+    private final Steering steering = new Steering();
+    private final List<Steering> workerSteerings = new CopyOnWriteArrayList<>();
+    private ThreadLocal<Steering> workerSteering = newWorkerSteering();
+    private int maxNeighbors;
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final LongAdder chunkAllocatedBytes = new LongAdder();
+    private final long[] phaseNanos = new long[FrameMetrics.Phase.values().length];
+    private boolean instrumented;
+    private RandomSource random = new RandomSource();
+
+    private static final int CHUNK_SIZE = 256;
+    // Never committed; they only tell update() whether a recording wants the events, so
+    // frames allocate none while JFR is off.
+    private static final FrameEvent FRAME_EVENTS = new FrameEvent();
+    private static final IndexUpdateEvent INDEX_EVENTS = new IndexUpdateEvent();
 
     public FlockSimulation(int width, int height) {
         this.width = width;
         this.height = height;
+        this.state = new FlockState();
         this.boids = new ArrayList<>();
         this.spatialIndex = new NaiveSpatialIndex();
     }
 
     public void setSpatialIndex(SpatialIndex spatialIndex) {
         this.spatialIndex = spatialIndex;
+        this.spatialIndex.setQueryRadius(neighborRadius);
+        this.spatialIndex.setPrecision(state.getPrecision());
+        this.indexStale = true;
     }
 
     public void addBoid() {
@@ -31,60 +78,442 @@ public class FlockSimulation {
 
     public void addBoid(BoidType type) {
         int id = boids.size();
-        double x = Math.random() * width;
-        double y = Math.random() * height;
-        boids.add(new Boid(id, x, y, type));
+        double x = random.nextDouble() * width;
+        double y = random.nextDouble() * height;
+        double vx = (random.nextDouble() - 0.5) * 2;
+        double vy = (random.nextDouble() - 0.5) * 2;
+        int index = state.add(id, x, y, vx, vy, type);
+        round(index, index + 1);
+        boids.add(new Boid(state, index));
+        indexStale = true;
+    }
+
+    // Steers every type with one shared strategy instance; a flocking behavior until set.
+    public void setBehavior(BehaviorStrategy behavior) {
+        behaviors.setAll(behavior);
+    }
+
+    // Steers boids of one type with their own strategy.
+    public void setBehavior(BoidType type, BehaviorStrategy behavior) {
+        behaviors.set(type, behavior);
+    }
+
+    public BehaviorRegistry getBehaviors() {
+        return behaviors;
     }
 
+    public void setRandomSource(RandomSource random) {
+        this.random = random;
+    }
+
+    public RandomSource getRandomSource() {
+        return random;
+    }
+
+    // Spawns or removes boids to reach count and gives every boid a fresh velocity. Each
+    // chunk draws from its own split stream, so the flock depends only on the seed.
     public void setBoidCount(int count) {
-        while (boids.size() < count) {
-            addBoid();
+        int firstNew = Math.min(state.size(), count);
+        resize(count);
+
+        SplittableRandom[] streams = new SplittableRandom[chunkCount(count)];
+        for (int chunk = 0; chunk < streams.length; chunk++) {
+            streams[chunk] = random.split();
         }
+        forEachChunk(count, (chunk, from, to) -> {
+            SplittableRandom stream = streams[chunk];
+            int[] ids = state.id();
+            double[] x = state.x();
+            double[] y = state.y();
+            double[] vx = state.vx();
+            double[] vy = state.vy();
+            for (int i = from; i < to; i++) {
+                ids[i] = i;
+                if (i >= firstNew) {
+                    x[i] = stream.nextDouble() * width;
+                    y[i] = stream.nextDouble() * height;
+                    state.setType(i, BoidType.STANDARD);
+                }
+                vx[i] = (stream.nextDouble() - 0.5) * 2;
+                vy[i] = (stream.nextDouble() - 0.5) * 2;
+            }
+            round(from, to);
+        });
+        indexStale = true;
+    }
+
+    // Adds or removes boids at the end to reach count. New slots are left for the caller
+    // to fill in before the next update().
+    void resize(int count) {
         while (boids.size() > count) {
             boids.remove(boids.size() - 1);
         }
+        if (count < state.size()) {
+            state.truncate(count);
+        } else {
+            state.grow(count);
+        }
+        boids.ensureCapacity(count);
+        for (int i = boids.size(); i < count; i++) {
+            boids.add(new Boid(state, i));
+        }
+        indexStale = true;
+    }
+
+    // Rounds stored positions and velocities to precision from now on, including the
+    // boids already stored.
+    public void setPrecision(Precision precision) {
+        state.setPrecision(precision);
+        spatialIndex.setPrecision(precision);
+        round(0, state.size());
+        indexStale = true;
+    }
+
+    public Precision getPrecision() {
+        return state.getPrecision();
+    }
+
+    private void round(int from, int to) {
+        Precision precision = state.getPrecision();
+        if (precision == Precision.DOUBLE) {
+            return;
+        }
+        double[] x = state.x();
+        double[] y = state.y();
+        double[] vx = state.vx();
+        double[] vy = state.vy();
+        for (int i = from; i < to; i++) {
+            x[i] = precision.roundPosition(x[i], width);
+            y[i] = precision.roundPosition(y[i], height);
+            vx[i] = precision.roundVelocity(vx[i], Boid.getMaxSpeed());
+            vy[i] = precision.roundVelocity(vy[i], Boid.getMaxSpeed());
+        }
+    }
+
+    // Caps how many neighbors each boid's behavior considers: the k nearest within the
+    // neighbor radius. Zero, the default, considers every neighbor in the radius.
+    public void setMaxNeighbors(int maxNeighbors) {
+        this.maxNeighbors = Math.max(0, maxNeighbors);
+        steering.setMaxNeighbors(this.maxNeighbors);
+    }
+
+    public int getMaxNeighbors() {
+        return maxNeighbors;
+    }
+
+    // When enabled, update() lets the spatial index relocate only the boids that moved
+    // since the previous frame instead of clearing and re-inserting every boid.
+    public void setIncrementalIndex(boolean incrementalIndex) {
+        this.incrementalIndex = incrementalIndex;
+        this.indexStale = true;
+    }
+
+    public boolean isIncrementalIndex() {
+        return incrementalIndex;
+    }
+
+    public void setDoubleBuffered(boolean doubleBuffered) {
+        this.doubleBuffered = doubleBuffered;
+    }
+
+    public boolean isDoubleBuffered() {
+        return doubleBuffered;
+    }
+
+    // Evaluates the behavior once per neighbor pair; every boid sees the same frame. Needs
+    // one PairwiseBehavior for every type and no neighbor cap, else boids step one by one.
+    public void setPairwise(boolean pairwise) {
+        this.pairwise = pairwise;
+    }
+
+    public boolean isPairwise() {
+        return pairwise;
+    }
+
+    // The pairwise behavior the frame can be stepped with, or null.
+    private PairwiseBehavior pairBehavior() {
+        if (pairwise && maxNeighbors == 0 && behaviors.getShared() instanceof PairwiseBehavior behavior) {
+            return behavior;
+        }
+        return null;
+    }
 
-        for (int i = 0; i < boids.size(); i++) {
-            Boid oldBoid = boids.get(i);
-            boids.set(i, new Boid(i, oldBoid.getX(), oldBoid.getY(), oldBoid.getType()));
+    // A positive skin steps from Verlet neighbor lists built with radius + skin, which
+    // last at least skin / 4 frames at MAX_SPEED 2. Zero turns them off.
+    public void setNeighborSkin(double skin) {
+        neighborList = skin > 0 ? new VerletNeighborList(skin, width, height) : null;
+        neighborListBuilds = 0;
+    }
+
+    public double getNeighborSkin() {
+        return neighborList != null ? neighborList.getSkin() : 0;
+    }
+
+    // How many times the neighbor lists have been rebuilt since the skin was set.
+    public long getNeighborListBuilds() {
+        return neighborListBuilds;
+    }
+
+    // Threads for spawning and double-buffered or pair-wise steps; 1 runs on the caller.
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        if (pool != null) {
+            pool.shutdown();
         }
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        workerSteerings.clear();
+        workerSteering = newWorkerSteering();
+    }
+
+    // Each thread that steps chunks keeps one Steering for the lifetime of the pool.
+    // Every boid resets it in begin(), so results do not depend on which thread ran it.
+    private ThreadLocal<Steering> newWorkerSteering() {
+        return ThreadLocal.withInitial(() -> {
+            Steering created = new Steering();
+            workerSteerings.add(created);
+            return created;
+        });
+    }
+
+    // Off by default: timing every phase costs a few System.nanoTime() calls per boid.
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getParallelism() {
+        return pool != null ? pool.getParallelism() : 1;
     }
 
     public void update() {
+        FrameEvent frameEvent = FRAME_EVENTS.isEnabled() ? new FrameEvent() : null;
+        IndexUpdateEvent indexEvent = INDEX_EVENTS.isEnabled() ? new IndexUpdateEvent() : null;
+        boolean timing = instrumented;
+        long allocatedBefore = timing ? currentThreadAllocatedBytes() : 0;
+        if (frameEvent != null) {
+            frameEvent.begin();
+        }
         long startTime = System.nanoTime();
 
-        spatialIndex.clear();
-        for (Boid boid : boids) {
-            spatialIndex.insert(boid);
+        if (indexEvent != null) {
+            indexEvent.begin();
         }
+        long builds = neighborListBuilds;
+        NeighborSource neighborSource = updateIndex(incrementalIndex && !indexStale);
+        boolean indexUpdated = neighborSource != neighborList || neighborListBuilds != builds;
+        if (indexEvent != null) {
+            indexEvent.end();
+        }
+        long indexTime = System.nanoTime();
+        long allocated = timing ? currentThreadAllocatedBytes() - allocatedBefore : 0;
 
-        for (Boid boid : boids) {
-            List<Boid> neighbors = spatialIndex.findNeighbors(boid, neighborRadius);
-            boid.update(neighbors, width, height);
+        PairwiseBehavior pairBehavior = pairBehavior();
+        if (pairBehavior != null) {
+            stepPairs(pairBehavior, neighborSource, timing);
+            if (timing) {
+                allocated += chunkAllocatedBytes.sumThenReset();
+            }
+        } else if (doubleBuffered) {
+            state.beginStep();
+            forEachChunk(boids.size(), (chunk, from, to) -> {
+                long chunkAllocatedBefore = timing ? currentThreadAllocatedBytes() : 0;
+                Steering chunkSteering = workerSteering.get();
+                chunkSteering.setMaxNeighbors(maxNeighbors);
+                chunkSteering.setTiming(timing);
+                for (int i = from; i < to; i++) {
+                    Boid boid = boids.get(i);
+                    boid.step(neighborSource, neighborRadius, behaviors.get(boid.getType()), chunkSteering,
+                            width, height);
+                }
+                if (timing) {
+                    chunkAllocatedBytes.add(currentThreadAllocatedBytes() - chunkAllocatedBefore);
+                }
+            });
+            state.swap();
+            allocated += chunkAllocatedBytes.sumThenReset();
+        } else {
+            steering.setTiming(timing);
+            for (Boid boid : boids) {
+                boid.update(neighborSource, neighborRadius, behaviors.get(boid.getType()), steering, width, height);
+            }
+            if (timing) {
+                allocated = currentThreadAllocatedBytes() - allocatedBefore;
+            }
         }
 
         long endTime = System.nanoTime();
         lastIterationTimeMs = (endTime - startTime) / 1_000_000.0;
+        lastIndexTimeMs = (indexTime - startTime) / 1_000_000.0;
+        lastStepTimeMs = (endTime - indexTime) / 1_000_000.0;
+        if (timing) {
+            recordMetrics(endTime - startTime, indexTime - startTime, endTime - indexTime, allocated);
+        }
+        if (indexEvent != null && indexUpdated) {
+            commitIndexEvent(indexEvent, indexRefitted);
+        }
+        if (frameEvent != null) {
+            frameEvent.end();
+            commitFrameEvent(frameEvent, !indexUpdated, indexTime - startTime, endTime - indexTime, timing);
+        }
+    }
+
+    // One pass over the index's pairs fills every boid's sums; the per-boid finish and
+    // integration that follow only touch the boid's own slot and run in parallel chunks.
+    private void stepPairs(PairwiseBehavior behavior, NeighborSource neighborSource, boolean timing) {
+        long pairsStart = timing ? System.nanoTime() : 0;
+        pairSums.begin(boids.size(), behavior);
+        neighborSource.forEachPair(boids, neighborRadius, pairSums);
+        if (timing) {
+            steering.setTiming(true);
+            steering.addQueryNanos(System.nanoTime() - pairsStart);
+        }
+
+        forEachChunk(boids.size(), (chunk, from, to) -> {
+            long chunkAllocatedBefore = timing ? currentThreadAllocatedBytes() : 0;
+            Steering chunkSteering = workerSteering.get();
+            chunkSteering.setTiming(timing);
+            for (int i = from; i < to; i++) {
+                boids.get(i).update(pairSums, behavior, chunkSteering, width, height);
+            }
+            if (timing) {
+                chunkAllocatedBytes.add(currentThreadAllocatedBytes() - chunkAllocatedBefore);
+            }
+        });
+    }
+
+    // Brings the index, or the neighbor lists once they go stale, up to date and returns
+    // what this frame's queries should use.
+    private NeighborSource updateIndex(boolean refit) {
+        if (neighborList != null && !indexStale && neighborList.isValid(boids, neighborRadius)) {
+            return neighborList;
+        }
+        if (refit) {
+            indexRefitted = spatialIndex.refit(boids);
+        } else {
+            spatialIndex.clear();
+            spatialIndex.insertAll(boids);
+            indexStale = false;
+            indexRefitted = false;
+        }
+        if (neighborList == null) {
+            return spatialIndex;
+        }
+        neighborList.rebuild(spatialIndex, boids, neighborRadius);
+        neighborListBuilds++;
+        return neighborList;
+    }
+
+    private void commitIndexEvent(IndexUpdateEvent indexEvent, boolean refit) {
+        if (indexEvent.shouldCommit()) {
+            indexEvent.indexName = spatialIndex.getName();
+            indexEvent.boidCount = boids.size();
+            indexEvent.refit = refit;
+            indexEvent.commit();
+        }
+    }
+
+    private void commitFrameEvent(FrameEvent frameEvent, boolean neighborListsReused, long indexNanos,
+                                  long stepNanos, boolean timing) {
+        if (frameEvent.shouldCommit()) {
+            frameEvent.boidCount = boids.size();
+            frameEvent.neighborListsReused = neighborListsReused;
+            frameEvent.neighborRadius = neighborRadius;
+            frameEvent.indexName = spatialIndex.getName();
+            frameEvent.parallelism = getParallelism();
+            frameEvent.indexBuild = indexNanos;
+            frameEvent.step = stepNanos;
+            if (timing) {
+                frameEvent.neighborQuery = phaseNanos[FrameMetrics.Phase.NEIGHBOR_QUERY.ordinal()];
+                frameEvent.behavior = phaseNanos[FrameMetrics.Phase.BEHAVIOR.ordinal()];
+                frameEvent.integration = phaseNanos[FrameMetrics.Phase.INTEGRATION.ordinal()];
+            }
+            frameEvent.commit();
+        }
+    }
+
+    // Steering phases are CPU time summed over threads; scale them to the step's wall time.
+    private void recordMetrics(long frameNanos, long indexNanos, long stepNanos, long allocated) {
+        long[] sums = new long[3];
+        for (Steering timed : workerSteerings) {
+            drainTimings(timed, sums);
+        }
+        drainTimings(steering, sums);
+        double query = sums[0], behaviorTime = sums[1], integration = sums[2];
+        double total = query + behaviorTime + integration;
+        phaseNanos[FrameMetrics.Phase.INDEX_BUILD.ordinal()] = indexNanos;
+        phaseNanos[FrameMetrics.Phase.NEIGHBOR_QUERY.ordinal()] = total > 0 ? Math.round(stepNanos * (query / total)) : 0;
+        phaseNanos[FrameMetrics.Phase.BEHAVIOR.ordinal()] = total > 0 ? Math.round(stepNanos * (behaviorTime / total)) : 0;
+        phaseNanos[FrameMetrics.Phase.INTEGRATION.ordinal()] = total > 0 ? Math.round(stepNanos * (integration / total)) : 0;
+        metrics.recordFrame(frameNanos, phaseNanos, allocated);
+    }
+
+    private void drainTimings(Steering timed, long[] sums) {
+        sums[0] += timed.getQueryNanos();
+        sums[1] += timed.getBehaviorNanos();
+        sums[2] += timed.getIntegrationNanos();
+        if (timed.getNeighborCounts() != null) {
+            metrics.recordNeighborCounts(timed.getNeighborCounts());
+        }
+        timed.resetTimings();
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
     }
 
     public List<Boid> getBoids() {
         return boids;
     }
 
+    public FlockState getState() {
+        return state;
+    }
+
     public String getSpatialIndexName() {
         return spatialIndex.getName();
     }
 
+    public boolean isPeriodic() {
+        return spatialIndex.isPeriodic();
+    }
+
     public double getLastIterationTimeMs() {
         return lastIterationTimeMs;
     }
 
+    public double getLastIndexTimeMs() {
+        return lastIndexTimeMs;
+    }
+
+    public double getLastStepTimeMs() {
+        return lastStepTimeMs;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
     public int getBoidCount() {
-        return boids.size();
+        return state.size();
     }
 
     public void setNeighborRadius(double radius) {
         this.neighborRadius = radius;
+        spatialIndex.setQueryRadius(radius);
+        indexStale = true;
     }
 
     public double getNeighborRadius() {
@@ -92,6 +521,55 @@ public class FlockSimulation {
     }
 
     public int getCountByType(BoidType type) {
-        return (int) boids.stream().filter(b -> b.getType() == type).count();
+        return state.countByType(type);
+    }
+
+    private static int chunkCount(int count) {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    // Runs body over [0, count) in fixed slices of CHUNK_SIZE, on the pool when there is
+    // one. Slice boundaries depend only on count, never on the number of threads.
+    private void forEachChunk(int count, ChunkBody body) {
+        ChunkTask task = new ChunkTask(count, 0, chunkCount(count), body);
+        if (pool != null) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkBody {
+        void run(int chunk, int from, int to);
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int count;
+        private final int firstChunk;
+        private final int lastChunk;
+        private final ChunkBody body;
+
+        ChunkTask(int count, int firstChunk, int lastChunk, ChunkBody body) {
+            this.count = count;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk <= 1) {
+                if (firstChunk < lastChunk) {
+                    int from = firstChunk * CHUNK_SIZE;
+                    body.run(firstChunk, from, Math.min(count, from + CHUNK_SIZE));
+                }
+                return;
+            }
+            int mid = (firstChunk + lastChunk) >>> 1;
+            invokeAll(new ChunkTask(count, firstChunk, mid, body), new ChunkTask(count, mid, lastChunk, body));
+        }
     }
-}
\ No newline at end of file
+}
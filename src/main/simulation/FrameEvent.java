@@ -0,0 +1,53 @@
+package main.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One FlockSimulation.update(). The finer phases are only filled in while the
+// simulation is instrumented; otherwise they are zero and only the step is timed.
+@Name("main.simulation.Frame")
+@Label("Simulation Frame")
+@Category("Boids")
+@Description("One simulation step with its phase durations")
+@StackTrace(false)
+class FrameEvent extends jdk.jfr.Event {
+    @Label("Boid Count")
+    int boidCount;
+
+    @Label("Neighbor Radius")
+    double neighborRadius;
+
+    @Label("Spatial Index")
+    String indexName;
+
+    @Label("Parallelism")
+    int parallelism;
+
+    @Label("Neighbor Lists Reused")
+    @Description("True if the frame stepped from cached Verlet lists without touching the index")
+    boolean neighborListsReused;
+
+    @Label("Index Build")
+    @Timespan(Timespan.NANOSECONDS)
+    long indexBuild;
+
+    @Label("Step")
+    @Timespan(Timespan.NANOSECONDS)
+    long step;
+
+    @Label("Neighbor Query")
+    @Timespan(Timespan.NANOSECONDS)
+    long neighborQuery;
+
+    @Label("Behavior")
+    @Timespan(Timespan.NANOSECONDS)
+    long behavior;
+
+    @Label("Integration")
+    @Timespan(Timespan.NANOSECONDS)
+    long integration;
+}
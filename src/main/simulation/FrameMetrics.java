@@ -0,0 +1,212 @@
+package main.simulation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Frame and phase latency histograms, neighbors per boid and bytes allocated per frame.
+// Recorded by the simulation thread; read by the UI overlay and over JMX.
+public class FrameMetrics implements FrameMetricsMXBean {
+    public enum Phase {
+        INDEX_BUILD("index build"),
+        // Includes the behavior's per-neighbor accumulation, which the fused kernels
+        // run inside the query and cannot be timed apart from it.
+        NEIGHBOR_QUERY("neighbor query"),
+        BEHAVIOR("behavior"),
+        INTEGRATION("integration");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final double MS_PER_NANO = 1e-6;
+
+    private final Histogram frameNanos = new Histogram();
+    private final Histogram[] phaseNanos = new Histogram[PHASES.length];
+    private final Histogram neighborCounts = new Histogram();
+    private final Histogram allocatedBytes = new Histogram();
+    private final long[] lastPhaseNanos = new long[PHASES.length];
+    private final long[] overBudgetByPhase = new long[PHASES.length];
+    private long lastFrameNanos;
+    private long lastAllocatedBytes;
+    private double budgetMs = 1000.0 / 60;
+    private long overBudgetFrames;
+    private String lastOverBudgetFrame = "";
+
+    public FrameMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new Histogram();
+        }
+    }
+
+    synchronized void recordFrame(long frameTime, long[] phaseTimes, long allocated) {
+        frameNanos.record(frameTime);
+        allocatedBytes.record(Math.max(0, allocated));
+        int slowest = 0;
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseNanos[i].record(phaseTimes[i]);
+            lastPhaseNanos[i] = phaseTimes[i];
+            if (phaseTimes[i] > phaseTimes[slowest]) {
+                slowest = i;
+            }
+        }
+        lastFrameNanos = frameTime;
+        lastAllocatedBytes = allocated;
+
+        if (frameTime * MS_PER_NANO > budgetMs) {
+            overBudgetFrames++;
+            overBudgetByPhase[slowest]++;
+            StringBuilder frame = new StringBuilder(String.format(Locale.ROOT, "frame %d: %.3f ms over %.3f ms budget;",
+                    frameNanos.getCount(), frameTime * MS_PER_NANO, budgetMs));
+            for (int i = 0; i < PHASES.length; i++) {
+                frame.append(String.format(Locale.ROOT, " %s %.3f ms", PHASES[i].getLabel(), phaseTimes[i] * MS_PER_NANO));
+            }
+            lastOverBudgetFrame = frame.toString();
+        }
+    }
+
+    synchronized void recordNeighborCounts(Histogram counts) {
+        neighborCounts.add(counts);
+    }
+
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("main.simulation:type=FrameMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register frame metrics '" + name + "'", e);
+        }
+    }
+
+    @Override
+    public synchronized long getFrameCount() {
+        return frameNanos.getCount();
+    }
+
+    @Override
+    public synchronized double getBudgetMs() {
+        return budgetMs;
+    }
+
+    @Override
+    public synchronized void setBudgetMs(double budgetMs) {
+        this.budgetMs = budgetMs;
+    }
+
+    @Override
+    public synchronized long getOverBudgetFrames() {
+        return overBudgetFrames;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getOverBudgetFramesByPhase() {
+        Map<String, Long> byPhase = new LinkedHashMap<>();
+        for (Phase phase : PHASES) {
+            byPhase.put(phase.getLabel(), overBudgetByPhase[phase.ordinal()]);
+        }
+        return byPhase;
+    }
+
+    @Override
+    public synchronized String getLastOverBudgetFrame() {
+        return lastOverBudgetFrame;
+    }
+
+    @Override
+    public synchronized MetricSummary getFrameTime() {
+        return new MetricSummary(frameNanos, MS_PER_NANO);
+    }
+
+    public synchronized MetricSummary getPhaseTime(Phase phase) {
+        return new MetricSummary(phaseNanos[phase.ordinal()], MS_PER_NANO);
+    }
+
+    @Override
+    public MetricSummary getIndexBuildTime() {
+        return getPhaseTime(Phase.INDEX_BUILD);
+    }
+
+    @Override
+    public MetricSummary getNeighborQueryTime() {
+        return getPhaseTime(Phase.NEIGHBOR_QUERY);
+    }
+
+    @Override
+    public MetricSummary getBehaviorTime() {
+        return getPhaseTime(Phase.BEHAVIOR);
+    }
+
+    @Override
+    public MetricSummary getIntegrationTime() {
+        return getPhaseTime(Phase.INTEGRATION);
+    }
+
+    @Override
+    public synchronized MetricSummary getNeighborCount() {
+        return new MetricSummary(neighborCounts, 1);
+    }
+
+    @Override
+    public synchronized MetricSummary getAllocatedBytes() {
+        return new MetricSummary(allocatedBytes, 1);
+    }
+
+    public synchronized double getLastFrameMs() {
+        return lastFrameNanos * MS_PER_NANO;
+    }
+
+    public synchronized double getLastPhaseMs(Phase phase) {
+        return lastPhaseNanos[phase.ordinal()] * MS_PER_NANO;
+    }
+
+    public synchronized long getLastAllocatedBytes() {
+        return lastAllocatedBytes;
+    }
+
+    @Override
+    public synchronized void reset() {
+        frameNanos.reset();
+        for (Histogram histogram : phaseNanos) {
+            histogram.reset();
+        }
+        neighborCounts.reset();
+        allocatedBytes.reset();
+        Arrays.fill(overBudgetByPhase, 0);
+        overBudgetFrames = 0;
+        lastOverBudgetFrame = "";
+    }
+
+    // Human-readable summary, one line per metric, for the overlay and batch reports.
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-15s last %8.3f  %s", "frame (ms)", getLastFrameMs(), getFrameTime()));
+        for (Phase phase : PHASES) {
+            lines.add(String.format(Locale.ROOT, "%-15s last %8.3f  %s", phase.getLabel(), getLastPhaseMs(phase),
+                    getPhaseTime(phase)));
+        }
+        MetricSummary neighbors = getNeighborCount();
+        lines.add(String.format(Locale.ROOT, "%-15s p50 %.0f  p99 %.0f  max %.0f  mean %.1f", "neighbors",
+                neighbors.getP50(), neighbors.getP99(), neighbors.getMax(), neighbors.getMean()));
+        MetricSummary allocated = getAllocatedBytes();
+        lines.add(String.format(Locale.ROOT, "%-15s last %d  p50 %.0f  p99 %.0f  max %.0f", "alloc (B/frame)",
+                lastAllocatedBytes, allocated.getP50(), allocated.getP99(), allocated.getMax()));
+        lines.add(String.format(Locale.ROOT, "%-15s %d of %d over %.1f ms %s", "over budget", overBudgetFrames,
+                frameNanos.getCount(), budgetMs, getOverBudgetFramesByPhase()));
+        return lines;
+    }
+}
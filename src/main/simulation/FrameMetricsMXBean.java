@@ -0,0 +1,35 @@
+package main.simulation;
+
+import java.util.Map;
+
+// Management view of FrameMetrics. Times are in milliseconds, allocation in bytes.
+public interface FrameMetricsMXBean {
+    long getFrameCount();
+
+    double getBudgetMs();
+
+    void setBudgetMs(double budgetMs);
+
+    long getOverBudgetFrames();
+
+    // Over-budget frames keyed by the phase that took the largest share of each.
+    Map<String, Long> getOverBudgetFramesByPhase();
+
+    String getLastOverBudgetFrame();
+
+    MetricSummary getFrameTime();
+
+    MetricSummary getIndexBuildTime();
+
+    MetricSummary getNeighborQueryTime();
+
+    MetricSummary getBehaviorTime();
+
+    MetricSummary getIntegrationTime();
+
+    MetricSummary getNeighborCount();
+
+    MetricSummary getAllocatedBytes();
+
+    void reset();
+}
@@ -0,0 +1,24 @@
+package main.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("main.simulation.IndexUpdate")
+@Label("Spatial Index Update")
+@Category("Boids")
+@Description("Rebuild or incremental refit of the spatial index at the start of a frame")
+@StackTrace(false)
+class IndexUpdateEvent extends jdk.jfr.Event {
+    @Label("Spatial Index")
+    String indexName;
+
+    @Label("Boid Count")
+    int boidCount;
+
+    @Label("Refit")
+    @Description("True if the index was refitted in place rather than rebuilt")
+    boolean refit;
+}
@@ -0,0 +1,45 @@
+package main.simulation;
+
+import java.util.Locale;
+
+// Point-in-time summary of one Histogram, in the unit the metric is reported in.
+public class MetricSummary {
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p99;
+    private final double max;
+
+    MetricSummary(Histogram histogram, double scale) {
+        this.count = histogram.getCount();
+        this.mean = histogram.getMean() * scale;
+        this.p50 = histogram.valueAtPercentile(50) * scale;
+        this.p99 = histogram.valueAtPercentile(99) * scale;
+        this.max = histogram.getMax() * scale;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "p50 %.3f  p99 %.3f  max %.3f  mean %.3f", p50, p99, max, mean);
+    }
+}
@@ -0,0 +1,28 @@
+package main.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Emitted for a sample of neighbor queries only; see Steering.gather.
+@Name("main.simulation.NeighborQuery")
+@Label("Neighbor Query")
+@Category("Boids")
+@Description("A sampled neighbor query, including the behavior's per-neighbor accumulation")
+@StackTrace(false)
+public class NeighborQueryEvent extends jdk.jfr.Event {
+    @Label("Spatial Index")
+    public String indexName;
+
+    @Label("Radius")
+    public double radius;
+
+    @Label("Max Neighbors")
+    @Description("Neighbor cap in effect, 0 if unlimited")
+    public int maxNeighbors;
+
+    @Label("Result Size")
+    public int resultSize;
+}
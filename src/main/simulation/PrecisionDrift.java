@@ -0,0 +1,83 @@
+package main.simulation;
+
+import main.model.FlockState;
+
+import java.util.Locale;
+
+// How far a rounded-precision run has drifted from a double-precision run of the same
+// flock: per-boid errors, by minimum image, and polarization (0 to 1) and mean speed
+// for the flock as a whole, which stay close long after single boids part ways.
+public record PrecisionDrift(
+    double rmsPosition,
+    double maxPosition,
+    double rmsVelocity,
+    double polarization,
+    double referencePolarization,
+    double meanSpeed,
+    double referenceMeanSpeed
+) {
+    public static PrecisionDrift between(FlockSimulation reference, FlockSimulation simulation) {
+        FlockState expected = reference.getState();
+        FlockState actual = simulation.getState();
+        if (expected.size() != actual.size()) {
+            throw new IllegalArgumentException("Reference has " + expected.size() + " boids, simulation "
+                    + actual.size());
+        }
+        double width = simulation.getWidth();
+        double height = simulation.getHeight();
+        double positionSquares = 0;
+        double maxPositionSquared = 0;
+        double velocitySquares = 0;
+        for (int i = 0; i < actual.size(); i++) {
+            double dx = wrap(actual.x()[i] - expected.x()[i], width);
+            double dy = wrap(actual.y()[i] - expected.y()[i], height);
+            double distanceSquared = dx * dx + dy * dy;
+            positionSquares += distanceSquared;
+            maxPositionSquared = Math.max(maxPositionSquared, distanceSquared);
+            double dvx = actual.vx()[i] - expected.vx()[i];
+            double dvy = actual.vy()[i] - expected.vy()[i];
+            velocitySquares += dvx * dvx + dvy * dvy;
+        }
+        int count = Math.max(1, actual.size());
+        return new PrecisionDrift(Math.sqrt(positionSquares / count), Math.sqrt(maxPositionSquared),
+                Math.sqrt(velocitySquares / count), polarization(actual), polarization(expected),
+                meanSpeed(actual), meanSpeed(expected));
+    }
+
+    private static double wrap(double delta, double extent) {
+        if (delta > extent / 2) {
+            return delta - extent;
+        }
+        if (delta < -extent / 2) {
+            return delta + extent;
+        }
+        return delta;
+    }
+
+    private static double polarization(FlockState state) {
+        double headingX = 0, headingY = 0;
+        for (int i = 0; i < state.size(); i++) {
+            double speed = Math.sqrt(state.vx()[i] * state.vx()[i] + state.vy()[i] * state.vy()[i]);
+            if (speed > 0) {
+                headingX += state.vx()[i] / speed;
+                headingY += state.vy()[i] / speed;
+            }
+        }
+        return state.size() > 0 ? Math.sqrt(headingX * headingX + headingY * headingY) / state.size() : 0;
+    }
+
+    private static double meanSpeed(FlockState state) {
+        double speed = 0;
+        for (int i = 0; i < state.size(); i++) {
+            speed += Math.sqrt(state.vx()[i] * state.vx()[i] + state.vy()[i] * state.vy()[i]);
+        }
+        return state.size() > 0 ? speed / state.size() : 0;
+    }
+
+    public String describe() {
+        return String.format(Locale.ROOT,
+                "position rms %.4f px  max %.3f px  velocity rms %.5f  polarization %.4f vs %.4f  mean speed %.4f vs %.4f",
+                rmsPosition, maxPosition, rmsVelocity, polarization, referencePolarization, meanSpeed,
+                referenceMeanSpeed);
+    }
+}
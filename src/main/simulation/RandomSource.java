@@ -0,0 +1,32 @@
+package main.simulation;
+
+import java.util.SplittableRandom;
+
+// Seedable random source for a simulation. Work that runs in parallel takes its own
+// stream from split() instead of sharing one generator, so threads never contend and
+// a run can be replayed exactly from its seed.
+public class RandomSource {
+    private final long seed;
+    private final SplittableRandom random;
+
+    public RandomSource() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    public RandomSource(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    public SplittableRandom split() {
+        return random.split();
+    }
+}
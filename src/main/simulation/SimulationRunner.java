@@ -0,0 +1,121 @@
+package main.simulation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Steps a FlockSimulation on its own thread at a fixed rate and hands frames to the UI
+// through a lock-free triple buffer. Changes to the simulation are queued as commands
+// and applied between steps.
+public class SimulationRunner {
+    private static final int MAX_STEPS_BEHIND = 5;
+
+    private final FlockSimulation simulation;
+    private final long stepNanos;
+    private final Queue<Consumer<FlockSimulation>> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Snapshot> ready;
+    private final Thread thread;
+    private Snapshot back = new Snapshot();
+    private Snapshot front = new Snapshot();
+    private long sequence;
+    private volatile boolean paused = true;
+    private volatile boolean stopped;
+
+    public SimulationRunner(FlockSimulation simulation, double stepsPerSecond) {
+        this.simulation = simulation;
+        this.stepNanos = (long) (1e9 / stepsPerSecond);
+        Snapshot first = new Snapshot();
+        first.capturePrevious(simulation.getState());
+        first.capture(simulation, ++sequence, System.nanoTime());
+        this.ready = new AtomicReference<>(first);
+        this.thread = new Thread(this::run, "simulation");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(thread);
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Runs the command on the simulation thread before its next step.
+    public void submit(Consumer<FlockSimulation> command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    // Reader side of the triple buffer; call from a single thread, e.g. the Swing EDT.
+    // The returned snapshot stays valid until the next call.
+    public Snapshot latest() {
+        if (ready.get().getSequence() > front.getSequence()) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+
+    // How far the display has progressed from the snapshot's previous positions to its
+    // current ones, for painting at a rate independent of the step rate.
+    public double interpolationAt(Snapshot snapshot, long nanos) {
+        if (paused) {
+            return 1;
+        }
+        double alpha = (double) (nanos - snapshot.getPublishedNanos()) / stepNanos;
+        return Math.max(0, Math.min(1, alpha));
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (!stopped) {
+            boolean changed = false;
+            Consumer<FlockSimulation> command;
+            while ((command = commands.poll()) != null) {
+                command.accept(simulation);
+                changed = true;
+            }
+
+            if (paused) {
+                if (changed) {
+                    back.capturePrevious(simulation.getState());
+                    publish();
+                }
+                LockSupport.park(this);
+                next = System.nanoTime();
+                continue;
+            }
+
+            back.capturePrevious(simulation.getState());
+            simulation.update();
+            publish();
+
+            // Fixed timestep: one step per tick. A simulation that cannot keep up runs
+            // slower rather than bursting through a backlog of missed steps.
+            next += stepNanos;
+            long now = System.nanoTime();
+            if (now - next > MAX_STEPS_BEHIND * stepNanos) {
+                next = now;
+            }
+            while (!stopped && !paused && (now = System.nanoTime()) < next) {
+                LockSupport.parkNanos(this, next - now);
+            }
+        }
+    }
+
+    private void publish() {
+        back.capture(simulation, ++sequence, System.nanoTime());
+        back = ready.getAndSet(back);
+    }
+}
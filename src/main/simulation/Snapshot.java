@@ -0,0 +1,142 @@
+package main.simulation;
+
+import main.model.FlockState;
+
+import java.util.Arrays;
+
+// A copy of one simulation step for the renderer: positions before and after the step,
+// velocities and types. Instances are recycled by SimulationRunner's triple buffer, so
+// a reader owns a snapshot only until it asks the runner for the next one.
+public class Snapshot {
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] previousX = new double[0];
+    private double[] previousY = new double[0];
+    private double[] vx = new double[0];
+    private double[] vy = new double[0];
+    private byte[] type = new byte[0];
+    private int size;
+    private int previousSize;
+    private int width;
+    private int height;
+    private long sequence;
+    private long publishedNanos;
+    private double iterationTimeMs;
+
+    void capturePrevious(FlockState state) {
+        previousSize = state.size();
+        if (previousX.length < previousSize) {
+            previousX = new double[state.x().length];
+            previousY = new double[state.x().length];
+        }
+        System.arraycopy(state.x(), 0, previousX, 0, previousSize);
+        System.arraycopy(state.y(), 0, previousY, 0, previousSize);
+    }
+
+    void capture(FlockSimulation simulation, long sequence, long publishedNanos) {
+        FlockState state = simulation.getState();
+        size = state.size();
+        if (x.length < size) {
+            int capacity = state.x().length;
+            x = new double[capacity];
+            y = new double[capacity];
+            vx = new double[capacity];
+            vy = new double[capacity];
+            type = Arrays.copyOf(type, capacity);
+        }
+        System.arraycopy(state.x(), 0, x, 0, size);
+        System.arraycopy(state.y(), 0, y, 0, size);
+        System.arraycopy(state.vx(), 0, vx, 0, size);
+        System.arraycopy(state.vy(), 0, vy, 0, size);
+        System.arraycopy(state.type(), 0, type, 0, size);
+        width = simulation.getWidth();
+        height = simulation.getHeight();
+        iterationTimeMs = simulation.getLastIterationTimeMs();
+        this.sequence = sequence;
+        this.publishedNanos = publishedNanos;
+    }
+
+    // Replays decode straight into the arrays, sized here for a frame of size boids.
+    void prepare(int size, int width, int height, long sequence, double iterationTimeMs) {
+        if (x.length < size) {
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            vx = Arrays.copyOf(vx, size);
+            vy = Arrays.copyOf(vy, size);
+            type = Arrays.copyOf(type, size);
+        }
+        this.size = size;
+        this.width = width;
+        this.height = height;
+        this.sequence = sequence;
+        this.iterationTimeMs = iterationTimeMs;
+    }
+
+    // Makes the current positions the previous ones, before a replay decodes the next frame.
+    void keepAsPrevious() {
+        previousSize = size;
+        if (previousX.length < size) {
+            previousX = new double[x.length];
+            previousY = new double[x.length];
+        }
+        System.arraycopy(x, 0, previousX, 0, size);
+        System.arraycopy(y, 0, previousY, 0, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Boids at or past previousSize were spawned during the step and have no earlier position.
+    public int previousSize() {
+        return previousSize;
+    }
+
+    public double[] x() {
+        return x;
+    }
+
+    public double[] y() {
+        return y;
+    }
+
+    public double[] previousX() {
+        return previousX;
+    }
+
+    public double[] previousY() {
+        return previousY;
+    }
+
+    public double[] vx() {
+        return vx;
+    }
+
+    public double[] vy() {
+        return vy;
+    }
+
+    public byte[] type() {
+        return type;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    public double getIterationTimeMs() {
+        return iterationTimeMs;
+    }
+}
@@ -0,0 +1,296 @@
+package main.simulation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static main.simulation.TrajectoryRecorder.DELTA;
+import static main.simulation.TrajectoryRecorder.HEADER_BYTES;
+import static main.simulation.TrajectoryRecorder.KEYFRAME;
+import static main.simulation.TrajectoryRecorder.MAGIC;
+import static main.simulation.TrajectoryRecorder.POSITION_SCALE;
+import static main.simulation.TrajectoryRecorder.RECORD_HEADER_BYTES;
+import static main.simulation.TrajectoryRecorder.VELOCITY_SCALE;
+import static main.simulation.TrajectoryRecorder.VERSION;
+import static main.simulation.TrajectoryRecorder.predict;
+import static main.simulation.TrajectoryRecorder.unzigzag;
+
+// Reads a TrajectoryRecorder file frame by frame into a Snapshot. Seeks decode forward
+// from the nearest keyframe. A recording that was never closed is indexed by scanning,
+// up to the first incomplete record.
+public class TrajectoryPlayer implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private int[] keyframeFrames;
+    private long[] keyframeOffsets;
+    private int frameCount;
+
+    private final Snapshot snapshot = new Snapshot();
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer payload = ByteBuffer.allocate(0);
+    private byte[] data;
+    private int cursor;
+    private int[] qx = new int[0];
+    private int[] qy = new int[0];
+    private int[] qvx = new int[0];
+    private int[] qvy = new int[0];
+    private int frame = -1;
+    private long nextOffset;
+
+    public TrajectoryPlayer(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(header, 0) || header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a trajectory recording");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + " has recording version " + header.getInt(4) + ", expected " + VERSION);
+            }
+            if (header.getInt(20) != POSITION_SCALE || header.getInt(24) != VELOCITY_SCALE) {
+                throw new IOException(file + " uses unsupported quantization " + header.getInt(20) + "/"
+                        + header.getInt(24));
+            }
+            width = header.getInt(8);
+            height = header.getInt(12);
+            long indexOffset = header.getLong(TrajectoryRecorder.INDEX_OFFSET_POSITION);
+            if (indexOffset != 0) {
+                readIndex(indexOffset);
+            } else {
+                scanIndex();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readIndex(long offset) throws IOException {
+        ByteBuffer counts = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(counts, offset)) {
+            throw new IOException(file + " has a truncated keyframe index");
+        }
+        int keyframes = counts.getInt(0);
+        frameCount = counts.getInt(4);
+        ByteBuffer entries = ByteBuffer.allocate(keyframes * 12).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(entries, offset + 8)) {
+            throw new IOException(file + " has a truncated keyframe index");
+        }
+        keyframeFrames = new int[keyframes];
+        keyframeOffsets = new long[keyframes];
+        for (int k = 0; k < keyframes; k++) {
+            keyframeFrames[k] = entries.getInt();
+            keyframeOffsets[k] = entries.getLong();
+        }
+    }
+
+    private void scanIndex() throws IOException {
+        int[] frames = new int[16];
+        long[] offsets = new long[16];
+        int keyframes = 0;
+        long offset = HEADER_BYTES;
+        long size = channel.size();
+        while (offset + RECORD_HEADER_BYTES <= size && readFully(recordHeader.clear(), offset)) {
+            long end = offset + RECORD_HEADER_BYTES + recordHeader.getInt(12);
+            if (end > size || recordHeader.getInt(4) != frameCount) {
+                break;
+            }
+            if (recordHeader.getInt(0) == KEYFRAME) {
+                if (keyframes == frames.length) {
+                    frames = Arrays.copyOf(frames, keyframes * 2);
+                    offsets = Arrays.copyOf(offsets, keyframes * 2);
+                }
+                frames[keyframes] = frameCount;
+                offsets[keyframes++] = offset;
+            } else if (keyframes == 0) {
+                break;
+            }
+            frameCount++;
+            offset = end;
+        }
+        keyframeFrames = Arrays.copyOf(frames, keyframes);
+        keyframeOffsets = Arrays.copyOf(offsets, keyframes);
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    // The frame in getSnapshot(), or -1 before the first seek().
+    public int getFrame() {
+        return frame;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Valid until the next seek() or next().
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Decodes the given frame; its previous positions are its own, so nothing is
+    // interpolated across the jump.
+    public Snapshot seek(int target) throws IOException {
+        if (target < 0 || target >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + target + " is outside the recording's " + frameCount
+                    + " frames");
+        }
+        int k = Arrays.binarySearch(keyframeFrames, target);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        if (frame < 0 || target < frame || keyframeFrames[k] > frame) {
+            frame = keyframeFrames[k] - 1;
+            nextOffset = keyframeOffsets[k];
+        }
+        while (frame < target) {
+            decodeNext();
+        }
+        snapshot.keepAsPrevious();
+        return snapshot;
+    }
+
+    public boolean hasNext() {
+        return frame + 1 < frameCount;
+    }
+
+    // Decodes the frame after the current one, keeping the current positions as the
+    // previous ones for interpolation.
+    public Snapshot next() throws IOException {
+        if (!hasNext()) {
+            throw new IndexOutOfBoundsException("Frame " + (frame + 1) + " is past the end of the recording");
+        }
+        if (frame < 0) {
+            return seek(0);
+        }
+        snapshot.keepAsPrevious();
+        decodeNext();
+        return snapshot;
+    }
+
+    private void decodeNext() throws IOException {
+        if (!readFully(recordHeader.clear(), nextOffset)) {
+            throw new EOFException(file + " ends inside frame " + (frame + 1));
+        }
+        int kind = recordHeader.getInt(0);
+        int number = recordHeader.getInt(4);
+        int count = recordHeader.getInt(8);
+        int length = recordHeader.getInt(12);
+        if (number != frame + 1 || (kind != KEYFRAME && kind != DELTA) || (kind == DELTA && count != snapshot.size())) {
+            throw new IOException(file + " is corrupt at frame " + (frame + 1));
+        }
+        if (payload.capacity() < length) {
+            payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+            data = payload.array();
+        }
+        if (!readFully(payload.clear().limit(length), nextOffset + RECORD_HEADER_BYTES)) {
+            throw new EOFException(file + " ends inside frame " + number);
+        }
+
+        snapshot.prepare(count, width, height, number, recordHeader.getFloat(16));
+        ensureCapacity(count);
+        cursor = 0;
+        if (kind == KEYFRAME) {
+            decodeKeyframe(count);
+        } else {
+            decodeDelta(count);
+        }
+        frame = number;
+        nextOffset += RECORD_HEADER_BYTES + length;
+    }
+
+    private void decodeKeyframe(int count) {
+        double[] x = snapshot.x();
+        double[] y = snapshot.y();
+        double[] vx = snapshot.vx();
+        double[] vy = snapshot.vy();
+        for (int i = 0; i < count; i++) {
+            qx[i] = unzigzag(readVarint());
+            qy[i] = unzigzag(readVarint());
+            qvx[i] = unzigzag(readVarint());
+            qvy[i] = unzigzag(readVarint());
+            x[i] = (double) qx[i] / POSITION_SCALE;
+            y[i] = (double) qy[i] / POSITION_SCALE;
+            vx[i] = (double) qvx[i] / VELOCITY_SCALE;
+            vy[i] = (double) qvy[i] / VELOCITY_SCALE;
+        }
+        System.arraycopy(data, cursor, snapshot.type(), 0, count);
+    }
+
+    private void decodeDelta(int count) {
+        byte[] type = snapshot.type();
+        for (int changes = readVarint(); changes > 0; changes--) {
+            int i = readVarint();
+            type[i] = data[cursor++];
+        }
+        double[] x = snapshot.x();
+        double[] y = snapshot.y();
+        double[] vx = snapshot.vx();
+        double[] vy = snapshot.vy();
+        for (int i = 0; i < count; i++) {
+            int residualX = unzigzag(readVarint());
+            int residualY = unzigzag(readVarint());
+            qvx[i] += unzigzag(readVarint());
+            qvy[i] += unzigzag(readVarint());
+            qx[i] = predict(qx[i], qvx[i]) + residualX;
+            qy[i] = predict(qy[i], qvy[i]) + residualY;
+            x[i] = (double) qx[i] / POSITION_SCALE;
+            y[i] = (double) qy[i] / POSITION_SCALE;
+            vx[i] = (double) qvx[i] / VELOCITY_SCALE;
+            vy[i] = (double) qvy[i] / VELOCITY_SCALE;
+        }
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private void ensureCapacity(int count) {
+        if (qx.length < count) {
+            int capacity = Math.max(count, qx.length * 2);
+            qx = Arrays.copyOf(qx, capacity);
+            qy = Arrays.copyOf(qy, capacity);
+            qvx = Arrays.copyOf(qvx, capacity);
+            qvy = Arrays.copyOf(qvy, capacity);
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, at);
+            if (read < 0) {
+                return false;
+            }
+            at += read;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
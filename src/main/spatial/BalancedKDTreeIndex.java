@@ -0,0 +1,283 @@
+package main.spatial;
+
+import main.model.Boid;
+import java.util.Arrays;
+import java.util.List;
+
+// KD-tree bulk-built from the whole population by median partitioning. Nodes live in
+// flat arrays, the two children of a node are stored next to each other, and leaves
+// own a contiguous bucket of the sorted position arrays.
+public class BalancedKDTreeIndex implements SpatialIndex {
+    private static final int LEAF_SIZE = 8;
+
+    private Boid[] boids = new Boid[64];
+    private double[] pointX = new double[64];
+    private double[] pointY = new double[64];
+    private int[] order = new int[64];
+    private double[] sortedX = new double[64];
+    private double[] sortedY = new double[64];
+    private int[] sortedBoidIds = new int[64];
+    private int size;
+
+    private int[] nodeStart = new int[16];
+    private int[] nodeEnd = new int[16];
+    private int[] nodeLeft = new int[16];
+    private int[] nodeParent = new int[16];
+    private double[] nodeMinX = new double[16];
+    private double[] nodeMaxX = new double[16];
+    private double[] nodeMinY = new double[16];
+    private double[] nodeMaxY = new double[16];
+    private int nodeCount;
+    private volatile boolean dirty;
+
+    @Override
+    public void clear() {
+        size = 0;
+        nodeCount = 0;
+        dirty = false;
+    }
+
+    @Override
+    public void insert(Boid boid) {
+        ensureCapacity(size + 1);
+        boids[size++] = boid;
+        dirty = true;
+    }
+
+    @Override
+    public void insertAll(List<Boid> newBoids) {
+        ensureCapacity(size + newBoids.size());
+        for (Boid boid : newBoids) {
+            boids[size++] = boid;
+        }
+        build();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= boids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, boids.length * 2);
+        boids = Arrays.copyOf(boids, newCapacity);
+        pointX = new double[newCapacity];
+        pointY = new double[newCapacity];
+        order = new int[newCapacity];
+        sortedX = new double[newCapacity];
+        sortedY = new double[newCapacity];
+        sortedBoidIds = new int[newCapacity];
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity <= nodeStart.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodeStart.length * 2);
+        nodeStart = Arrays.copyOf(nodeStart, newCapacity);
+        nodeEnd = Arrays.copyOf(nodeEnd, newCapacity);
+        nodeLeft = Arrays.copyOf(nodeLeft, newCapacity);
+        nodeParent = Arrays.copyOf(nodeParent, newCapacity);
+        nodeMinX = Arrays.copyOf(nodeMinX, newCapacity);
+        nodeMaxX = Arrays.copyOf(nodeMaxX, newCapacity);
+        nodeMinY = Arrays.copyOf(nodeMinY, newCapacity);
+        nodeMaxY = Arrays.copyOf(nodeMaxY, newCapacity);
+    }
+
+    private synchronized void build() {
+        for (int i = 0; i < size; i++) {
+            pointX[i] = boids[i].getX();
+            pointY[i] = boids[i].getY();
+            order[i] = i;
+        }
+
+        nodeCount = 0;
+        if (size > 0) {
+            ensureNodeCapacity(1);
+            nodeCount = 1;
+            buildNode(0, -1, 0, size);
+        }
+
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            sortedX[k] = pointX[i];
+            sortedY[k] = pointY[i];
+            sortedBoidIds[k] = boids[i].getId();
+        }
+        dirty = false;
+    }
+
+    // Recursion depth is logarithmic because every split is at the median.
+    private void buildNode(int node, int parent, int start, int end) {
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int k = start; k < end; k++) {
+            double x = pointX[order[k]];
+            double y = pointY[order[k]];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeParent[node] = parent;
+        nodeMinX[node] = minX;
+        nodeMaxX[node] = maxX;
+        nodeMinY[node] = minY;
+        nodeMaxY[node] = maxY;
+
+        if (end - start <= LEAF_SIZE) {
+            nodeLeft[node] = -1;
+            return;
+        }
+
+        int mid = (start + end) >>> 1;
+        select(start, end, mid, maxX - minX >= maxY - minY ? pointX : pointY);
+
+        int left = nodeCount;
+        ensureNodeCapacity(left + 2);
+        nodeCount += 2;
+        nodeLeft[node] = left;
+        buildNode(left, node, start, mid);
+        buildNode(left + 1, node, mid, end);
+    }
+
+    // Quickselect on order[start, end) so that order[k] holds the k-th smallest key,
+    // with smaller keys before it and larger keys after it.
+    private void select(int start, int end, int k, double[] key) {
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            double pivot = key[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[order[i]] < pivot) i++;
+                while (key[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void ensureBuilt() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    build();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        ensureBuilt();
+        if (nodeCount == 0) {
+            return;
+        }
+        double radiusSquared = radius * radius;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        // Stackless depth-first walk: descend left while the node's box is in range,
+        // otherwise climb past finished right children and step to the next sibling.
+        int node = 0;
+        while (true) {
+            if (boxInRange(node, targetX, targetY, radiusSquared)) {
+                int left = nodeLeft[node];
+                if (left >= 0) {
+                    node = left;
+                    continue;
+                }
+                for (int k = nodeStart[node]; k < nodeEnd[node]; k++) {
+                    if (sortedBoidIds[k] != targetId) {
+                        double dx = targetX - sortedX[k];
+                        double dy = targetY - sortedY[k];
+                        double distanceSquared = dx * dx + dy * dy;
+                        if (distanceSquared <= radiusSquared) {
+                            visitor.visit(boids[order[k]], distanceSquared);
+                        }
+                    }
+                }
+            }
+
+            while (node != 0 && node == nodeLeft[nodeParent[node]] + 1) {
+                node = nodeParent[node];
+            }
+            if (node == 0) {
+                return;
+            }
+            node++;
+        }
+    }
+
+    // Depth-first with the nearer child first, so the heap fills with close boids early
+    // and its shrinking bound prunes most of the remaining boxes.
+    @Override
+    public void collectNearest(Boid targetBoid, double radius, NeighborHeap heap) {
+        ensureBuilt();
+        heap.reset(radius * radius);
+        if (nodeCount == 0) {
+            return;
+        }
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        int[] stack = heap.stack(64);
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (boxDistanceSquared(node, targetX, targetY) > heap.bound()) {
+                continue;
+            }
+            int left = nodeLeft[node];
+            if (left < 0) {
+                for (int k = nodeStart[node]; k < nodeEnd[node]; k++) {
+                    if (sortedBoidIds[k] != targetId) {
+                        double dx = targetX - sortedX[k];
+                        double dy = targetY - sortedY[k];
+                        heap.visit(boids[order[k]], dx * dx + dy * dy);
+                    }
+                }
+                continue;
+            }
+            if (top + 2 > stack.length) {
+                stack = heap.stack(top + 2);
+            }
+            boolean leftFirst = boxDistanceSquared(left, targetX, targetY) <= boxDistanceSquared(left + 1, targetX, targetY);
+            stack[top++] = leftFirst ? left + 1 : left;
+            stack[top++] = leftFirst ? left : left + 1;
+        }
+    }
+
+    private boolean boxInRange(int node, double x, double y, double radiusSquared) {
+        return boxDistanceSquared(node, x, y) <= radiusSquared;
+    }
+
+    private double boxDistanceSquared(int node, double x, double y) {
+        double dx = Math.max(0, Math.max(nodeMinX[node] - x, x - nodeMaxX[node]));
+        double dy = Math.max(0, Math.max(nodeMinY[node] - y, y - nodeMaxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    @Override
+    public String getName() {
+        return "Balanced KD-Tree";
+    }
+}
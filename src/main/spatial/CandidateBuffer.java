@@ -0,0 +1,18 @@
+package main.spatial;
+
+// Per-thread output of a DistanceFilter: the kept slots and their squared distances.
+// Queries run concurrently in double-buffered mode, so indices keep one per thread.
+final class CandidateBuffer {
+    int[] hits = new int[64];
+    double[] distances = new double[64];
+
+    // Makes room for filtering a span of the given number of candidates.
+    void reserve(int candidates) {
+        int capacity = candidates + DistanceFilter.PADDING;
+        if (hits.length < capacity) {
+            int newCapacity = Math.max(capacity, hits.length * 2);
+            hits = new int[newCapacity];
+            distances = new double[newCapacity];
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package main.spatial;
+
+// The inner loop of a range query over flat coordinate arrays: the naive index's scan
+// of the state and the uniform grid's sorted rows. The hash and quadtree indices keep
+// boid references per cell and measure live positions scattered over the state, so they
+// keep their own loops.
+public interface DistanceFilter {
+    // Extra room hits and distances must have beyond to - from, so an implementation may
+    // store a whole vector of lanes at the current hit count.
+    int PADDING = 16;
+
+    // Writes the slot and squared distance of every candidate in [from, to) within the
+    // radius, in slot order, and returns how many. Distances must match the scalar loop
+    // bit for bit (no fused multiply-adds).
+    int filter(double[] xs, double[] ys, int from, int to, double x, double y, double radiusSquared,
+               int[] hits, double[] distances);
+
+    // The same for float positions, widened to double before measuring.
+    int filter(float[] xs, float[] ys, int from, int to, double x, double y, double radiusSquared,
+               int[] hits, double[] distances);
+
+    String getName();
+}
@@ -0,0 +1,58 @@
+package main.spatial;
+
+import java.util.List;
+
+// Chooses the DistanceFilter for indices created from now on: scalar by default, or
+// vector (-Dboids.filter=vector) when run with --add-modules jdk.incubator.vector.
+public final class DistanceFilters {
+    private static final String VECTOR_CLASS = "main.spatial.simd.VectorDistanceFilter";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final DistanceFilter SCALAR = new ScalarDistanceFilter();
+    private static final DistanceFilter VECTOR = loadVector();
+    private static volatile DistanceFilter current = initial();
+
+    private DistanceFilters() {
+    }
+
+    private static DistanceFilter loadVector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (DistanceFilter) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static DistanceFilter initial() {
+        String name = System.getProperty("boids.filter");
+        return name != null ? get(name) : SCALAR;
+    }
+
+    // The filters this JVM can run: always scalar, and vector when the module is present.
+    public static List<String> names() {
+        return VECTOR != null ? List.of(SCALAR.getName(), VECTOR.getName()) : List.of(SCALAR.getName());
+    }
+
+    public static DistanceFilter get(String name) {
+        if (name.equals(SCALAR.getName())) {
+            return SCALAR;
+        }
+        if (VECTOR != null && name.equals(VECTOR.getName())) {
+            return VECTOR;
+        }
+        throw new IllegalArgumentException("Unknown or unavailable distance filter '" + name + "', expected one of "
+                + names() + (VECTOR == null ? " (run with --add-modules " + VECTOR_MODULE + " for vector)" : ""));
+    }
+
+    public static DistanceFilter current() {
+        return current;
+    }
+
+    // Only affects indices created afterwards.
+    public static void select(String name) {
+        current = get(name);
+    }
+}
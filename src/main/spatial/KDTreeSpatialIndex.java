@@ -6,14 +6,24 @@ import java.util.List;
 
 public class KDTreeSpatialIndex implements SpatialIndex {
     private KDNode root;
+    private int nodeCount;
+    private int vacantCount;
+    private final List<Boid> movers = new ArrayList<>();
+
+    private static final double MAX_REFIT_FRACTION = 0.25;
     
+    // The split value is fixed when the node is created, so the node's own boid can
+    // move around inside the node's region without invalidating its subtrees. A node
+    // whose boid has left the region is emptied and refilled by a later insert.
     private static class KDNode {
         Boid boid;
+        final double split;
         KDNode left, right;
         int depth;
         
         KDNode(Boid boid, int depth) {
             this.boid = boid;
+            this.split = depth % 2 == 0 ? boid.getX() : boid.getY();
             this.depth = depth;
         }
     }
@@ -21,6 +31,8 @@ public class KDTreeSpatialIndex implements SpatialIndex {
     @Override
     public void clear() {
         root = null;
+        nodeCount = 0;
+        vacantCount = 0;
     }
 
     @Override
@@ -30,13 +42,20 @@ public class KDTreeSpatialIndex implements SpatialIndex {
     
     private KDNode insertRec(KDNode node, Boid boid, int depth) {
         if (node == null) {
+            nodeCount++;
             return new KDNode(boid, depth);
         }
+
+        if (node.boid == null) {
+            node.boid = boid;
+            vacantCount--;
+            return node;
+        }
         
         int cd = depth % 2;
         
-        if ((cd == 0 && boid.getX() < node.boid.getX()) || 
-            (cd == 1 && boid.getY() < node.boid.getY())) {
+        if ((cd == 0 && boid.getX() < node.split) || 
+            (cd == 1 && boid.getY() < node.split)) {
             node.left = insertRec(node.left, boid, depth + 1);
         } else {
             node.right = insertRec(node.right, boid, depth + 1);
@@ -46,43 +65,116 @@ public class KDTreeSpatialIndex implements SpatialIndex {
     }
 
     @Override
-    public List<Boid> findNeighbors(Boid targetBoid, double radius) {
-        List<Boid> neighbors = new ArrayList<>();
+    public boolean refit(List<Boid> boids) {
+        if (nodeCount - vacantCount != boids.size()) {
+            clear();
+            insertAll(boids);
+            return false;
+        }
+
+        movers.clear();
+        collectMovers(root, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        if (vacantCount > boids.size() * MAX_REFIT_FRACTION) {
+            clear();
+            insertAll(boids);
+            return false;
+        }
+
+        for (Boid boid : movers) {
+            insert(boid);
+        }
+        return true;
+    }
+
+    private void collectMovers(KDNode node, double minX, double maxX, double minY, double maxY) {
+        if (node == null) return;
+
+        if (node.boid != null) {
+            double x = node.boid.getX();
+            double y = node.boid.getY();
+            if (x < minX || x >= maxX || y < minY || y >= maxY) {
+                movers.add(node.boid);
+                node.boid = null;
+                vacantCount++;
+            }
+        }
+
+        if (node.depth % 2 == 0) {
+            collectMovers(node.left, minX, node.split, minY, maxY);
+            collectMovers(node.right, node.split, maxX, minY, maxY);
+        } else {
+            collectMovers(node.left, minX, maxX, minY, node.split);
+            collectMovers(node.right, minX, maxX, node.split, maxY);
+        }
+    }
+
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
         if (root != null) {
-            rangeSearch(root, targetBoid.getX(), targetBoid.getY(), radius, targetBoid, neighbors);
+            rangeSearch(root, targetBoid.getX(), targetBoid.getY(), radius, targetBoid, visitor);
         }
-        return neighbors;
     }
     
-    private void rangeSearch(KDNode node, double x, double y, double radius, Boid targetBoid, List<Boid> neighbors) {
+    private void rangeSearch(KDNode node, double x, double y, double radius, Boid targetBoid, NeighborVisitor visitor) {
         if (node == null) return;
         
-        double dx = x - node.boid.getX();
-        double dy = y - node.boid.getY();
-        double distanceSquared = dx * dx + dy * dy;
-        
-        if (distanceSquared <= radius * radius && node.boid.getId() != targetBoid.getId()) {
-            neighbors.add(node.boid);
+        if (node.boid != null) {
+            double dx = x - node.boid.getX();
+            double dy = y - node.boid.getY();
+            double distanceSquared = dx * dx + dy * dy;
+
+            if (distanceSquared <= radius * radius && node.boid.getId() != targetBoid.getId()) {
+                visitor.visit(node.boid, distanceSquared);
+            }
         }
         
         int cd = node.depth % 2;
-        double diff = (cd == 0) ? dx : dy;
+        double diff = (cd == 0) ? x - node.split : y - node.split;
         
         if (diff <= 0) {
-            rangeSearch(node.left, x, y, radius, targetBoid, neighbors);
+            rangeSearch(node.left, x, y, radius, targetBoid, visitor);
             if (diff * diff <= radius * radius) {
-                rangeSearch(node.right, x, y, radius, targetBoid, neighbors);
+                rangeSearch(node.right, x, y, radius, targetBoid, visitor);
             }
         } else {
-            rangeSearch(node.right, x, y, radius, targetBoid, neighbors);
+            rangeSearch(node.right, x, y, radius, targetBoid, visitor);
             if (diff * diff <= radius * radius) {
-                rangeSearch(node.left, x, y, radius, targetBoid, neighbors);
+                rangeSearch(node.left, x, y, radius, targetBoid, visitor);
             }
         }
     }
 
+    @Override
+    public void collectNearest(Boid targetBoid, double radius, NeighborHeap heap) {
+        heap.reset(radius * radius);
+        if (root != null) {
+            nearestSearch(root, targetBoid.getX(), targetBoid.getY(), targetBoid.getId(), heap);
+        }
+    }
+
+    // Like rangeSearch, but the far side is only visited while it can still beat the
+    // farthest neighbor kept so far.
+    private void nearestSearch(KDNode node, double x, double y, int targetId, NeighborHeap heap) {
+        if (node == null) return;
+
+        if (node.boid != null && node.boid.getId() != targetId) {
+            double dx = x - node.boid.getX();
+            double dy = y - node.boid.getY();
+            heap.visit(node.boid, dx * dx + dy * dy);
+        }
+
+        double diff = node.depth % 2 == 0 ? x - node.split : y - node.split;
+        KDNode near = diff <= 0 ? node.left : node.right;
+        KDNode far = diff <= 0 ? node.right : node.left;
+        nearestSearch(near, x, y, targetId, heap);
+        if (diff * diff <= heap.bound()) {
+            nearestSearch(far, x, y, targetId, heap);
+        }
+    }
+
     @Override
     public String getName() {
         return "KD-Tree";
     }
-}
\ No newline at end of file
+}
@@ -1,48 +1,129 @@
 package main.spatial;
 
 import main.model.Boid;
-import java.util.ArrayList;
-import java.util.List;
+import main.model.FlockState;
+import java.util.Arrays;
 
+// Distances use the boids' positions at query time, so a sequential update sees the
+// boids that already moved this frame. When the boids are the slots of one FlockState
+// in order, the DistanceFilter scans the state's own arrays.
 public class NaiveSpatialIndex implements SpatialIndex {
-    private final List<Boid> boids;
+    private final double width;
+    private final double height;
+    private final boolean periodic;
+    private final DistanceFilter filter = DistanceFilters.current();
+    private final ThreadLocal<CandidateBuffer> candidates = ThreadLocal.withInitial(CandidateBuffer::new);
+    private Boid[] boids = new Boid[64];
+    private int size;
+    // Null unless boid k is slot k of this state for every k.
+    private FlockState state;
 
     public NaiveSpatialIndex() {
-        this.boids = new ArrayList<>();
+        this.width = 0;
+        this.height = 0;
+        this.periodic = false;
+    }
+
+    // Periodic reference implementation: every pair is measured by its minimum image.
+    public NaiveSpatialIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.periodic = true;
     }
 
     @Override
     public void clear() {
-        boids.clear();
+        Arrays.fill(boids, 0, size, null);
+        size = 0;
+        state = null;
     }
 
     @Override
     public void insert(Boid boid) {
-        boids.add(boid);
+        if (size == boids.length) {
+            boids = Arrays.copyOf(boids, size * 2);
+        }
+        if (size == 0) {
+            state = boid.getState();
+        }
+        if (boid.getState() != state || boid.getIndex() != size) {
+            state = null;
+        }
+        boids[size++] = boid;
     }
 
     @Override
-    public List<Boid> findNeighbors(Boid targetBoid, double radius) {
-        List<Boid> neighbors = new ArrayList<>();
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        if (periodic) {
+            forEachPeriodicNeighbor(targetBoid, radius, visitor);
+        } else if (state != null) {
+            forEachFilteredNeighbor(targetBoid, radius, visitor);
+        } else {
+            forEachScannedNeighbor(targetBoid, radius, visitor);
+        }
+    }
+
+    private void forEachFilteredNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        CandidateBuffer buffer = candidates.get();
+        buffer.reserve(size);
+        int[] hits = buffer.hits;
+        double[] distances = buffer.distances;
+        int count = filter.filter(state.x(), state.y(), 0, size, targetBoid.getX(), targetBoid.getY(), radius * radius,
+                hits, distances);
+        for (int h = 0; h < count; h++) {
+            Boid boid = boids[hits[h]];
+            if (boid.getId() != targetBoid.getId()) {
+                visitor.visit(boid, distances[h]);
+            }
+        }
+    }
+
+    private void forEachScannedNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
         double radiusSquared = radius * radius;
-        
-        for (Boid boid : boids) {
+        for (int k = 0; k < size; k++) {
+            Boid boid = boids[k];
             if (boid.getId() != targetBoid.getId()) {
                 double dx = targetBoid.getX() - boid.getX();
                 double dy = targetBoid.getY() - boid.getY();
                 double distanceSquared = dx * dx + dy * dy;
-                
+
+                if (distanceSquared <= radiusSquared) {
+                    visitor.visit(boid, distanceSquared);
+                }
+            }
+        }
+    }
+
+    private void forEachPeriodicNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        double radiusSquared = radius * radius;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+
+        for (int k = 0; k < size; k++) {
+            Boid boid = boids[k];
+            if (boid.getId() != targetBoid.getId()) {
+                double dx = targetX - boid.getX();
+                double dy = targetY - boid.getY();
+                if (dx > width / 2) dx -= width;
+                else if (dx < -width / 2) dx += width;
+                if (dy > height / 2) dy -= height;
+                else if (dy < -height / 2) dy += height;
+                double distanceSquared = dx * dx + dy * dy;
+
                 if (distanceSquared <= radiusSquared) {
-                    neighbors.add(boid);
+                    visitor.visit(boid, targetX - dx, targetY - dy, distanceSquared);
                 }
             }
         }
-        
-        return neighbors;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return periodic;
     }
 
     @Override
     public String getName() {
-        return "Naive O(n²)";
+        return periodic ? "Naive O(n²) (periodic)" : "Naive O(n²)";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package main.spatial;
+
+import main.model.Boid;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Bounded max-heap of the nearest neighbors seen so far, keyed on squared distance.
+// Once it is full the root is the farthest kept neighbor, and bound() tells tree
+// indices how far they still need to search. Instances are reused between queries.
+public class NeighborHeap implements NeighborVisitor {
+    private final int capacity;
+    private final Boid[] boids;
+    private final double[] distances;
+    private final double[] imageX;
+    private final double[] imageY;
+    private int size;
+    private double radiusSquared;
+    private int[] stack = new int[64];
+
+    public NeighborHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.boids = new Boid[capacity];
+        this.distances = new double[capacity];
+        this.imageX = new double[capacity];
+        this.imageY = new double[capacity];
+    }
+
+    public void reset(double radiusSquared) {
+        Arrays.fill(boids, 0, size, null);
+        size = 0;
+        this.radiusSquared = radiusSquared;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Scratch traversal stack for tree indices, grown on demand and kept between queries
+    // so that nearest-first searches allocate nothing.
+    int[] stack(int capacity) {
+        if (stack.length < capacity) {
+            stack = Arrays.copyOf(stack, Math.max(capacity, stack.length * 2));
+        }
+        return stack;
+    }
+
+    // Squared distance a candidate must not exceed to be kept.
+    public double bound() {
+        return size < capacity ? radiusSquared : distances[0];
+    }
+
+    @Override
+    public void visit(Boid neighbor, double distanceSquared) {
+        visit(neighbor, neighbor.getX(), neighbor.getY(), distanceSquared);
+    }
+
+    @Override
+    public void visit(Boid neighbor, double x, double y, double distanceSquared) {
+        if (size < capacity) {
+            if (distanceSquared > radiusSquared) {
+                return;
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distanceSquared) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            set(i, neighbor, x, y, distanceSquared);
+        } else if (distanceSquared < distances[0]) {
+            siftDown(0, size, neighbor, x, y, distanceSquared);
+        }
+    }
+
+    private void siftDown(int i, int end, Boid neighbor, double x, double y, double distanceSquared) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[child] <= distanceSquared) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, neighbor, x, y, distanceSquared);
+    }
+
+    private void move(int from, int to) {
+        boids[to] = boids[from];
+        distances[to] = distances[from];
+        imageX[to] = imageX[from];
+        imageY[to] = imageY[from];
+    }
+
+    private void set(int i, Boid neighbor, double x, double y, double distanceSquared) {
+        boids[i] = neighbor;
+        distances[i] = distanceSquared;
+        imageX[i] = x;
+        imageY[i] = y;
+    }
+
+    // Heap-sorts the kept neighbors in place and replays them to the visitor, nearest
+    // first. This consumes the heap order, so reset() it before the next query.
+    public void forEachNearest(NeighborVisitor visitor) {
+        for (int end = size - 1; end > 0; end--) {
+            Boid boid = boids[end];
+            double distanceSquared = distances[end];
+            double x = imageX[end];
+            double y = imageY[end];
+            move(0, end);
+            siftDown(0, end, boid, x, y, distanceSquared);
+        }
+        for (int i = 0; i < size; i++) {
+            visitor.visit(boids[i], imageX[i], imageY[i], distances[i]);
+        }
+    }
+
+    public List<Boid> toSortedList() {
+        List<Boid> nearest = new ArrayList<>(size);
+        forEachNearest((neighbor, distanceSquared) -> nearest.add(neighbor));
+        return nearest;
+    }
+}
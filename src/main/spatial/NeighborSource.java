@@ -0,0 +1,58 @@
+package main.spatial;
+
+import main.model.Boid;
+import java.util.ArrayList;
+import java.util.List;
+
+// What a simulation step reads neighbors from: a SpatialIndex, or neighbor lists built
+// from one.
+public interface NeighborSource {
+    void forEachNeighbor(Boid boid, double radius, NeighborVisitor visitor);
+
+    // Visits every unordered pair of the given boids within radius once. The default runs
+    // a full query per boid and keeps each pair from the boid with the lower id, which
+    // halves the visitor's work but not the index's; UniformGridIndex walks a half shell.
+    default void forEachPair(List<Boid> boids, double radius, PairVisitor visitor) {
+        for (Boid boid : boids) {
+            forEachNeighbor(boid, radius, new NeighborVisitor() {
+                @Override
+                public void visit(Boid neighbor, double distanceSquared) {
+                    visit(neighbor, neighbor.getX(), neighbor.getY(), distanceSquared);
+                }
+
+                @Override
+                public void visit(Boid neighbor, double imageX, double imageY, double distanceSquared) {
+                    if (boid.getId() < neighbor.getId()) {
+                        visitor.visit(boid, neighbor, boid.getX() - imageX, boid.getY() - imageY, distanceSquared);
+                    }
+                }
+            });
+        }
+    }
+
+    default List<Boid> findNeighbors(Boid boid, double radius) {
+        List<Boid> neighbors = new ArrayList<>();
+        forEachNeighbor(boid, radius, (neighbor, distanceSquared) -> neighbors.add(neighbor));
+        return neighbors;
+    }
+
+    // Leaves the at most heap.capacity() nearest neighbors within radius in the heap.
+    // Tree indices override this to shrink the search radius as the heap fills up.
+    default void collectNearest(Boid boid, double radius, NeighborHeap heap) {
+        heap.reset(radius * radius);
+        forEachNeighbor(boid, radius, heap);
+    }
+
+    default List<Boid> findKNearest(Boid boid, double radius, int k) {
+        NeighborHeap heap = new NeighborHeap(k);
+        collectNearest(boid, radius, heap);
+        return heap.toSortedList();
+    }
+
+    // Whether distances are measured on the torus, by minimum image.
+    default boolean isPeriodic() {
+        return false;
+    }
+
+    String getName();
+}
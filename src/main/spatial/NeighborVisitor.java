@@ -0,0 +1,14 @@
+package main.spatial;
+
+import main.model.Boid;
+
+@FunctionalInterface
+public interface NeighborVisitor {
+    void visit(Boid neighbor, double distanceSquared);
+
+    // Periodic indices report where the neighbor appears relative to the querying boid,
+    // i.e. its minimum image, which may lie up to one world size outside the world.
+    default void visit(Boid neighbor, double imageX, double imageY, double distanceSquared) {
+        visit(neighbor, distanceSquared);
+    }
+}
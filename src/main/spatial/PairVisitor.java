@@ -0,0 +1,10 @@
+package main.spatial;
+
+import main.model.Boid;
+
+// Receives each unordered pair of boids within the radius once. (dx, dy) points from
+// b's image nearest a to a, so a sees b at a - d and b sees a at b + d.
+@FunctionalInterface
+public interface PairVisitor {
+    void visit(Boid a, Boid b, double dx, double dy, double distanceSquared);
+}
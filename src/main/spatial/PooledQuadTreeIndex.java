@@ -0,0 +1,247 @@
+package main.spatial;
+
+import main.model.Boid;
+import java.util.Arrays;
+import java.util.List;
+
+// QuadTree whose nodes and leaf buckets live in flat arrays that are reused between
+// frames. The four children of a node are allocated next to each other, and each
+// leaf keeps its boids as a linked list threaded through the nextInLeaf array.
+public class PooledQuadTreeIndex implements SpatialIndex {
+    private static final int DEFAULT_MAX_BOIDS_PER_NODE = 10;
+    private static final int DEFAULT_MAX_DEPTH = 12;
+
+    private final double width;
+    private final double height;
+    private final int maxBoidsPerNode;
+    private final int maxDepth;
+
+    private Boid[] boids = new Boid[64];
+    private double[] pointX = new double[64];
+    private double[] pointY = new double[64];
+    private int[] pointId = new int[64];
+    private int[] nextInLeaf = new int[64];
+    private int size;
+
+    private double[] nodeX = new double[64];
+    private double[] nodeY = new double[64];
+    private double[] nodeW = new double[64];
+    private double[] nodeH = new double[64];
+    private int[] nodeDepth = new int[64];
+    private int[] nodeParent = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] leafHead = new int[64];
+    private int[] leafCount = new int[64];
+    private int nodeCount;
+
+    public PooledQuadTreeIndex(double width, double height) {
+        this(width, height, DEFAULT_MAX_BOIDS_PER_NODE, DEFAULT_MAX_DEPTH);
+    }
+
+    public PooledQuadTreeIndex(double width, double height, int maxBoidsPerNode, int maxDepth) {
+        if (maxBoidsPerNode < 1 || maxDepth < 0) {
+            throw new IllegalArgumentException("maxBoidsPerNode must be positive and maxDepth non-negative");
+        }
+        this.width = width;
+        this.height = height;
+        this.maxBoidsPerNode = maxBoidsPerNode;
+        this.maxDepth = maxDepth;
+        clear();
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        nodeCount = 1;
+        initNode(0, -1, 0, 0, width, height, 0);
+    }
+
+    private void initNode(int node, int parent, double x, double y, double w, double h, int depth) {
+        nodeX[node] = x;
+        nodeY[node] = y;
+        nodeW[node] = w;
+        nodeH[node] = h;
+        nodeDepth[node] = depth;
+        nodeParent[node] = parent;
+        firstChild[node] = -1;
+        leafHead[node] = -1;
+        leafCount[node] = 0;
+    }
+
+    @Override
+    public void insert(Boid boid) {
+        ensureCapacity(size + 1);
+        int slot = size++;
+        boids[slot] = boid;
+        pointX[slot] = boid.getX();
+        pointY[slot] = boid.getY();
+        pointId[slot] = boid.getId();
+
+        int node = 0;
+        while (true) {
+            if (firstChild[node] < 0) {
+                if (leafCount[node] < maxBoidsPerNode || nodeDepth[node] >= maxDepth) {
+                    nextInLeaf[slot] = leafHead[node];
+                    leafHead[node] = slot;
+                    leafCount[node]++;
+                    return;
+                }
+                subdivide(node);
+            }
+            node = childFor(node, pointX[slot], pointY[slot]);
+        }
+    }
+
+    private void subdivide(int node) {
+        ensureNodeCapacity(nodeCount + 4);
+        int child = nodeCount;
+        nodeCount += 4;
+
+        double halfW = nodeW[node] / 2;
+        double halfH = nodeH[node] / 2;
+        double x = nodeX[node];
+        double y = nodeY[node];
+        int depth = nodeDepth[node] + 1;
+        initNode(child, node, x, y, halfW, halfH, depth);
+        initNode(child + 1, node, x + halfW, y, halfW, halfH, depth);
+        initNode(child + 2, node, x, y + halfH, halfW, halfH, depth);
+        initNode(child + 3, node, x + halfW, y + halfH, halfW, halfH, depth);
+        firstChild[node] = child;
+
+        int slot = leafHead[node];
+        while (slot >= 0) {
+            int next = nextInLeaf[slot];
+            int target = childFor(node, pointX[slot], pointY[slot]);
+            nextInLeaf[slot] = leafHead[target];
+            leafHead[target] = slot;
+            leafCount[target]++;
+            slot = next;
+        }
+        leafHead[node] = -1;
+        leafCount[node] = 0;
+    }
+
+    // Points on or past the far edge of the world still land in the last quadrant,
+    // so nothing is dropped the way out-of-bounds inserts are in QuadTreeSpatialIndex.
+    private int childFor(int node, double x, double y) {
+        int quadrant = 0;
+        if (x >= nodeX[node] + nodeW[node] / 2) quadrant += 1;
+        if (y >= nodeY[node] + nodeH[node] / 2) quadrant += 2;
+        return firstChild[node] + quadrant;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= boids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, boids.length * 2);
+        boids = Arrays.copyOf(boids, newCapacity);
+        pointX = Arrays.copyOf(pointX, newCapacity);
+        pointY = Arrays.copyOf(pointY, newCapacity);
+        pointId = Arrays.copyOf(pointId, newCapacity);
+        nextInLeaf = Arrays.copyOf(nextInLeaf, newCapacity);
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity <= nodeX.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, nodeX.length * 2);
+        nodeX = Arrays.copyOf(nodeX, newCapacity);
+        nodeY = Arrays.copyOf(nodeY, newCapacity);
+        nodeW = Arrays.copyOf(nodeW, newCapacity);
+        nodeH = Arrays.copyOf(nodeH, newCapacity);
+        nodeDepth = Arrays.copyOf(nodeDepth, newCapacity);
+        nodeParent = Arrays.copyOf(nodeParent, newCapacity);
+        firstChild = Arrays.copyOf(firstChild, newCapacity);
+        leafHead = Arrays.copyOf(leafHead, newCapacity);
+        leafCount = Arrays.copyOf(leafCount, newCapacity);
+    }
+
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        double radiusSquared = radius * radius;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        // Stackless depth-first walk over the pooled nodes: descend into the first child
+        // while the node is in range, otherwise move on to the next sibling or climb.
+        int node = 0;
+        while (true) {
+            if (intersects(node, targetX, targetY, radiusSquared)) {
+                if (firstChild[node] >= 0) {
+                    node = firstChild[node];
+                    continue;
+                }
+                for (int slot = leafHead[node]; slot >= 0; slot = nextInLeaf[slot]) {
+                    if (pointId[slot] != targetId) {
+                        double dx = targetX - pointX[slot];
+                        double dy = targetY - pointY[slot];
+                        double distanceSquared = dx * dx + dy * dy;
+                        if (distanceSquared <= radiusSquared) {
+                            visitor.visit(boids[slot], distanceSquared);
+                        }
+                    }
+                }
+            }
+
+            while (node != 0 && node == firstChild[nodeParent[node]] + 3) {
+                node = nodeParent[node];
+            }
+            if (node == 0) {
+                return;
+            }
+            node++;
+        }
+    }
+
+    // Depth-first with the quadrant holding the target visited first, so the heap fills
+    // with close boids early and its shrinking bound prunes the remaining nodes.
+    @Override
+    public void collectNearest(Boid targetBoid, double radius, NeighborHeap heap) {
+        heap.reset(radius * radius);
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        int[] stack = heap.stack(64);
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!intersects(node, targetX, targetY, heap.bound())) {
+                continue;
+            }
+            int child = firstChild[node];
+            if (child < 0) {
+                for (int slot = leafHead[node]; slot >= 0; slot = nextInLeaf[slot]) {
+                    if (pointId[slot] != targetId) {
+                        double dx = targetX - pointX[slot];
+                        double dy = targetY - pointY[slot];
+                        heap.visit(boids[slot], dx * dx + dy * dy);
+                    }
+                }
+                continue;
+            }
+            if (top + 4 > stack.length) {
+                stack = heap.stack(top + 4);
+            }
+            int nearest = childFor(node, targetX, targetY) - child;
+            for (int i = 3; i >= 0; i--) {
+                stack[top++] = child + (nearest ^ i);
+            }
+        }
+    }
+
+    private boolean intersects(int node, double x, double y, double radiusSquared) {
+        double dx = Math.max(0, Math.max(nodeX[node] - x, x - (nodeX[node] + nodeW[node])));
+        double dy = Math.max(0, Math.max(nodeY[node] - y, y - (nodeY[node] + nodeH[node])));
+        return dx * dx + dy * dy <= radiusSquared;
+    }
+
+    @Override
+    public String getName() {
+        return "Pooled QuadTree";
+    }
+}
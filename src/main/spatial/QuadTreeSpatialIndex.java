@@ -9,6 +9,9 @@ public class QuadTreeSpatialIndex implements SpatialIndex {
     private final double width;
     private final double height;
     private static final int MAX_BOIDS_PER_NODE = 10;
+    private static final double MAX_REFIT_FRACTION = 0.25;
+    private final List<Boid> movers = new ArrayList<>();
+    private final List<Boid> outside = new ArrayList<>();
 
     public QuadTreeSpatialIndex(double width, double height) {
         this.width = width;
@@ -73,6 +76,38 @@ public class QuadTreeSpatialIndex implements SpatialIndex {
             divided = true;
         }
 
+        // Removes boids that have left this node's bounds and appends them to movers.
+        // Children that end up holding few enough boids are merged back into this node.
+        int collectMovers(List<Boid> movers) {
+            if (!divided) {
+                for (int i = boids.size() - 1; i >= 0; i--) {
+                    Boid boid = boids.get(i);
+                    if (!contains(boid.getX(), boid.getY())) {
+                        int last = boids.size() - 1;
+                        boids.set(i, boids.get(last));
+                        boids.remove(last);
+                        movers.add(boid);
+                    }
+                }
+                return boids.size();
+            }
+
+            int count = 0;
+            boolean childrenAreLeaves = true;
+            for (QuadNode child : children) {
+                count += child.collectMovers(movers);
+                childrenAreLeaves &= !child.divided;
+            }
+            if (childrenAreLeaves && count <= MAX_BOIDS_PER_NODE) {
+                for (QuadNode child : children) {
+                    boids.addAll(child.boids);
+                }
+                children = null;
+                divided = false;
+            }
+            return count;
+        }
+
         boolean contains(double px, double py) {
             return px >= x && px < x + w && py >= y && py < y + h;
         }
@@ -93,7 +128,7 @@ public class QuadTreeSpatialIndex implements SpatialIndex {
             return cornerDistSq <= radius * radius;
         }
 
-        void queryRange(double centerX, double centerY, double radius, Boid targetBoid, List<Boid> found) {
+        void queryRange(double centerX, double centerY, double radius, Boid targetBoid, NeighborVisitor visitor) {
             if (!intersects(centerX, centerY, radius)) {
                 return;
             }
@@ -105,14 +140,43 @@ public class QuadTreeSpatialIndex implements SpatialIndex {
                     double dy = centerY - boid.getY();
                     double distanceSquared = dx * dx + dy * dy;
                     if (distanceSquared <= radiusSquared) {
-                        found.add(boid);
+                        visitor.visit(boid, distanceSquared);
                     }
                 }
             }
 
             if (divided) {
                 for (QuadNode child : children) {
-                    child.queryRange(centerX, centerY, radius, targetBoid, found);
+                    child.queryRange(centerX, centerY, radius, targetBoid, visitor);
+                }
+            }
+        }
+
+        double distanceSquaredTo(double px, double py) {
+            double dx = Math.max(0, Math.max(x - px, px - (x + w)));
+            double dy = Math.max(0, Math.max(y - py, py - (y + h)));
+            return dx * dx + dy * dy;
+        }
+
+        // Visits the quadrant holding the target first so the heap fills with close
+        // boids early, then skips every node farther away than the current bound.
+        void queryNearest(double centerX, double centerY, int targetId, NeighborHeap heap) {
+            if (distanceSquaredTo(centerX, centerY) > heap.bound()) {
+                return;
+            }
+
+            for (Boid boid : boids) {
+                if (boid.getId() != targetId) {
+                    double dx = centerX - boid.getX();
+                    double dy = centerY - boid.getY();
+                    heap.visit(boid, dx * dx + dy * dy);
+                }
+            }
+
+            if (divided) {
+                int first = (centerX >= x + w / 2 ? 1 : 0) + (centerY >= y + h / 2 ? 2 : 0);
+                for (int i = 0; i < 4; i++) {
+                    children[first ^ i].queryNearest(centerX, centerY, targetId, heap);
                 }
             }
         }
@@ -121,18 +185,44 @@ public class QuadTreeSpatialIndex implements SpatialIndex {
     @Override
     public void clear() {
         root = new QuadNode(0, 0, width, height);
+        outside.clear();
     }
 
     @Override
     public void insert(Boid boid) {
-        root.insert(boid);
+        if (!root.insert(boid)) {
+            outside.add(boid);
+        }
+    }
+
+    @Override
+    public boolean refit(List<Boid> boids) {
+        movers.clear();
+        root.collectMovers(movers);
+        if (movers.size() + outside.size() > boids.size() * MAX_REFIT_FRACTION) {
+            clear();
+            insertAll(boids);
+            return false;
+        }
+
+        // Boids that fell outside the root on an earlier frame get another try as well.
+        movers.addAll(outside);
+        outside.clear();
+        for (Boid boid : movers) {
+            insert(boid);
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        root.queryRange(targetBoid.getX(), targetBoid.getY(), radius, targetBoid, visitor);
     }
 
     @Override
-    public List<Boid> findNeighbors(Boid targetBoid, double radius) {
-        List<Boid> neighbors = new ArrayList<>();
-        root.queryRange(targetBoid.getX(), targetBoid.getY(), radius, targetBoid, neighbors);
-        return neighbors;
+    public void collectNearest(Boid targetBoid, double radius, NeighborHeap heap) {
+        heap.reset(radius * radius);
+        root.queryNearest(targetBoid.getX(), targetBoid.getY(), targetBoid.getId(), heap);
     }
 
     @Override
@@ -0,0 +1,40 @@
+package main.spatial;
+
+// Stores every candidate and advances the hit count only for those in range, which
+// trades a data-dependent branch for two stores that usually land in the same lines.
+public class ScalarDistanceFilter implements DistanceFilter {
+    @Override
+    public int filter(double[] xs, double[] ys, int from, int to, double x, double y, double radiusSquared,
+                      int[] hits, double[] distances) {
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double distanceSquared = dx * dx + dy * dy;
+            hits[count] = k;
+            distances[count] = distanceSquared;
+            count += distanceSquared <= radiusSquared ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Override
+    public int filter(float[] xs, float[] ys, int from, int to, double x, double y, double radiusSquared,
+                      int[] hits, double[] distances) {
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double distanceSquared = dx * dx + dy * dy;
+            hits[count] = k;
+            distances[count] = distanceSquared;
+            count += distanceSquared <= radiusSquared ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
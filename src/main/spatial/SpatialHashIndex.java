@@ -1,38 +1,113 @@
 package main.spatial;
 
 import main.model.Boid;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 public class SpatialHashIndex implements SpatialIndex {
-    private final Map<Long, List<Boid>> grid;
-    private final double cellSize;
+    private static final double DEFAULT_CELL_SIZE = 50;
+    private static final double MIN_CELL_SIZE = 16;
+    private static final double MAX_CELL_SIZE = 50;
+
     private final int width;
     private final int height;
+    private final boolean periodic;
+    private final boolean adaptive;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    // Buckets by cell index, row by row. They are emptied in place and keep their arrays
+    // from frame to frame, so once they have grown to the flock a rebuild allocates nothing.
+    private Boid[][] cells;
+    private int[] counts;
+    private int[] occupied;
+    private int occupiedCount;
+
+    // Cells follow the query radius; see setQueryRadius.
+    public SpatialHashIndex(int width, int height) {
+        this(width, height, false);
+    }
+
+    public SpatialHashIndex(int width, int height, boolean periodic) {
+        this(width, height, DEFAULT_CELL_SIZE, periodic, true);
+    }
 
     public SpatialHashIndex(int width, int height, double cellSize) {
-        this.grid = new HashMap<>();
-        this.cellSize = cellSize;
+        this(width, height, cellSize, false);
+    }
+
+    // In periodic mode cell coordinates wrap modulo the grid and distances use the
+    // minimum image, so the world behaves like the torus Boid's wraparound makes it.
+    public SpatialHashIndex(int width, int height, double cellSize, boolean periodic) {
+        this(width, height, cellSize, periodic, false);
+    }
+
+    private SpatialHashIndex(int width, int height, double cellSize, boolean periodic, boolean adaptive) {
         this.width = width;
         this.height = height;
+        this.periodic = periodic;
+        this.adaptive = adaptive;
+        resize(cellSize);
+    }
+
+    // An adaptive index sizes its cells to the radius: up to MAX_CELL_SIZE a query scans
+    // 3x3 cells as wide as the radius; past it, cells divide the radius evenly, since a
+    // wider block of smaller cells scans less area and empty cells cost next to nothing.
+    @Override
+    public void setQueryRadius(double radius) {
+        if (adaptive && radius > 0) {
+            double size = Math.max(MIN_CELL_SIZE, radius / Math.ceil(radius / MAX_CELL_SIZE));
+            if (size != cellSize) {
+                resize(size);
+            }
+        }
+    }
+
+    private void resize(double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = periodic ? Math.max(1, (int) (width / cellSize)) : (int) (width / cellSize) + 1;
+        this.rows = periodic ? Math.max(1, (int) (height / cellSize)) : (int) (height / cellSize) + 1;
+        cells = new Boid[columns * rows][];
+        counts = new int[columns * rows];
+        occupied = new int[columns * rows];
+        occupiedCount = 0;
+    }
+
+    public double getCellSize() {
+        return cellSize;
     }
 
     @Override
     public void clear() {
-        grid.clear();
+        for (int i = 0; i < occupiedCount; i++) {
+            int cell = occupied[i];
+            Arrays.fill(cells[cell], 0, counts[cell], null);
+            counts[cell] = 0;
+        }
+        occupiedCount = 0;
     }
 
     @Override
     public void insert(Boid boid) {
-        long hash = getHash(boid.getX(), boid.getY());
-        grid.computeIfAbsent(hash, k -> new ArrayList<>()).add(boid);
+        int cell = getCell(boid.getX(), boid.getY());
+        int count = counts[cell];
+        if (count == 0) {
+            occupied[occupiedCount++] = cell;
+            if (cells[cell] == null) {
+                cells[cell] = new Boid[4];
+            }
+        } else if (count == cells[cell].length) {
+            cells[cell] = Arrays.copyOf(cells[cell], count * 2);
+        }
+        cells[cell][count] = boid;
+        counts[cell] = count + 1;
     }
 
     @Override
-    public List<Boid> findNeighbors(Boid targetBoid, double radius) {
-        List<Boid> neighbors = new ArrayList<>();
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        if (periodic) {
+            forEachPeriodicNeighbor(targetBoid, radius, visitor);
+            return;
+        }
         double radiusSquared = radius * radius;
         
         int cellRadius = (int) Math.ceil(radius / cellSize);
@@ -43,41 +118,94 @@ public class SpatialHashIndex implements SpatialIndex {
             for (int dy = -cellRadius; dy <= cellRadius; dy++) {
                 int cellX = targetCellX + dx;
                 int cellY = targetCellY + dy;
+
+                // Cells past the world edge are empty; clamping them onto the edge
+                // cell used to scan that cell (and report its boids) several times.
+                if (cellX < 0 || cellX >= columns || cellY < 0 || cellY >= rows) {
+                    continue;
+                }
                 
-                long hash = getHash(cellX * cellSize, cellY * cellSize);
-                List<Boid> cellBoids = grid.get(hash);
-                
-                if (cellBoids != null) {
-                    for (Boid boid : cellBoids) {
-                        if (boid.getId() != targetBoid.getId()) {
-                            double dx2 = targetBoid.getX() - boid.getX();
-                            double dy2 = targetBoid.getY() - boid.getY();
-                            double distanceSquared = dx2 * dx2 + dy2 * dy2;
-                            
-                            if (distanceSquared <= radiusSquared) {
-                                neighbors.add(boid);
-                            }
+                int cell = cellY * columns + cellX;
+                Boid[] cellBoids = cells[cell];
+                for (int k = 0; k < counts[cell]; k++) {
+                    Boid boid = cellBoids[k];
+                    if (boid.getId() != targetBoid.getId()) {
+                        double dx2 = targetBoid.getX() - boid.getX();
+                        double dy2 = targetBoid.getY() - boid.getY();
+                        double distanceSquared = dx2 * dx2 + dy2 * dy2;
+
+                        if (distanceSquared <= radiusSquared) {
+                            visitor.visit(boid, distanceSquared);
                         }
                     }
                 }
             }
         }
-        
-        return neighbors;
     }
     
-    private long getHash(double x, double y) {
+    private void forEachPeriodicNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        double radiusSquared = radius * radius;
+        double cellWidth = (double) width / columns;
+        double cellHeight = (double) height / rows;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+
+        int columnRadius = (int) Math.ceil(radius / cellWidth);
+        int rowRadius = (int) Math.ceil(radius / cellHeight);
+        int targetCellX = (int) Math.floor(targetX / cellWidth);
+        int targetCellY = (int) Math.floor(targetY / cellHeight);
+        int columnSpan = Math.min(2 * columnRadius + 1, columns);
+        int rowSpan = Math.min(2 * rowRadius + 1, rows);
+
+        for (int i = 0; i < columnSpan; i++) {
+            for (int j = 0; j < rowSpan; j++) {
+                int cell = wrappedCell(targetCellX - columnRadius + i, targetCellY - rowRadius + j);
+                Boid[] cellBoids = cells[cell];
+                for (int k = 0; k < counts[cell]; k++) {
+                    Boid boid = cellBoids[k];
+                    if (boid.getId() != targetBoid.getId()) {
+                        double dx = targetX - boid.getX();
+                        double dy = targetY - boid.getY();
+                        if (dx > width / 2.0) dx -= width;
+                        else if (dx < -width / 2.0) dx += width;
+                        if (dy > height / 2.0) dy -= height;
+                        else if (dy < -height / 2.0) dy += height;
+                        double distanceSquared = dx * dx + dy * dy;
+
+                        if (distanceSquared <= radiusSquared) {
+                            visitor.visit(boid, targetX - dx, targetY - dy, distanceSquared);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private int getCell(double x, double y) {
+        if (periodic) {
+            return wrappedCell((int) Math.floor(x / ((double) width / columns)),
+                    (int) Math.floor(y / ((double) height / rows)));
+        }
         int cellX = (int) (x / cellSize);
         int cellY = (int) (y / cellSize);
         
-        cellX = Math.max(0, Math.min(cellX, (int)(width / cellSize)));
-        cellY = Math.max(0, Math.min(cellY, (int)(height / cellSize)));
+        cellX = Math.max(0, Math.min(cellX, columns - 1));
+        cellY = Math.max(0, Math.min(cellY, rows - 1));
         
-        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+        return cellY * columns + cellX;
+    }
+
+    private int wrappedCell(int cellX, int cellY) {
+        return Math.floorMod(cellY, rows) * columns + Math.floorMod(cellX, columns);
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return periodic;
     }
 
     @Override
     public String getName() {
-        return "Spatial Hashing";
+        return periodic ? "Spatial Hashing (periodic)" : "Spatial Hashing";
     }
 }
\ No newline at end of file
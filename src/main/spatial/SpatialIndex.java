@@ -1,11 +1,36 @@
 package main.spatial;
 
 import main.model.Boid;
+import main.model.Precision;
 import java.util.List;
 
-public interface SpatialIndex {
+public interface SpatialIndex extends NeighborSource {
     void clear();
     void insert(Boid boid);
-    List<Boid> findNeighbors(Boid boid, double radius);
-    String getName();
-}
\ No newline at end of file
+
+    default void insertAll(List<Boid> boids) {
+        for (Boid boid : boids) {
+            insert(boid);
+        }
+    }
+
+    // Brings the index up to date after the boids inserted since the last clear() have
+    // moved. Indices that can relocate just the boids that changed cell or node override
+    // this; the default rebuilds from scratch. Returns true if the index was updated in
+    // place, false if it rebuilt.
+    default boolean refit(List<Boid> boids) {
+        clear();
+        insertAll(boids);
+        return false;
+    }
+
+    // Tells the index the radius most queries will use. Indices whose layout depends on
+    // it override this; the caller rebuilds the index before querying again.
+    default void setQueryRadius(double radius) {
+    }
+
+    // Tells the index the precision positions are stored at. Indices that copy positions
+    // may keep narrower copies; the caller rebuilds the index before querying again.
+    default void setPrecision(Precision precision) {
+    }
+}
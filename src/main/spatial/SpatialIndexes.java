@@ -0,0 +1,55 @@
+package main.spatial;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+// Looks up spatial index implementations by the short names used on the command line.
+public final class SpatialIndexes {
+    private static final Map<String, BiFunction<Integer, Integer, SpatialIndex>> FACTORIES = new LinkedHashMap<>();
+    private static final Map<String, BiFunction<Integer, Integer, SpatialIndex>> PERIODIC_FACTORIES = new LinkedHashMap<>();
+
+    static {
+        FACTORIES.put("naive", (w, h) -> new NaiveSpatialIndex());
+        FACTORIES.put("hash", (w, h) -> new SpatialHashIndex(w, h));
+        FACTORIES.put("kdtree", (w, h) -> new KDTreeSpatialIndex());
+        FACTORIES.put("quadtree", (w, h) -> new QuadTreeSpatialIndex(w, h));
+        FACTORIES.put("grid", (w, h) -> new UniformGridIndex(w, h, 50.0));
+        FACTORIES.put("balanced-kd", (w, h) -> new BalancedKDTreeIndex());
+        FACTORIES.put("pooled-quad", (w, h) -> new PooledQuadTreeIndex(w, h));
+
+        PERIODIC_FACTORIES.put("naive", NaiveSpatialIndex::new);
+        PERIODIC_FACTORIES.put("hash", (w, h) -> new SpatialHashIndex(w, h, true));
+        PERIODIC_FACTORIES.put("grid", (w, h) -> new UniformGridIndex(w, h, 50.0, true));
+    }
+
+    private SpatialIndexes() {
+    }
+
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(FACTORIES.keySet());
+    }
+
+    public static SpatialIndex create(String name, int width, int height) {
+        BiFunction<Integer, Integer, SpatialIndex> factory = FACTORIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown index '" + name + "', expected one of " + FACTORIES.keySet());
+        }
+        return factory.apply(width, height);
+    }
+
+    // Only the cell-based indices and the naive reference know about the torus.
+    public static SpatialIndex create(String name, int width, int height, boolean periodic) {
+        if (!periodic) {
+            return create(name, width, height);
+        }
+        BiFunction<Integer, Integer, SpatialIndex> factory = PERIODIC_FACTORIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Index '" + name + "' has no periodic mode, expected one of "
+                    + PERIODIC_FACTORIES.keySet());
+        }
+        return factory.apply(width, height);
+    }
+}
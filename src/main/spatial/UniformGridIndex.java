@@ -0,0 +1,513 @@
+package main.spatial;
+
+import main.model.Boid;
+import main.model.Precision;
+import java.util.Arrays;
+import java.util.List;
+
+public class UniformGridIndex implements SpatialIndex {
+    private final double cellSize;
+    private final double width;
+    private final double height;
+    private final boolean periodic;
+    private final int columns;
+    private final int rows;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int[] cellStart;
+    private final int[] cellCount;
+    private final int[] cellCursor;
+    private final DistanceFilter filter = DistanceFilters.current();
+    private final ThreadLocal<CandidateBuffer> candidates = ThreadLocal.withInitial(CandidateBuffer::new);
+
+    private static final double MAX_REFIT_FRACTION = 0.25;
+
+    private Boid[] boids = new Boid[64];
+    private int[] cellOf = new int[64];
+    private int[] slotOf = new int[64];
+    private int[] sortedIds = new int[64];
+    private int[] sortedBoidIds = new int[64];
+    private double[] sortedX = new double[64];
+    private double[] sortedY = new double[64];
+    // At reduced precision the sorted positions are kept as floats; the unused pair is empty.
+    private boolean compact;
+    private float[] compactX = new float[0];
+    private float[] compactY = new float[0];
+    private int size;
+    private volatile boolean dirty;
+
+    public UniformGridIndex(int width, int height, double cellSize) {
+        this(width, height, cellSize, false);
+    }
+
+    // In periodic mode the grid tiles the world exactly, so cells are stretched to
+    // width / columns and height / rows; both are at least cellSize.
+    public UniformGridIndex(int width, int height, double cellSize, boolean periodic) {
+        this.width = width;
+        this.height = height;
+        this.periodic = periodic;
+        this.cellSize = cellSize;
+        if (periodic) {
+            this.columns = Math.max(1, (int) (width / cellSize));
+            this.rows = Math.max(1, (int) (height / cellSize));
+            this.cellWidth = (double) width / columns;
+            this.cellHeight = (double) height / rows;
+        } else {
+            this.columns = (int) (width / cellSize) + 1;
+            this.rows = (int) (height / cellSize) + 1;
+            this.cellWidth = cellSize;
+            this.cellHeight = cellSize;
+        }
+        this.cellStart = new int[columns * rows];
+        this.cellCount = new int[columns * rows];
+        this.cellCursor = new int[columns * rows];
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        dirty = false;
+    }
+
+    @Override
+    public void insert(Boid boid) {
+        ensureCapacity(size + 1);
+        boids[size++] = boid;
+        dirty = true;
+    }
+
+    @Override
+    public void insertAll(List<Boid> newBoids) {
+        ensureCapacity(size + newBoids.size());
+        for (Boid boid : newBoids) {
+            boids[size++] = boid;
+        }
+        build();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= boids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, boids.length * 2);
+        boids = Arrays.copyOf(boids, newCapacity);
+        cellOf = new int[newCapacity];
+        slotOf = new int[newCapacity];
+        sortedIds = new int[newCapacity];
+        sortedBoidIds = new int[newCapacity];
+        allocatePositions(newCapacity);
+    }
+
+    private void allocatePositions(int capacity) {
+        sortedX = new double[compact ? 0 : capacity];
+        sortedY = new double[compact ? 0 : capacity];
+        compactX = new float[compact ? capacity : 0];
+        compactY = new float[compact ? capacity : 0];
+    }
+
+    // Float and 16-bit positions are exact as floats, so the compact copies find the
+    // same neighbors at the same distances.
+    @Override
+    public void setPrecision(Precision precision) {
+        boolean compact = precision != Precision.DOUBLE;
+        if (compact != this.compact) {
+            this.compact = compact;
+            allocatePositions(boids.length);
+            size = 0;
+            dirty = false;
+        }
+    }
+
+    // Counting sort of the inserted boids by cell: one pass to count, a prefix sum
+    // for the cell offsets, and one pass to scatter ids and positions into place.
+    private synchronized void build() {
+        Arrays.fill(cellCount, 0);
+        for (int i = 0; i < size; i++) {
+            int cell = cellIndex(boids[i].getX(), boids[i].getY());
+            cellOf[i] = cell;
+            cellCount[cell]++;
+        }
+
+        int offset = 0;
+        for (int cell = 0; cell < cellStart.length; cell++) {
+            cellStart[cell] = offset;
+            cellCursor[cell] = offset;
+            offset += cellCount[cell];
+        }
+
+        for (int i = 0; i < size; i++) {
+            int slot = cellCursor[cellOf[i]]++;
+            Boid boid = boids[i];
+            sortedIds[slot] = i;
+            slotOf[i] = slot;
+            sortedBoidIds[slot] = boid.getId();
+            storePosition(slot, boid);
+        }
+        dirty = false;
+    }
+
+    private void ensureBuilt() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    build();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean refit(List<Boid> current) {
+        ensureBuilt();
+        if (current.size() != size) {
+            rebuild(current);
+            return false;
+        }
+
+        int maxMoved = (int) (size * MAX_REFIT_FRACTION);
+        int moved = 0;
+        for (int i = 0; i < size; i++) {
+            Boid boid = current.get(i);
+            if (boid != boids[i]) {
+                rebuild(current);
+                return false;
+            }
+            int cell = cellIndex(boid.getX(), boid.getY());
+            if (cell != cellOf[i]) {
+                if (++moved > maxMoved) {
+                    build();
+                    return false;
+                }
+                relocate(i, cell);
+            }
+        }
+
+        for (int k = 0; k < size; k++) {
+            storePosition(k, boids[sortedIds[k]]);
+        }
+        return true;
+    }
+
+    private void storePosition(int slot, Boid boid) {
+        if (compact) {
+            compactX[slot] = (float) boid.getX();
+            compactY[slot] = (float) boid.getY();
+        } else {
+            sortedX[slot] = boid.getX();
+            sortedY[slot] = boid.getY();
+        }
+    }
+
+    private double slotX(int slot) {
+        return compact ? compactX[slot] : sortedX[slot];
+    }
+
+    private double slotY(int slot) {
+        return compact ? compactY[slot] : sortedY[slot];
+    }
+
+    // Filters the slots in [start, end) into the buffer and returns how many it kept.
+    private int filter(int start, int end, double x, double y, double radiusSquared, CandidateBuffer buffer) {
+        buffer.reserve(end - start);
+        return compact
+                ? filter.filter(compactX, compactY, start, end, x, y, radiusSquared, buffer.hits, buffer.distances)
+                : filter.filter(sortedX, sortedY, start, end, x, y, radiusSquared, buffer.hits, buffer.distances);
+    }
+
+    private void rebuild(List<Boid> current) {
+        clear();
+        insertAll(current);
+    }
+
+    // Swaps the boid's slot across each cell boundary between its old and new cell,
+    // keeping every cell contiguous.
+    private void relocate(int i, int toCell) {
+        int fromCell = cellOf[i];
+        int slot = slotOf[i];
+        if (toCell > fromCell) {
+            for (int cell = fromCell; cell < toCell; cell++) {
+                int last = cellStart[cell] + cellCount[cell] - 1;
+                swapSlots(slot, last);
+                slot = last;
+                cellCount[cell]--;
+                cellStart[cell + 1]--;
+                cellCount[cell + 1]++;
+            }
+        } else {
+            for (int cell = fromCell; cell > toCell; cell--) {
+                int first = cellStart[cell];
+                swapSlots(slot, first);
+                slot = first;
+                cellStart[cell]++;
+                cellCount[cell]--;
+                cellCount[cell - 1]++;
+            }
+        }
+        cellOf[i] = toCell;
+    }
+
+    private void swapSlots(int a, int b) {
+        if (a == b) {
+            return;
+        }
+        int id = sortedIds[a];
+        sortedIds[a] = sortedIds[b];
+        sortedIds[b] = id;
+        int boidId = sortedBoidIds[a];
+        sortedBoidIds[a] = sortedBoidIds[b];
+        sortedBoidIds[b] = boidId;
+        if (compact) {
+            float tmp = compactX[a];
+            compactX[a] = compactX[b];
+            compactX[b] = tmp;
+            tmp = compactY[a];
+            compactY[a] = compactY[b];
+            compactY[b] = tmp;
+        } else {
+            double tmp = sortedX[a];
+            sortedX[a] = sortedX[b];
+            sortedX[b] = tmp;
+            tmp = sortedY[a];
+            sortedY[a] = sortedY[b];
+            sortedY[b] = tmp;
+        }
+        slotOf[sortedIds[a]] = a;
+        slotOf[sortedIds[b]] = b;
+    }
+
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        ensureBuilt();
+        if (periodic) {
+            forEachPeriodicNeighbor(targetBoid, radius, visitor);
+            return;
+        }
+        double radiusSquared = radius * radius;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        int cellRadius = (int) Math.ceil(radius / cellSize);
+        int targetColumn = clamp((int) (targetX / cellSize), columns);
+        int targetRow = clamp((int) (targetY / cellSize), rows);
+        int firstColumn = Math.max(0, targetColumn - cellRadius);
+        int lastColumn = Math.min(columns - 1, targetColumn + cellRadius);
+        int firstRow = Math.max(0, targetRow - cellRadius);
+        int lastRow = Math.min(rows - 1, targetRow + cellRadius);
+        CandidateBuffer buffer = candidates.get();
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            // Cells in a row are adjacent in the sorted arrays, so the whole span
+            // of columns is a single contiguous range.
+            int firstCell = row * columns + firstColumn;
+            int lastCell = row * columns + lastColumn;
+            int start = cellStart[firstCell];
+            int end = cellStart[lastCell] + cellCount[lastCell];
+
+            int count = filter(start, end, targetX, targetY, radiusSquared, buffer);
+            int[] hits = buffer.hits;
+            double[] distances = buffer.distances;
+            for (int h = 0; h < count; h++) {
+                int k = hits[h];
+                if (sortedBoidIds[k] != targetId) {
+                    visitor.visit(boids[sortedIds[k]], distances[h]);
+                }
+            }
+        }
+    }
+
+    // Half-shell walk: each boid against the boids after it in its own row span and in
+    // the next cellRadius rows, so every pair is found once.
+    @Override
+    public void forEachPair(List<Boid> current, double radius, PairVisitor visitor) {
+        if (periodic) {
+            SpatialIndex.super.forEachPair(current, radius, visitor);
+            return;
+        }
+        ensureBuilt();
+        double radiusSquared = radius * radius;
+        int cellRadius = (int) Math.ceil(radius / cellSize);
+        CandidateBuffer buffer = candidates.get();
+
+        for (int row = 0; row < rows; row++) {
+            int lastRow = Math.min(rows - 1, row + cellRadius);
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                int start = cellStart[cell];
+                int end = start + cellCount[cell];
+                if (start == end) {
+                    continue;
+                }
+                int firstColumn = Math.max(0, column - cellRadius);
+                int lastColumn = Math.min(columns - 1, column + cellRadius);
+                int rowEnd = cellStart[row * columns + lastColumn] + cellCount[row * columns + lastColumn];
+
+                for (int k = start; k < end; k++) {
+                    scanPairs(k, k + 1, rowEnd, radiusSquared, buffer, visitor);
+                    for (int below = row + 1; below <= lastRow; below++) {
+                        int firstCell = below * columns + firstColumn;
+                        int lastCell = below * columns + lastColumn;
+                        scanPairs(k, cellStart[firstCell], cellStart[lastCell] + cellCount[lastCell], radiusSquared,
+                                buffer, visitor);
+                    }
+                }
+            }
+        }
+    }
+
+    private void scanPairs(int slot, int start, int end, double radiusSquared, CandidateBuffer buffer,
+                           PairVisitor visitor) {
+        double x = slotX(slot);
+        double y = slotY(slot);
+        int count = filter(start, end, x, y, radiusSquared, buffer);
+        if (count == 0) {
+            return;
+        }
+        int[] hits = buffer.hits;
+        double[] distances = buffer.distances;
+        Boid boid = boids[sortedIds[slot]];
+        for (int h = 0; h < count; h++) {
+            int k = hits[h];
+            visitor.visit(boid, boids[sortedIds[k]], x - slotX(k), y - slotY(k), distances[h]);
+        }
+    }
+
+    // Scans square rings of cells outward from the target's cell and stops once the
+    // inner edge of the next ring lies beyond the k-th nearest distance found so far.
+    @Override
+    public void collectNearest(Boid targetBoid, double radius, NeighborHeap heap) {
+        if (periodic) {
+            SpatialIndex.super.collectNearest(targetBoid, radius, heap);
+            return;
+        }
+        ensureBuilt();
+        heap.reset(radius * radius);
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        int cellRadius = (int) Math.ceil(radius / cellSize);
+        int targetColumn = clamp((int) (targetX / cellSize), columns);
+        int targetRow = clamp((int) (targetY / cellSize), rows);
+        CandidateBuffer buffer = candidates.get();
+
+        for (int ring = 0; ring <= cellRadius; ring++) {
+            double gap = (ring - 1) * cellSize;
+            if (ring > 1 && gap * gap > heap.bound()) {
+                return;
+            }
+            int firstColumn = Math.max(0, targetColumn - ring);
+            int lastColumn = Math.min(columns - 1, targetColumn + ring);
+            for (int row = Math.max(0, targetRow - ring); row <= Math.min(rows - 1, targetRow + ring); row++) {
+                if (row == targetRow - ring || row == targetRow + ring) {
+                    scanNearest(row * columns + firstColumn, row * columns + lastColumn, targetX, targetY, targetId,
+                            buffer, heap);
+                } else {
+                    if (targetColumn - ring >= 0) {
+                        int cell = row * columns + targetColumn - ring;
+                        scanNearest(cell, cell, targetX, targetY, targetId, buffer, heap);
+                    }
+                    if (ring > 0 && targetColumn + ring < columns) {
+                        int cell = row * columns + targetColumn + ring;
+                        scanNearest(cell, cell, targetX, targetY, targetId, buffer, heap);
+                    }
+                }
+            }
+        }
+    }
+
+    // Candidates past the heap's bound at the start of the span could never be kept, so
+    // only the ones the filter passes reach the heap.
+    private void scanNearest(int firstCell, int lastCell, double targetX, double targetY, int targetId,
+                             CandidateBuffer buffer, NeighborHeap heap) {
+        int start = cellStart[firstCell];
+        int end = cellStart[lastCell] + cellCount[lastCell];
+        int count = filter(start, end, targetX, targetY, heap.bound(), buffer);
+        int[] hits = buffer.hits;
+        double[] distances = buffer.distances;
+        for (int h = 0; h < count; h++) {
+            int k = hits[h];
+            if (sortedBoidIds[k] != targetId) {
+                heap.visit(boids[sortedIds[k]], distances[h]);
+            }
+        }
+    }
+
+    // Rows and columns wrap instead of being clipped, and candidates are measured by
+    // minimum image.
+    private void forEachPeriodicNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        double radiusSquared = radius * radius;
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+        int targetId = targetBoid.getId();
+
+        int columnRadius = (int) Math.ceil(radius / cellWidth);
+        int rowRadius = (int) Math.ceil(radius / cellHeight);
+        int targetColumn = Math.floorMod((int) Math.floor(targetX / cellWidth), columns);
+        int targetRow = Math.floorMod((int) Math.floor(targetY / cellHeight), rows);
+        int rowSpan = Math.min(2 * rowRadius + 1, rows);
+
+        for (int r = 0; r < rowSpan; r++) {
+            int rowBase = Math.floorMod(targetRow - rowRadius + r, rows) * columns;
+            int firstColumn = targetColumn - columnRadius;
+            int lastColumn = targetColumn + columnRadius;
+            if (lastColumn - firstColumn + 1 >= columns) {
+                scanPeriodic(rowBase, 0, columns - 1, targetX, targetY, targetId, radiusSquared, visitor);
+            } else if (firstColumn < 0) {
+                scanPeriodic(rowBase, firstColumn + columns, columns - 1, targetX, targetY, targetId, radiusSquared, visitor);
+                scanPeriodic(rowBase, 0, lastColumn, targetX, targetY, targetId, radiusSquared, visitor);
+            } else if (lastColumn >= columns) {
+                scanPeriodic(rowBase, firstColumn, columns - 1, targetX, targetY, targetId, radiusSquared, visitor);
+                scanPeriodic(rowBase, 0, lastColumn - columns, targetX, targetY, targetId, radiusSquared, visitor);
+            } else {
+                scanPeriodic(rowBase, firstColumn, lastColumn, targetX, targetY, targetId, radiusSquared, visitor);
+            }
+        }
+    }
+
+    private void scanPeriodic(int rowBase, int firstColumn, int lastColumn, double targetX, double targetY,
+                              int targetId, double radiusSquared, NeighborVisitor visitor) {
+        double halfWidth = width / 2;
+        double halfHeight = height / 2;
+        int start = cellStart[rowBase + firstColumn];
+        int end = cellStart[rowBase + lastColumn] + cellCount[rowBase + lastColumn];
+
+        for (int k = start; k < end; k++) {
+            if (sortedBoidIds[k] != targetId) {
+                double dx = targetX - slotX(k);
+                double dy = targetY - slotY(k);
+                if (dx > halfWidth) dx -= width;
+                else if (dx < -halfWidth) dx += width;
+                if (dy > halfHeight) dy -= height;
+                else if (dy < -halfHeight) dy += height;
+                double distanceSquared = dx * dx + dy * dy;
+
+                if (distanceSquared <= radiusSquared) {
+                    visitor.visit(boids[sortedIds[k]], targetX - dx, targetY - dy, distanceSquared);
+                }
+            }
+        }
+    }
+
+    private int cellIndex(double x, double y) {
+        if (periodic) {
+            return Math.floorMod((int) Math.floor(y / cellHeight), rows) * columns
+                    + Math.floorMod((int) Math.floor(x / cellWidth), columns);
+        }
+        return clamp((int) (y / cellSize), rows) * columns + clamp((int) (x / cellSize), columns);
+    }
+
+    private static int clamp(int cell, int cells) {
+        return Math.max(0, Math.min(cell, cells - 1));
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return periodic;
+    }
+
+    @Override
+    public String getName() {
+        return periodic ? "Uniform Grid (periodic)" : "Uniform Grid";
+    }
+}
@@ -0,0 +1,305 @@
+package main.spatial;
+
+import main.model.Boid;
+import java.util.Arrays;
+import java.util.List;
+
+// Verlet neighbor lists: each boid's neighbors within radius + skin, built with one pair
+// pass over an index and reused until a boid has moved skin / 2, since until then a
+// list filtered by the true radius holds exactly what a fresh query would find.
+// A few boids that moved further, usually by wrapping, are checked against everyone
+// instead of forcing a rebuild. The lists only answer queries; they are rebuilt from
+// an index.
+public class VerletNeighborList implements NeighborSource {
+    private static final int MAX_MOVERS = 32;
+
+    private final double skin;
+    private final double width;
+    private final double height;
+
+    private Boid[] boids = new Boid[64];
+    private int[] slotOf = new int[64];
+    private double[] builtX = new double[64];
+    private double[] builtY = new double[64];
+    private double[] slotX = new double[64];
+    private double[] slotY = new double[64];
+    private int[] cellCount = new int[0];
+    private int[] listStart = new int[65];
+    private int[] listEnd = new int[64];
+    private int[] neighbors = new int[1024];
+    private int[] pairs = new int[1024];
+    private boolean[] moved = new boolean[64];
+    private final int[] movers = new int[MAX_MOVERS];
+    private int moverCount;
+    private int size;
+    private int pairCount;
+    private double radius;
+    private boolean periodic;
+    private boolean built;
+    private String indexName = "";
+    private final PairVisitor collector = (a, b, dx, dy, distanceSquared) -> {
+        if (pairCount * 2 == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[pairCount * 2] = slotOf[a.getIndex()];
+        pairs[pairCount * 2 + 1] = slotOf[b.getIndex()];
+        pairCount++;
+    };
+
+    public VerletNeighborList(double skin, int width, int height) {
+        if (skin <= 0) {
+            throw new IllegalArgumentException("Skin must be positive, was " + skin);
+        }
+        this.skin = skin;
+        this.width = width;
+        this.height = height;
+    }
+
+    public double getSkin() {
+        return skin;
+    }
+
+    // The index must hold the boids' current positions, and each boid's index must be its
+    // position in the list, as for FlockSimulation's boids.
+    public void rebuild(SpatialIndex index, List<Boid> current, double radius) {
+        this.radius = radius;
+        this.periodic = index.isPeriodic();
+        this.indexName = index.getName();
+        size = current.size();
+        if (boids.length < size) {
+            int capacity = Math.max(size, boids.length * 2);
+            boids = new Boid[capacity];
+            slotOf = new int[capacity];
+            builtX = new double[capacity];
+            builtY = new double[capacity];
+            slotX = new double[capacity];
+            slotY = new double[capacity];
+            listStart = new int[capacity + 1];
+            listEnd = new int[capacity];
+            moved = new boolean[capacity];
+        }
+        clearMovers();
+
+        assignSlots(current, radius + skin);
+        pairCount = 0;
+        index.forEachPair(current, radius + skin, collector);
+
+        // Counting sort of both ends of every pair into the flat array.
+        Arrays.fill(listStart, 0, size + 1, 0);
+        for (int p = 0; p < pairCount * 2; p++) {
+            listStart[pairs[p] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            listStart[i + 1] += listStart[i];
+            listEnd[i] = listStart[i];
+        }
+        if (neighbors.length < pairCount * 2) {
+            neighbors = new int[Math.max(pairCount * 2, neighbors.length * 2)];
+        }
+        for (int p = 0; p < pairCount; p++) {
+            int a = pairs[p * 2];
+            int b = pairs[p * 2 + 1];
+            neighbors[listEnd[a]++] = b;
+            neighbors[listEnd[b]++] = a;
+        }
+        built = true;
+    }
+
+    // Counting sort of the boids by the cell of side listRadius they are in.
+    private void assignSlots(List<Boid> current, double listRadius) {
+        int columns = Math.max(1, (int) Math.ceil(width / listRadius));
+        int rows = Math.max(1, (int) Math.ceil(height / listRadius));
+        if (cellCount.length < columns * rows + 1) {
+            cellCount = new int[columns * rows + 1];
+        }
+        Arrays.fill(cellCount, 0, columns * rows + 1, 0);
+        for (int i = 0; i < size; i++) {
+            Boid boid = current.get(i);
+            int cell = cellOf(boid.getX(), boid.getY(), listRadius, columns, rows);
+            slotOf[i] = cell;
+            cellCount[cell + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellCount[cell + 1] += cellCount[cell];
+        }
+        for (int i = 0; i < size; i++) {
+            Boid boid = current.get(i);
+            int slot = cellCount[slotOf[i]]++;
+            slotOf[i] = slot;
+            boids[slot] = boid;
+            builtX[slot] = slotX[slot] = boid.getX();
+            builtY[slot] = slotY[slot] = boid.getY();
+        }
+    }
+
+    private static int cellOf(double x, double y, double cellSize, int columns, int rows) {
+        int column = Math.max(0, Math.min(columns - 1, (int) (x / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int) (y / cellSize)));
+        return row * columns + column;
+    }
+
+    // True while the same boids are queried at the same radius and at most MAX_MOVERS
+    // boids have moved more than skin / 2 since rebuild().
+    public boolean isValid(List<Boid> current, double radius) {
+        if (!built || current.size() != size || radius != this.radius) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (boids[slotOf[i]] != current.get(i)) {
+                return false;
+            }
+        }
+        clearMovers();
+        double limitSquared = skin * skin / 4;
+        for (int slot = 0; slot < size; slot++) {
+            Boid boid = boids[slot];
+            double x = boid.getX();
+            double y = boid.getY();
+            slotX[slot] = x;
+            slotY[slot] = y;
+            double dx = wrapX(x - builtX[slot]);
+            double dy = wrapY(y - builtY[slot]);
+            if (dx * dx + dy * dy > limitSquared) {
+                if (moverCount == MAX_MOVERS) {
+                    clearMovers();
+                    return false;
+                }
+                moved[slot] = true;
+                movers[moverCount++] = slot;
+            }
+        }
+        return true;
+    }
+
+    public int getMoverCount() {
+        return moverCount;
+    }
+
+    private void clearMovers() {
+        for (int k = 0; k < moverCount; k++) {
+            moved[movers[k]] = false;
+        }
+        moverCount = 0;
+    }
+
+    // Only periodic worlds measure by minimum image; without it a boid that wraps around
+    // the edge has jumped a world width and becomes a mover.
+    private double wrapX(double dx) {
+        if (periodic) {
+            if (dx > width / 2) return dx - width;
+            if (dx < -width / 2) return dx + width;
+        }
+        return dx;
+    }
+
+    private double wrapY(double dy) {
+        if (periodic) {
+            if (dy > height / 2) return dy - height;
+            if (dy < -height / 2) return dy + height;
+        }
+        return dy;
+    }
+
+    // Answers from the boid's list, then checks the movers. Movers, and boids that moved
+    // past skin / 2 after isValid() during an in-place step, are checked against everyone.
+    @Override
+    public void forEachNeighbor(Boid targetBoid, double radius, NeighborVisitor visitor) {
+        checkRadius(radius);
+        double radiusSquared = radius * radius;
+        int i = slotOf[targetBoid.getIndex()];
+        double targetX = targetBoid.getX();
+        double targetY = targetBoid.getY();
+
+        if ((moverCount > 0 && moved[i]) || hasLeftList(i, targetX, targetY)) {
+            for (int j = 0; j < size; j++) {
+                if (j != i) {
+                    visitIfWithin(targetX, targetY, j, radiusSquared, visitor);
+                }
+            }
+            return;
+        }
+        for (int k = listStart[i], end = listStart[i + 1]; k < end; k++) {
+            int j = neighbors[k];
+            if (moverCount == 0 || !moved[j]) {
+                visitIfWithin(targetX, targetY, j, radiusSquared, visitor);
+            }
+        }
+        for (int k = 0; k < moverCount; k++) {
+            visitIfWithin(targetX, targetY, movers[k], radiusSquared, visitor);
+        }
+    }
+
+    private boolean hasLeftList(int slot, double x, double y) {
+        double dx = wrapX(x - builtX[slot]);
+        double dy = wrapY(y - builtY[slot]);
+        return dx * dx + dy * dy > skin * skin / 4;
+    }
+
+    private void visitIfWithin(double targetX, double targetY, int slot, double radiusSquared, NeighborVisitor visitor) {
+        double dx = wrapX(targetX - slotX[slot]);
+        double dy = wrapY(targetY - slotY[slot]);
+        double distanceSquared = dx * dx + dy * dy;
+
+        if (distanceSquared <= radiusSquared) {
+            if (periodic) {
+                visitor.visit(boids[slot], targetX - dx, targetY - dy, distanceSquared);
+            } else {
+                visitor.visit(boids[slot], distanceSquared);
+            }
+        }
+    }
+
+    // Each list pair once, from its lower slot, then each mover against everyone else; a
+    // pair of movers is taken from the mover with the lower slot.
+    @Override
+    public void forEachPair(List<Boid> current, double radius, PairVisitor visitor) {
+        checkRadius(radius);
+        double radiusSquared = radius * radius;
+        for (int i = 0; i < size; i++) {
+            if (moverCount > 0 && moved[i]) {
+                continue;
+            }
+            for (int k = listStart[i], end = listStart[i + 1]; k < end; k++) {
+                int j = neighbors[k];
+                if (j > i && (moverCount == 0 || !moved[j])) {
+                    visitPairIfWithin(i, j, radiusSquared, visitor);
+                }
+            }
+        }
+        for (int k = 0; k < moverCount; k++) {
+            int i = movers[k];
+            for (int j = 0; j < size; j++) {
+                if (j != i && (!moved[j] || j > i)) {
+                    visitPairIfWithin(i, j, radiusSquared, visitor);
+                }
+            }
+        }
+    }
+
+    private void visitPairIfWithin(int a, int b, double radiusSquared, PairVisitor visitor) {
+        double dx = wrapX(slotX[a] - slotX[b]);
+        double dy = wrapY(slotY[a] - slotY[b]);
+        double distanceSquared = dx * dx + dy * dy;
+
+        if (distanceSquared <= radiusSquared) {
+            visitor.visit(boids[a], boids[b], dx, dy, distanceSquared);
+        }
+    }
+
+    // Larger radii than the lists were built for would miss neighbors.
+    private void checkRadius(double radius) {
+        if (radius > this.radius) {
+            throw new IllegalArgumentException("Neighbor lists were built for radius " + this.radius + ", not " + radius);
+        }
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return periodic;
+    }
+
+    @Override
+    public String getName() {
+        return indexName + " + Verlet lists";
+    }
+}
@@ -0,0 +1,105 @@
+package main.spatial.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import main.spatial.DistanceFilter;
+
+// Measures a vector of candidates at once. Partly-in-range vectors store every lane's
+// distance and compact the hits down over them in place; float positions are loaded at
+// half width and widened. About 2x on long, sparse spans (naive, grid rows at 50k boids)
+// but 15-60% slower on short or dense ones, so it is not the default.
+public class VectorDistanceFilter implements DistanceFilter {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> HALF_FLOAT_SPECIES =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+    @Override
+    public int filter(double[] xs, double[] ys, int from, int to, double x, double y, double radiusSquared,
+                      int[] hits, double[] distances) {
+        int count = 0;
+        int k = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        if (k < upper) {
+            DoubleVector targetX = DoubleVector.broadcast(SPECIES, x);
+            DoubleVector targetY = DoubleVector.broadcast(SPECIES, y);
+            for (; k < upper; k += SPECIES.length()) {
+                DoubleVector dx = targetX.sub(DoubleVector.fromArray(SPECIES, xs, k));
+                DoubleVector dy = targetY.sub(DoubleVector.fromArray(SPECIES, ys, k));
+                count = collect(dx.mul(dx).add(dy.mul(dy)), radiusSquared, k, count, hits, distances);
+            }
+        }
+        for (; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double distanceSquared = dx * dx + dy * dy;
+            hits[count] = k;
+            distances[count] = distanceSquared;
+            count += distanceSquared <= radiusSquared ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Override
+    public int filter(float[] xs, float[] ys, int from, int to, double x, double y, double radiusSquared,
+                      int[] hits, double[] distances) {
+        int count = 0;
+        int k = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        if (k < upper) {
+            DoubleVector targetX = DoubleVector.broadcast(SPECIES, x);
+            DoubleVector targetY = DoubleVector.broadcast(SPECIES, y);
+            for (; k < upper; k += SPECIES.length()) {
+                DoubleVector dx = targetX.sub(widen(xs, k));
+                DoubleVector dy = targetY.sub(widen(ys, k));
+                count = collect(dx.mul(dx).add(dy.mul(dy)), radiusSquared, k, count, hits, distances);
+            }
+        }
+        for (; k < to; k++) {
+            double dx = x - xs[k];
+            double dy = y - ys[k];
+            double distanceSquared = dx * dx + dy * dy;
+            hits[count] = k;
+            distances[count] = distanceSquared;
+            count += distanceSquared <= radiusSquared ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static DoubleVector widen(float[] values, int k) {
+        return (DoubleVector) FloatVector.fromArray(HALF_FLOAT_SPECIES, values, k)
+                .convertShape(VectorOperators.F2D, SPECIES, 0);
+    }
+
+    // Appends the lanes in range, which start at slot k, after the first count hits.
+    private static int collect(DoubleVector distanceSquared, double radiusSquared, int k, int count, int[] hits,
+                               double[] distances) {
+        VectorMask<Double> inRange = distanceSquared.compare(VectorOperators.LE, radiusSquared);
+        if (inRange.allTrue()) {
+            distanceSquared.intoArray(distances, count);
+            for (int lane = 0; lane < SPECIES.length(); lane++) {
+                hits[count + lane] = k + lane;
+            }
+            return count + SPECIES.length();
+        }
+        if (inRange.anyTrue()) {
+            int base = count;
+            distanceSquared.intoArray(distances, base);
+            for (int lane = 0; lane < SPECIES.length(); lane++) {
+                double laneDistance = distances[base + lane];
+                hits[count] = k + lane;
+                distances[count] = laneDistance;
+                count += laneDistance <= radiusSquared ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+}
@@ -1,7 +1,9 @@
 package main.ui;
 
-import main.model.Boid;
 import main.simulation.FlockSimulation;
+import main.simulation.FrameMetrics;
+import main.simulation.SimulationRunner;
+import main.simulation.Snapshot;
 import main.spatial.*;
 import javax.swing.*;
 import java.awt.*;
@@ -10,19 +12,23 @@ import java.awt.event.ActionListener;
 import java.util.List;
 
 public class BoidPanel extends JPanel implements ActionListener {
-    private final FlockSimulation simulation;
-    private final Timer animationTimer;
-    private boolean running = false;
+    private final SimulationRunner runner;
+    private final Timer repaintTimer;
     
     private final JSlider boidCountSlider;
     private final JSlider radiusSlider;
     private final JButton playPauseButton;
     private final JComboBox<SpatialIndexOption> spatialIndexCombo;
     private final JLabel performanceLabel;
+    private final JCheckBox statsCheckBox;
+    private final FrameMetrics metrics;
+    private final SpriteRenderer renderer = new SpriteRenderer();
     
     private static final int PANEL_WIDTH = 1000;
     private static final int PANEL_HEIGHT = 700;
     private static final int CONTROL_HEIGHT = 100;
+    private static final double STEPS_PER_SECOND = 60;
+    private static final Font STATS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
 
     private static class SpatialIndexOption {
         private final String name;
@@ -48,10 +54,13 @@ public class BoidPanel extends JPanel implements ActionListener {
         setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT + CONTROL_HEIGHT));
         setBackground(Color.BLACK);
         
-        simulation = new FlockSimulation(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT);
+        FlockSimulation simulation = new FlockSimulation(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT);
         simulation.setBoidCount(100);
+        runner = new SimulationRunner(simulation, STEPS_PER_SECOND);
         
-        animationTimer = new Timer(16, this);
+        // The simulation steps on the runner's thread; the EDT only paints the latest
+        // snapshot, so a slow step no longer freezes the controls.
+        repaintTimer = new Timer(16, this);
         
         boidCountSlider = new JSlider(10, 5000, 100);
         boidCountSlider.setMajorTickSpacing(1000);
@@ -59,7 +68,8 @@ public class BoidPanel extends JPanel implements ActionListener {
         boidCountSlider.setPaintTicks(true);
         boidCountSlider.setPaintLabels(true);
         boidCountSlider.addChangeListener(e -> {
-            simulation.setBoidCount(boidCountSlider.getValue());
+            int count = boidCountSlider.getValue();
+            runner.submit(sim -> sim.setBoidCount(count));
         });
         
         radiusSlider = new JSlider(10, 150, 50);
@@ -68,7 +78,8 @@ public class BoidPanel extends JPanel implements ActionListener {
         radiusSlider.setPaintTicks(true);
         radiusSlider.setPaintLabels(true);
         radiusSlider.addChangeListener(e -> {
-            simulation.setNeighborRadius(radiusSlider.getValue());
+            int radius = radiusSlider.getValue();
+            runner.submit(sim -> sim.setNeighborRadius(radius));
         });
         
         playPauseButton = new JButton("Start");
@@ -77,19 +88,35 @@ public class BoidPanel extends JPanel implements ActionListener {
         SpatialIndexOption[] spatialOptions = {
             new SpatialIndexOption("Naive O(n²)", new NaiveSpatialIndex()),
             new SpatialIndexOption("KD-Tree", new KDTreeSpatialIndex()),
-            new SpatialIndexOption("Spatial Hashing", new SpatialHashIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT, 50)),
-            new SpatialIndexOption("QuadTree", new QuadTreeSpatialIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT))
+            new SpatialIndexOption("Balanced KD-Tree", new BalancedKDTreeIndex()),
+            new SpatialIndexOption("Spatial Hashing", new SpatialHashIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT)),
+            new SpatialIndexOption("QuadTree", new QuadTreeSpatialIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT)),
+            new SpatialIndexOption("Pooled QuadTree", new PooledQuadTreeIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT)),
+            new SpatialIndexOption("Uniform Grid", new UniformGridIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT, 50)),
+            new SpatialIndexOption("Uniform Grid (periodic)", new UniformGridIndex(PANEL_WIDTH, PANEL_HEIGHT - CONTROL_HEIGHT, 50, true))
         };
         
         spatialIndexCombo = new JComboBox<>(spatialOptions);
         spatialIndexCombo.addActionListener(e -> {
             SpatialIndexOption selected = (SpatialIndexOption) spatialIndexCombo.getSelectedItem();
             if (selected != null) {
-                simulation.setSpatialIndex(selected.getSpatialIndex());
+                runner.submit(sim -> sim.setSpatialIndex(selected.getSpatialIndex()));
             }
         });
         
         performanceLabel = new JLabel("Iteration time: 0.0 ms");
+
+        // Per-phase timings are always published over JMX; the checkbox turns on the
+        // instrumentation and draws the same numbers over the flock.
+        metrics = simulation.getMetrics();
+        metrics.register("BoidPanel");
+        statsCheckBox = new JCheckBox("Stats");
+        statsCheckBox.setForeground(Color.WHITE);
+        statsCheckBox.setOpaque(false);
+        statsCheckBox.addActionListener(e -> {
+            boolean instrumented = statsCheckBox.isSelected();
+            runner.submit(sim -> sim.setInstrumented(instrumented));
+        });
         
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
         controlPanel.setPreferredSize(new Dimension(PANEL_WIDTH, CONTROL_HEIGHT));
@@ -101,32 +128,33 @@ public class BoidPanel extends JPanel implements ActionListener {
         controlPanel.add(playPauseButton);
         controlPanel.add(spatialIndexCombo);
         controlPanel.add(performanceLabel);
+        controlPanel.add(statsCheckBox);
         
         add(controlPanel, BorderLayout.SOUTH);
+
+        runner.start();
+        repaintTimer.start();
     }
 
     private void togglePlayPause() {
-        if (running) {
-            animationTimer.stop();
-            playPauseButton.setText("Start");
-            running = false;
-        } else {
-            animationTimer.start();
+        if (runner.isPaused()) {
+            runner.setPaused(false);
             playPauseButton.setText("Pause");
-            running = true;
+        } else {
+            runner.setPaused(true);
+            playPauseButton.setText("Start");
         }
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        simulation.update();
         updateLabels();
         repaint();
     }
     
     private void updateLabels() {
         performanceLabel.setText(String.format("Iteration time: %.2f ms", 
-            simulation.getLastIterationTimeMs()));
+            runner.latest().getIterationTimeMs()));
     }
 
     @Override
@@ -134,13 +162,32 @@ public class BoidPanel extends JPanel implements ActionListener {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g.create();
         
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        List<Boid> boids = simulation.getBoids();
-        for (Boid boid : boids) {
-            boid.render(g2d);
+        Snapshot snapshot = runner.latest();
+        renderer.render(g2d, snapshot, runner.interpolationAt(snapshot, System.nanoTime()), getBackground());
+        if (statsCheckBox.isSelected()) {
+            paintStats(g2d);
         }
         
         g2d.dispose();
     }
+
+    private void paintStats(Graphics2D g2d) {
+        List<String> lines = metrics.describe();
+        g2d.setFont(STATS_FONT);
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        int lineHeight = fontMetrics.getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fontMetrics.stringWidth(line));
+        }
+
+        g2d.setColor(new Color(0, 0, 0, 180));
+        g2d.fillRect(8, 8, width + 16, lines.size() * lineHeight + 12);
+        g2d.setColor(Color.GREEN);
+        int y = 14 + fontMetrics.getAscent();
+        for (String line : lines) {
+            g2d.drawString(line, 16, y);
+            y += lineHeight;
+        }
+    }
 }
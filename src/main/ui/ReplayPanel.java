@@ -0,0 +1,120 @@
+package main.ui;
+
+import main.simulation.Snapshot;
+import main.simulation.TrajectoryPlayer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+
+// Plays back a recording made with Headless record=<file> at 60 frames per second; the
+// slider seeks to any frame.
+public class ReplayPanel extends JPanel implements ActionListener {
+    private static final long serialVersionUID = 1L;
+
+    private final TrajectoryPlayer player;
+    private final Timer playbackTimer;
+    private final JSlider frameSlider;
+    private final JButton playPauseButton;
+    private final JLabel frameLabel;
+    private final SpriteRenderer renderer = new SpriteRenderer();
+    private Snapshot snapshot;
+    private boolean updatingSlider;
+
+    private static final int CONTROL_HEIGHT = 100;
+    private static final int FRAME_MILLIS = 1000 / 60;
+
+    public ReplayPanel(TrajectoryPlayer player) {
+        this.player = player;
+        setLayout(new BorderLayout());
+        setPreferredSize(new Dimension(player.getWidth(), player.getHeight() + CONTROL_HEIGHT));
+        setBackground(Color.BLACK);
+
+        playbackTimer = new Timer(FRAME_MILLIS, this);
+
+        frameSlider = new JSlider(0, Math.max(0, player.getFrameCount() - 1), 0);
+        frameSlider.setPreferredSize(new Dimension(Math.min(600, player.getWidth() - 300), 40));
+        frameSlider.addChangeListener(e -> {
+            if (!updatingSlider) {
+                show(() -> player.seek(frameSlider.getValue()));
+            }
+        });
+
+        playPauseButton = new JButton("Play");
+        playPauseButton.addActionListener(e -> togglePlayPause());
+
+        frameLabel = new JLabel();
+        frameLabel.setForeground(Color.WHITE);
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
+        controlPanel.setPreferredSize(new Dimension(player.getWidth(), CONTROL_HEIGHT));
+        controlPanel.setBackground(Color.DARK_GRAY);
+        controlPanel.add(playPauseButton);
+        controlPanel.add(frameSlider);
+        controlPanel.add(frameLabel);
+        add(controlPanel, BorderLayout.SOUTH);
+
+        if (player.getFrameCount() > 0) {
+            show(() -> player.seek(0));
+        } else {
+            frameLabel.setText("Empty recording");
+            playPauseButton.setEnabled(false);
+        }
+    }
+
+    private void togglePlayPause() {
+        if (playbackTimer.isRunning()) {
+            playbackTimer.stop();
+            playPauseButton.setText("Play");
+        } else {
+            if (!player.hasNext()) {
+                show(() -> player.seek(0));
+            }
+            playbackTimer.start();
+            playPauseButton.setText("Pause");
+        }
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (!player.hasNext()) {
+            togglePlayPause();
+            return;
+        }
+        show(player::next);
+    }
+
+    @FunctionalInterface
+    private interface FrameStep {
+        Snapshot decode() throws IOException;
+    }
+
+    private void show(FrameStep step) {
+        try {
+            snapshot = step.decode();
+        } catch (IOException e) {
+            playbackTimer.stop();
+            playPauseButton.setEnabled(false);
+            frameLabel.setText("Cannot read recording: " + e.getMessage());
+            return;
+        }
+        updatingSlider = true;
+        frameSlider.setValue(player.getFrame());
+        updatingSlider = false;
+        frameLabel.setText(String.format("Frame %d / %d   step %.2f ms", player.getFrame(),
+                player.getFrameCount() - 1, snapshot.getIterationTimeMs()));
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (snapshot == null) {
+            return;
+        }
+        Graphics2D g2d = (Graphics2D) g.create();
+        renderer.render(g2d, snapshot, 1, getBackground());
+        g2d.dispose();
+    }
+}
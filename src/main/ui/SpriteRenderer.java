@@ -0,0 +1,135 @@
+package main.ui;
+
+import main.model.Boid;
+import main.model.BoidType;
+import main.simulation.Snapshot;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Draws the flock into one frame image by blending pre-rendered sprites, one per type
+// and heading, into its pixel array; the image is copied to the screen in one call.
+public class SpriteRenderer {
+    private static final BoidType[] TYPES = BoidType.values();
+    private static final int HEADINGS = 64;
+    private static final int SPRITE_SIZE = 2 * Boid.getSize() + 3;
+    private static final int SPRITE_CENTER = SPRITE_SIZE / 2;
+
+    private final int[][][] sprites = new int[TYPES.length][][];
+
+    private BufferedImage frame;
+    private int[] pixels;
+
+    // Paints the snapshot with every boid placed alpha of the way from its previous to its
+    // current position. Boids that wrapped around the world edge are not interpolated.
+    public void render(Graphics2D g2d, Snapshot snapshot, double alpha, Color background) {
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        }
+        Arrays.fill(pixels, background.getRGB() & 0xFFFFFF);
+
+        double[] x = snapshot.x();
+        double[] y = snapshot.y();
+        double[] previousX = snapshot.previousX();
+        double[] previousY = snapshot.previousY();
+        double[] vx = snapshot.vx();
+        double[] vy = snapshot.vy();
+        byte[] type = snapshot.type();
+        int interpolated = Math.min(snapshot.size(), snapshot.previousSize());
+        for (int i = 0; i < snapshot.size(); i++) {
+            double px = x[i];
+            double py = y[i];
+            if (i < interpolated) {
+                double dx = px - previousX[i];
+                double dy = py - previousY[i];
+                if (Math.abs(dx) < width / 2.0 && Math.abs(dy) < height / 2.0) {
+                    px = previousX[i] + dx * alpha;
+                    py = previousY[i] + dy * alpha;
+                }
+            }
+            int[] sprite = sprites(TYPES[type[i]])[heading(vx[i], vy[i])];
+            blit(sprite, (int) Math.round(px) - SPRITE_CENTER, (int) Math.round(py) - SPRITE_CENTER, width, height);
+        }
+
+        g2d.drawImage(frame, 0, 0, null);
+    }
+
+    private int[][] sprites(BoidType type) {
+        int[][] rotations = sprites[type.ordinal()];
+        if (rotations == null) {
+            rotations = new int[HEADINGS][];
+            for (int h = 0; h < HEADINGS; h++) {
+                rotations[h] = drawSprite(type, h * 2 * Math.PI / HEADINGS);
+            }
+            sprites[type.ordinal()] = rotations;
+        }
+        return rotations;
+    }
+
+    private static int[] drawSprite(BoidType type, double angle) {
+        BufferedImage image = new BufferedImage(SPRITE_SIZE, SPRITE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(type.getColor());
+        g.translate(SPRITE_CENTER + 0.5, SPRITE_CENTER + 0.5);
+        g.rotate(angle);
+        g.fill(Boid.getShape());
+        g.dispose();
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // Quantizes the direction of (vx, vy) to one of HEADINGS steps. A polynomial atan
+    // with ~0.005 rad error stands in for Math.atan2; a step is 0.098 rad wide.
+    static int heading(double vx, double vy) {
+        double ax = Math.abs(vx);
+        double ay = Math.abs(vy);
+        double max = Math.max(ax, ay);
+        if (max == 0) {
+            return 0;
+        }
+        double t = Math.min(ax, ay) / max;
+        double angle = t * (Math.PI / 4 + 0.273 * (1 - t));
+        if (ay > ax) angle = Math.PI / 2 - angle;
+        if (vx < 0) angle = Math.PI - angle;
+        if (vy < 0) angle = 2 * Math.PI - angle;
+        return (int) Math.round(angle * (HEADINGS / (2 * Math.PI))) & (HEADINGS - 1);
+    }
+
+    // Source-over blend of a premultiplied sprite onto the opaque frame, clipped to it.
+    private void blit(int[] sprite, int left, int top, int width, int height) {
+        int firstRow = Math.max(0, -top);
+        int lastRow = Math.min(SPRITE_SIZE, height - top);
+        int firstColumn = Math.max(0, -left);
+        int lastColumn = Math.min(SPRITE_SIZE, width - left);
+        for (int row = firstRow; row < lastRow; row++) {
+            int source = row * SPRITE_SIZE;
+            int target = (top + row) * width + left;
+            for (int column = firstColumn; column < lastColumn; column++) {
+                int src = sprite[source + column];
+                int alpha = src >>> 24;
+                if (alpha == 0) {
+                    continue;
+                }
+                if (alpha == 255) {
+                    pixels[target + column] = src;
+                    continue;
+                }
+                int dst = pixels[target + column];
+                int inverse = 255 - alpha;
+                int redBlue = ((dst & 0xFF00FF) * inverse >>> 8) & 0xFF00FF;
+                int alphaGreen = ((dst >>> 8) & 0xFF00FF) * inverse & 0xFF00FF00;
+                pixels[target + column] = src + (redBlue | alphaGreen);
+            }
+        }
+    }
+}
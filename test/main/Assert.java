@@ -0,0 +1,66 @@
+package main;
+
+import java.util.Objects;
+
+// The few assertions the tests need. Failures throw AssertionError, which TestSuite
+// reports against the test method.
+public final class Assert {
+    private Assert() {
+    }
+
+    public static void assertTrue(String message, boolean condition) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void assertFalse(String message, boolean condition) {
+        assertTrue(message, !condition);
+    }
+
+    public static void fail(String message) {
+        throw new AssertionError(message);
+    }
+
+    public static void assertEquals(String message, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    // Bit-for-bit, so NaN equals NaN and 0.0 differs from -0.0.
+    public static void assertSame(String message, double expected, double actual) {
+        if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void assertClose(String message, double expected, double actual, double tolerance) {
+        if (!(Math.abs(expected - actual) <= tolerance)) {
+            throw new AssertionError(message + ": expected " + expected + " +/- " + tolerance + " but was " + actual);
+        }
+    }
+
+    public static <T extends Throwable> T assertThrows(String message, Class<T> type, Body body) {
+        try {
+            body.run();
+        } catch (Throwable thrown) {
+            if (type.isInstance(thrown)) {
+                return type.cast(thrown);
+            }
+            throw new AssertionError(message + ": expected " + type.getSimpleName() + " but got " + thrown, thrown);
+        }
+        throw new AssertionError(message + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+
+    // A Runnable that may also throw checked exceptions, such as IOException.
+    public interface Body {
+        void run() throws Exception;
+    }
+}
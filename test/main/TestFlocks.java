@@ -0,0 +1,48 @@
+package main;
+
+import main.model.FlockState;
+import main.simulation.FlockSimulation;
+
+import java.util.Random;
+
+// Deterministic flocks for tests: positions and velocities drawn from a seeded Random
+// straight into the state, independent of how the simulation spawns boids.
+public final class TestFlocks {
+    private TestFlocks() {
+    }
+
+    public static FlockSimulation create(int width, int height, int count, long seed) {
+        FlockSimulation simulation = new FlockSimulation(width, height);
+        simulation.setBoidCount(count);
+        scatter(simulation, seed);
+        return simulation;
+    }
+
+    public static void scatter(FlockSimulation simulation, long seed) {
+        Random random = new Random(seed);
+        FlockState state = simulation.getState();
+        for (int i = 0; i < state.size(); i++) {
+            state.x()[i] = random.nextDouble() * simulation.getWidth();
+            state.y()[i] = random.nextDouble() * simulation.getHeight();
+            state.vx()[i] = random.nextDouble() * 2 - 1;
+            state.vy()[i] = random.nextDouble() * 2 - 1;
+        }
+    }
+
+    public static void step(FlockSimulation simulation, int steps) {
+        for (int i = 0; i < steps; i++) {
+            simulation.update();
+        }
+    }
+
+    public static void assertSameFlock(String message, FlockState expected, FlockState actual) {
+        Assert.assertEquals(message + ": size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertSame(message + ": x of boid " + i, expected.x()[i], actual.x()[i]);
+            Assert.assertSame(message + ": y of boid " + i, expected.y()[i], actual.y()[i]);
+            Assert.assertSame(message + ": vx of boid " + i, expected.vx()[i], actual.vx()[i]);
+            Assert.assertSame(message + ": vy of boid " + i, expected.vy()[i], actual.vy()[i]);
+            Assert.assertEquals(message + ": type of boid " + i, expected.type()[i], actual.type()[i]);
+        }
+    }
+}
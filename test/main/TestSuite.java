@@ -0,0 +1,71 @@
+package main;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Runs every public no-argument test* method of every *Test class compiled into the
+// directory given as the first argument (see the justfile's test recipe), each on a
+// fresh instance. Exits with status 1 if any test failed.
+public class TestSuite {
+    public static void main(String[] args) throws IOException {
+        Path root = Path.of(args.length > 0 ? args[0] : "build/test");
+        List<String> classNames = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(file -> file.getFileName().toString().endsWith("Test.class"))
+                    .sorted(Comparator.naturalOrder())
+                    .forEach(file -> {
+                        String name = root.relativize(file).toString();
+                        classNames.add(name.substring(0, name.length() - ".class".length())
+                                .replace(file.getFileSystem().getSeparator(), "."));
+                    });
+        }
+
+        int passed = 0;
+        List<String> failures = new ArrayList<>();
+        for (String className : classNames) {
+            Class<?> type;
+            try {
+                type = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Cannot load " + className, e);
+            }
+            Method[] methods = type.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || method.getParameterCount() != 0
+                        || !Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                String name = type.getSimpleName() + "." + method.getName();
+                try {
+                    method.invoke(type.getDeclaredConstructor().newInstance());
+                    passed++;
+                    System.out.println("PASS " + name);
+                } catch (InvocationTargetException e) {
+                    failures.add(name);
+                    System.out.println("FAIL " + name + ": " + e.getCause());
+                    e.getCause().printStackTrace(System.out);
+                } catch (ReflectiveOperationException e) {
+                    failures.add(name);
+                    System.out.println("FAIL " + name + ": " + e);
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.println(passed + " passed, " + failures.size() + " failed");
+        if (!failures.isEmpty()) {
+            failures.forEach(name -> System.out.println("  " + name));
+            System.exit(1);
+        }
+    }
+}
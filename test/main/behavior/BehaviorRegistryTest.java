@@ -0,0 +1,98 @@
+package main.behavior;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.model.BoidType;
+import main.model.FlockState;
+import main.simulation.FlockSimulation;
+import main.simulation.Forces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static main.Assert.*;
+
+public class BehaviorRegistryTest {
+
+    public void testSharedStrategy() {
+        FlockBehavior flock = new FlockBehavior();
+        BehaviorRegistry registry = new BehaviorRegistry(flock);
+        for (BoidType type : BoidType.values()) {
+            assertTrue(type + " uses the shared strategy", registry.get(type) == flock);
+        }
+        assertTrue("shared", registry.getShared() == flock);
+        CrashAvoidanceBehavior crash = new CrashAvoidanceBehavior();
+        registry.set(BoidType.CRASHED, crash);
+        assertTrue("crashed", registry.get(BoidType.CRASHED.ordinal()) == crash);
+        assertTrue("no longer shared", registry.getShared() == null);
+        assertThrows("null strategy", IllegalArgumentException.class, () -> registry.set(BoidType.STANDARD, null));
+    }
+
+    // Each boid is stepped once per frame by its own type's strategy, in the sequential
+    // and the double-buffered step alike; the sequential step goes in slot order.
+    public void testBoidsAreSteppedByTheirTypesStrategy() {
+        for (boolean doubleBuffered : new boolean[] {false, true}) {
+            FlockSimulation simulation = TestFlocks.create(600, 400, 300, 25);
+            FlockState state = simulation.getState();
+            for (int i = 0; i < state.size(); i += 3) {
+                state.setType(i, BoidType.CRASHED);
+            }
+            List<Integer> order = new ArrayList<>();
+            Recorder standard = new Recorder(order);
+            Recorder crashed = new Recorder(order);
+            simulation.setBehavior(BoidType.STANDARD, standard);
+            simulation.setBehavior(BoidType.CRASHED, crashed);
+            simulation.setDoubleBuffered(doubleBuffered);
+            simulation.setParallelism(doubleBuffered ? 3 : 1);
+            simulation.update();
+
+            String what = doubleBuffered ? "double-buffered " : "sequential ";
+            assertEquals(what + "standard boids", 200, standard.slots.size());
+            assertEquals(what + "crashed boids", 100, crashed.slots.size());
+            for (int slot : standard.slots) {
+                assertEquals(what + "type of " + slot, BoidType.STANDARD, state.getType(slot));
+            }
+            for (int slot : crashed.slots) {
+                assertEquals(what + "type of " + slot, BoidType.CRASHED, state.getType(slot));
+            }
+            if (!doubleBuffered) {
+                for (int i = 0; i < order.size(); i++) {
+                    assertEquals(what + "slot of step " + i, i, (int) order.get(i));
+                }
+            }
+        }
+    }
+
+    // The list-based update without a strategy steers like a FlockBehavior.
+    public void testUpdateWithoutStrategyFlocks() {
+        FlockSimulation first = TestFlocks.create(300, 200, 40, 26);
+        FlockSimulation second = TestFlocks.create(300, 200, 40, 26);
+        List<Boid> neighbors = new ArrayList<>(first.getBoids().subList(1, 20));
+        List<Boid> sameNeighbors = new ArrayList<>(second.getBoids().subList(1, 20));
+        first.getBoids().get(0).update(neighbors, 300, 200);
+        second.getBoids().get(0).update(sameNeighbors, new FlockBehavior(), 300, 200);
+        TestFlocks.assertSameFlock("default strategy", second.getState(), first.getState());
+    }
+
+    private static final class Recorder implements BehaviorStrategy {
+        final List<Integer> slots = new ArrayList<>();
+        final List<Integer> order;
+
+        Recorder(List<Integer> order) {
+            this.order = order;
+        }
+
+        @Override
+        public Forces calculateForces(Boid boid, List<Boid> neighbors) {
+            return new Forces();
+        }
+
+        @Override
+        public synchronized void begin(Boid boid, Steering steering) {
+            slots.add(boid.getIndex());
+            synchronized (order) {
+                order.add(boid.getIndex());
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package main.behavior;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.model.BoidType;
+import main.model.FlockState;
+import main.simulation.FlockSimulation;
+import main.simulation.Forces;
+import main.simulation.Vector2D;
+import main.spatial.SpatialIndexes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static main.Assert.*;
+
+// The single-pass kernels must give exactly what the original three passes gave: one
+// loop per rule over all neighbors, with the distance taken by square root each time.
+public class FusedKernelTest {
+    private static final FlockWeights WEIGHTS = FlockWeights.standard();
+
+    private static FlockState neighborhood(long seed, boolean withCrashed) {
+        Random random = new Random(seed);
+        FlockState state = new FlockState();
+        for (int i = 0; i < 40; i++) {
+            BoidType type = withCrashed && random.nextInt(4) == 0 ? BoidType.CRASHED : BoidType.STANDARD;
+            state.add(i, 100 + random.nextGaussian() * 25, 100 + random.nextGaussian() * 25,
+                    random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2, type);
+        }
+        state.setType(0, BoidType.STANDARD);
+        return state;
+    }
+
+    private static List<Boid> boids(FlockState state) {
+        List<Boid> boids = new ArrayList<>();
+        for (int i = 0; i < state.size(); i++) {
+            boids.add(new Boid(state, i));
+        }
+        return boids;
+    }
+
+    private static double distance(Boid a, Boid b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Steers toward (x, y) at speed 2 and limits the change to 0.03, scaled by weight.
+    private static double[] steer(Boid current, double x, double y, boolean relative, double weight) {
+        double steerX = relative ? x - current.getX() : x;
+        double steerY = relative ? y - current.getY() : y;
+        double magnitude = Math.sqrt(steerX * steerX + steerY * steerY);
+        if (magnitude <= 0) {
+            return null;
+        }
+        steerX = (steerX / magnitude) * 2.0 - current.getVx();
+        steerY = (steerY / magnitude) * 2.0 - current.getVy();
+        double force = Math.sqrt(steerX * steerX + steerY * steerY);
+        if (force > 0.03) {
+            steerX = (steerX / force) * 0.03;
+            steerY = (steerY / force) * 0.03;
+        }
+        return new double[] {steerX * weight, steerY * weight};
+    }
+
+    // The original three passes. The crash variant marks boids closer than 8, ignores
+    // crashed neighbors for alignment and cohesion, repels five times harder from them,
+    // and limits separation to 0.05 once it exceeds 0.03.
+    private static double[] threePass(Boid current, List<Boid> neighbors, boolean crash) {
+        double separationRadius = crash ? 40 : 25;
+        if (crash) {
+            for (Boid neighbor : neighbors) {
+                if (distance(current, neighbor) < 8.0) {
+                    current.setType(BoidType.CRASHED);
+                    neighbor.setType(BoidType.CRASHED);
+                }
+            }
+        }
+
+        double sepX = 0, sepY = 0;
+        int sepCount = 0;
+        for (Boid neighbor : neighbors) {
+            double distance = distance(current, neighbor);
+            if (distance > 0 && distance < separationRadius) {
+                double diffX = (current.getX() - neighbor.getX()) / distance;
+                double diffY = (current.getY() - neighbor.getY()) / distance;
+                if (crash && neighbor.getType() == BoidType.CRASHED) {
+                    diffX *= 5;
+                    diffY *= 5;
+                }
+                sepX += diffX;
+                sepY += diffY;
+                sepCount++;
+            }
+        }
+        if (sepCount > 0) {
+            sepX /= sepCount;
+            sepY /= sepCount;
+            double magnitude = Math.sqrt(sepX * sepX + sepY * sepY);
+            if (magnitude > 0) {
+                sepX = (sepX / magnitude) * 2.0 - current.getVx();
+                sepY = (sepY / magnitude) * 2.0 - current.getVy();
+                double force = Math.sqrt(sepX * sepX + sepY * sepY);
+                if (force > 0.03) {
+                    double limit = crash ? 0.05 : 0.03;
+                    sepX = (sepX / force) * limit;
+                    sepY = (sepY / force) * limit;
+                }
+            }
+        }
+
+        double velocityX = 0, velocityY = 0, centerX = 0, centerY = 0;
+        int count = 0;
+        for (Boid neighbor : neighbors) {
+            double distance = distance(current, neighbor);
+            if ((!crash || neighbor.getType() != BoidType.CRASHED) && distance > 0 && distance < 50) {
+                velocityX += neighbor.getVx();
+                velocityY += neighbor.getVy();
+                centerX += neighbor.getX();
+                centerY += neighbor.getY();
+                count++;
+            }
+        }
+        double[] alignment = count > 0 ? steer(current, velocityX / count, velocityY / count, false,
+                WEIGHTS.alignment()) : null;
+        double[] cohesion = count > 0 ? steer(current, centerX / count, centerY / count, true,
+                WEIGHTS.cohesion()) : null;
+        return new double[] {
+                sepX * WEIGHTS.separation(), sepY * WEIGHTS.separation(),
+                alignment != null ? alignment[0] : 0, alignment != null ? alignment[1] : 0,
+                cohesion != null ? cohesion[0] : 0, cohesion != null ? cohesion[1] : 0};
+    }
+
+    private static void assertForces(String message, double[] expected, Forces actual) {
+        assertSame(message + " separation x", expected[0], actual.separation().x());
+        assertSame(message + " separation y", expected[1], actual.separation().y());
+        assertSame(message + " alignment x", expected[2], actual.alignment().x());
+        assertSame(message + " alignment y", expected[3], actual.alignment().y());
+        assertSame(message + " cohesion x", expected[4], actual.cohesion().x());
+        assertSame(message + " cohesion y", expected[5], actual.cohesion().y());
+    }
+
+    private static void assertMatchesThreePass(BehaviorStrategy behavior, boolean crash) {
+        for (long seed = 0; seed < 50; seed++) {
+            FlockState reference = neighborhood(seed, crash);
+            FlockState fused = neighborhood(seed, crash);
+            List<Boid> referenceBoids = boids(reference);
+            List<Boid> fusedBoids = boids(fused);
+
+            double[] expected = threePass(referenceBoids.get(0), referenceBoids.subList(1, referenceBoids.size()), crash);
+            Forces actual = behavior.calculateForces(fusedBoids.get(0), fusedBoids.subList(1, fusedBoids.size()));
+            assertForces("seed " + seed, expected, actual);
+            assertEquals("types after seed " + seed, Arrays.toString(reference.type()),
+                    Arrays.toString(fused.type()));
+        }
+    }
+
+    public void testFlockKernelMatchesThreePasses() {
+        assertMatchesThreePass(new FlockBehavior(), false);
+    }
+
+    public void testCrashKernelMatchesThreePasses() {
+        assertMatchesThreePass(new CrashAvoidanceBehavior(), true);
+    }
+
+    // The three passes as a strategy without kernels, so the simulation collects each
+    // boid's neighbors into a list and measures from the boids as they are now.
+    private static BehaviorStrategy threePassStrategy(boolean crash) {
+        return (boid, neighbors) -> {
+            if (crash && boid.getType() == BoidType.CRASHED) {
+                return new Forces();
+            }
+            double[] forces = threePass(boid, neighbors, crash);
+            return new Forces(new Vector2D(forces[0], forces[1]), new Vector2D(forces[2], forces[3]),
+                    new Vector2D(forces[4], forces[5]));
+        };
+    }
+
+    // These indices measure from copies taken when the index was built. In a sequential
+    // step earlier boids have moved since, and the kernels must still see what the three
+    // passes see, with and without a neighbor limit.
+    public void testSequentialStepMatchesThreePassesOnCopyingIndices() {
+        for (String index : new String[] {"grid", "balanced-kd", "pooled-quad"}) {
+            for (boolean crash : new boolean[] {false, true}) {
+                for (int maxNeighbors : new int[] {0, 7}) {
+                    FlockSimulation fused = TestFlocks.create(600, 400, 400, 5);
+                    FlockSimulation reference = TestFlocks.create(600, 400, 400, 5);
+                    fused.setBehavior(crash ? new CrashAvoidanceBehavior() : new FlockBehavior());
+                    reference.setBehavior(threePassStrategy(crash));
+                    for (FlockSimulation simulation : new FlockSimulation[] {fused, reference}) {
+                        simulation.setSpatialIndex(SpatialIndexes.create(index, 600, 400));
+                        simulation.setMaxNeighbors(maxNeighbors);
+                        TestFlocks.step(simulation, 10);
+                    }
+                    TestFlocks.assertSameFlock(index + (crash ? " crash" : " flock") + ", at most " + maxNeighbors,
+                            reference.getState(), fused.getState());
+                }
+            }
+        }
+    }
+
+    public void testNoNeighborsNoForce() {
+        FlockState state = neighborhood(1, false);
+        Forces forces = new FlockBehavior().calculateForces(new Boid(state, 0), List.of());
+        assertForces("alone", new double[6], forces);
+    }
+}
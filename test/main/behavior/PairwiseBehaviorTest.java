@@ -0,0 +1,79 @@
+package main.behavior;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.simulation.FlockSimulation;
+import main.spatial.UniformGridIndex;
+
+import java.util.List;
+
+import static main.Assert.*;
+
+// Pair sums add the same terms as per-boid accumulation, in a different order, so they
+// agree up to rounding: within 1e-9 for sums of at most a few hundred terms of order 1
+// to 1000. The counts must agree exactly.
+public class PairwiseBehaviorTest {
+    private static final double TOLERANCE = 1e-9;
+
+    public void testPairSumsMatchPerBoidAccumulation() {
+        FlockSimulation simulation = TestFlocks.create(600, 400, 1500, 19);
+        List<Boid> boids = simulation.getBoids();
+        UniformGridIndex index = new UniformGridIndex(600, 400, 50);
+        index.insertAll(boids);
+        FlockBehavior behavior = new FlockBehavior();
+
+        PairAccumulator sums = new PairAccumulator();
+        sums.begin(boids.size(), behavior);
+        index.forEachPair(boids, 50, sums);
+
+        Steering steering = new Steering();
+        for (Boid boid : boids) {
+            steering.begin(boid, behavior);
+            steering.gather(index, 50);
+            int i = boid.getIndex();
+            String what = "boid " + i;
+            assertEquals(what + " alignment count", steering.alignmentCount, sums.alignmentCount[i]);
+            assertEquals(what + " cohesion count", steering.cohesionCount, sums.cohesionCount[i]);
+            assertEquals(what + " separation count", steering.separationCount, sums.separationCount[i]);
+            assertClose(what + " alignment x", steering.alignmentX, sums.alignmentX[i], TOLERANCE);
+            assertClose(what + " alignment y", steering.alignmentY, sums.alignmentY[i], TOLERANCE);
+            assertClose(what + " cohesion x", steering.cohesionX, sums.cohesionX[i], TOLERANCE);
+            assertClose(what + " cohesion y", steering.cohesionY, sums.cohesionY[i], TOLERANCE);
+            assertClose(what + " separation x", steering.separationX, sums.separationX[i], TOLERANCE);
+            assertClose(what + " separation y", steering.separationY, sums.separationY[i], TOLERANCE);
+        }
+    }
+
+    // One pairwise frame against one double-buffered frame, which reads the same state.
+    public void testPairwiseFrameMatchesDoubleBufferedFrame() {
+        FlockSimulation pairs = TestFlocks.create(600, 400, 1500, 20);
+        FlockSimulation perBoid = TestFlocks.create(600, 400, 1500, 20);
+        for (FlockSimulation simulation : List.of(pairs, perBoid)) {
+            simulation.setSpatialIndex(new UniformGridIndex(600, 400, 50));
+            simulation.setDoubleBuffered(true);
+        }
+        pairs.setPairwise(true);
+        pairs.update();
+        perBoid.update();
+        for (int i = 0; i < pairs.getState().size(); i++) {
+            assertClose("x of boid " + i, perBoid.getState().x()[i], pairs.getState().x()[i], TOLERANCE);
+            assertClose("y of boid " + i, perBoid.getState().y()[i], pairs.getState().y()[i], TOLERANCE);
+            assertClose("vx of boid " + i, perBoid.getState().vx()[i], pairs.getState().vx()[i], TOLERANCE);
+            assertClose("vy of boid " + i, perBoid.getState().vy()[i], pairs.getState().vy()[i], TOLERANCE);
+        }
+    }
+
+    // A behavior that is not a PairwiseBehavior is stepped boid by boid as before.
+    public void testOtherBehaviorsIgnorePairwise() {
+        FlockSimulation pairs = TestFlocks.create(600, 400, 800, 21);
+        FlockSimulation perBoid = TestFlocks.create(600, 400, 800, 21);
+        for (FlockSimulation simulation : List.of(pairs, perBoid)) {
+            simulation.setBehavior(new CrashAvoidanceBehavior());
+            simulation.setDoubleBuffered(true);
+        }
+        pairs.setPairwise(true);
+        TestFlocks.step(pairs, 10);
+        TestFlocks.step(perBoid, 10);
+        TestFlocks.assertSameFlock("crash avoidance with pairwise on", perBoid.getState(), pairs.getState());
+    }
+}
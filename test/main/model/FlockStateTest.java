@@ -0,0 +1,106 @@
+package main.model;
+
+import main.TestFlocks;
+import main.behavior.FlockBehavior;
+import main.simulation.FlockSimulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static main.Assert.*;
+
+public class FlockStateTest {
+    public void testAddStoresBoidInParallelArrays() {
+        FlockState state = new FlockState(1);
+        state.add(7, 1, 2, 3, 4, BoidType.STANDARD);
+        int index = state.add(8, 5, 6, 7, 8, BoidType.CRASHED);
+
+        assertEquals("index", 1, index);
+        assertEquals("size", 2, state.size());
+        assertEquals("id", 8, state.id()[1]);
+        assertSame("x", 5, state.x()[1]);
+        assertSame("vy", 8, state.vy()[1]);
+        assertEquals("type", BoidType.CRASHED, state.getType(1));
+        assertEquals("first boid kept", 7, state.id()[0]);
+        assertEquals("crashed", 1, state.countByType(BoidType.CRASHED));
+    }
+
+    public void testGrowAndTruncateRejectWrongDirection() {
+        FlockState state = new FlockState();
+        state.grow(100);
+        assertEquals("grown", 100, state.size());
+        assertThrows("shrink via grow", IllegalArgumentException.class, () -> state.grow(10));
+        assertThrows("grow via truncate", IllegalArgumentException.class, () -> state.truncate(101));
+        state.truncate(10);
+        assertEquals("truncated", 10, state.size());
+    }
+
+    public void testBoidIsAViewOfItsSlot() {
+        FlockState state = new FlockState();
+        state.add(0, 1, 2, 0.5, -0.5, BoidType.STANDARD);
+        state.add(1, 3, 4, 0.25, -0.25, BoidType.STANDARD);
+        Boid boid = new Boid(state, 1);
+
+        state.x()[1] = 42;
+        assertSame("reads the array", 42, boid.getX());
+        boid.setType(BoidType.CRASHED);
+        assertEquals("writes the array", BoidType.CRASHED, state.getType(1));
+        assertEquals("other slot untouched", BoidType.STANDARD, state.getType(0));
+    }
+
+    public void testTypeChangesDuringStepAppearAfterSwap() {
+        FlockState state = new FlockState();
+        state.add(0, 1, 2, 0, 0, BoidType.STANDARD);
+        state.beginStep();
+        state.setType(0, BoidType.CRASHED);
+        state.nextX()[0] = 9;
+        assertEquals("frame t unchanged", BoidType.STANDARD, state.getType(0));
+        assertSame("frame t position", 1, state.x()[0]);
+        state.swap();
+        assertEquals("frame t+1 type", BoidType.CRASHED, state.getType(0));
+        assertSame("frame t+1 position", 9, state.x()[0]);
+        assertFalse("step closed", state.isStepping());
+    }
+
+    // The parallel arrays must step exactly like the original one-object-per-boid flock:
+    // every boid owns its storage, finds its neighbors by brute force and is updated in
+    // place, in order, through calculateForces.
+    public void testStepsLikeBoidsThatOwnTheirState() {
+        int width = 400, height = 300, count = 300;
+        FlockSimulation simulation = TestFlocks.create(width, height, count, 11);
+        FlockState state = simulation.getState();
+
+        List<Boid> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Boid boid = new Boid(i, state.x()[i], state.y()[i]);
+            boid.getState().vx()[0] = state.vx()[i];
+            boid.getState().vy()[0] = state.vy()[i];
+            objects.add(boid);
+        }
+        FlockBehavior behavior = new FlockBehavior();
+        double radiusSquared = simulation.getNeighborRadius() * simulation.getNeighborRadius();
+
+        for (int step = 0; step < 30; step++) {
+            simulation.update();
+            for (Boid boid : objects) {
+                List<Boid> neighbors = new ArrayList<>();
+                for (Boid other : objects) {
+                    double dx = boid.getX() - other.getX();
+                    double dy = boid.getY() - other.getY();
+                    if (other.getId() != boid.getId() && dx * dx + dy * dy <= radiusSquared) {
+                        neighbors.add(other);
+                    }
+                }
+                boid.update(neighbors, behavior, width, height);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Boid boid = objects.get(i);
+            assertSame("x of boid " + i, boid.getX(), state.x()[i]);
+            assertSame("y of boid " + i, boid.getY(), state.y()[i]);
+            assertSame("vx of boid " + i, boid.getVx(), state.vx()[i]);
+            assertSame("vy of boid " + i, boid.getVy(), state.vy()[i]);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package main.model;
+
+import java.util.Random;
+
+import static main.Assert.*;
+
+public class PrecisionTest {
+
+    public void testDoubleKeepsValues() {
+        Random random = new Random(24);
+        for (int i = 0; i < 1000; i++) {
+            double position = random.nextDouble() * 1200;
+            double velocity = random.nextDouble() * 4 - 2;
+            assertSame("position " + position, position, Precision.DOUBLE.roundPosition(position, 1200));
+            assertSame("velocity " + velocity, velocity, Precision.DOUBLE.roundVelocity(velocity, 2));
+        }
+    }
+
+    public void testFloatRoundsToNearestFloat() {
+        Random random = new Random(25);
+        for (int i = 0; i < 1000; i++) {
+            double value = random.nextDouble() * 1200;
+            assertSame("position " + value, (float) value, Precision.FLOAT.roundPosition(value, 1200));
+        }
+    }
+
+    // 1200 px over 65535 codes needs steps of at least 0.0183 px, so positions land on
+    // multiples of 1/32; [-2, 2] needs 6.1e-5, so velocities land on multiples of 1/8192.
+    public void testFixed16RoundsToPowerOfTwoSteps() {
+        Random random = new Random(26);
+        for (int i = 0; i < 1000; i++) {
+            double position = random.nextDouble() * 1200;
+            double rounded = Precision.FIXED16.roundPosition(position, 1200);
+            assertSame("position " + position, Math.rint(position * 32) / 32, rounded);
+            assertSame("position " + position + " as float", (float) rounded, rounded);
+
+            double velocity = random.nextDouble() * 4 - 2;
+            double roundedVelocity = Precision.FIXED16.roundVelocity(velocity, 2);
+            assertSame("velocity " + velocity, Math.rint((velocity + 2) * 8192) / 8192 - 2, roundedVelocity);
+            assertSame("velocity " + velocity + " as float", (float) roundedVelocity, roundedVelocity);
+        }
+    }
+
+    // Out-of-range values clamp to the first and last code instead of wrapping.
+    public void testFixed16ClampsToRange() {
+        assertSame("below zero", 0, Precision.FIXED16.roundPosition(-3, 1200));
+        assertSame("past the extent", 65535.0 / 32, Precision.FIXED16.roundPosition(5000, 1200));
+        assertSame("below -max speed", -2, Precision.FIXED16.roundVelocity(-7, 2));
+    }
+
+    // Rounding an already rounded value changes nothing, so restoring or re-applying a
+    // precision is harmless.
+    public void testRoundingIsIdempotent() {
+        Random random = new Random(27);
+        for (Precision precision : Precision.values()) {
+            for (int i = 0; i < 1000; i++) {
+                double once = precision.roundPosition(random.nextDouble() * 1000, 1000);
+                assertSame(precision + " position " + once, once, precision.roundPosition(once, 1000));
+                double velocity = precision.roundVelocity(random.nextDouble() * 4 - 2, 2);
+                assertSame(precision + " velocity " + velocity, velocity, precision.roundVelocity(velocity, 2));
+            }
+        }
+    }
+
+    public void testParse() {
+        assertEquals("fixed16", Precision.FIXED16, Precision.parse("fixed16"));
+        assertEquals("FLOAT", Precision.FLOAT, Precision.parse("FLOAT"));
+        assertThrows("half", IllegalArgumentException.class, () -> Precision.parse("half"));
+    }
+}
@@ -0,0 +1,109 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.model.Precision;
+import main.spatial.SpatialIndexes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static main.Assert.*;
+
+public class CheckpointTest {
+
+    public void testRoundTripKeepsFlockAndSettings() throws IOException {
+        FlockSimulation saved = TestFlocks.create(900, 500, 700, 21);
+        saved.setSpatialIndex(SpatialIndexes.create("hash", 900, 500, true));
+        saved.setNeighborRadius(65);
+        TestFlocks.step(saved, 5);
+        Checkpoint checkpoint = Checkpoint.read(write(saved, "hash"));
+        FlockSimulation restored = checkpoint.getSimulation();
+        assertEquals("index", "hash", checkpoint.getIndexName());
+        assertTrue("periodic", checkpoint.isPeriodic());
+        assertEquals("width", 900, restored.getWidth());
+        assertEquals("height", 500, restored.getHeight());
+        assertClose("radius", 65, restored.getNeighborRadius(), 0);
+        assertEquals("precision", Precision.DOUBLE, restored.getPrecision());
+        TestFlocks.assertSameFlock("restored flock", saved.getState(), restored.getState());
+    }
+
+    // A reduced-precision flock comes back at that precision, so it keeps stepping on the
+    // same grid of values instead of silently switching to double.
+    public void testRoundTripKeepsPrecision() throws IOException {
+        for (Precision precision : new Precision[] {Precision.FLOAT, Precision.FIXED16}) {
+            FlockSimulation saved = TestFlocks.create(800, 600, 500, 22);
+            saved.setSpatialIndex(SpatialIndexes.create("grid", 800, 600));
+            saved.setPrecision(precision);
+            TestFlocks.step(saved, 3);
+            FlockSimulation restored = Checkpoint.read(write(saved, "grid")).getSimulation();
+            assertEquals(precision + " precision", precision, restored.getPrecision());
+            TestFlocks.assertSameFlock(precision + " restored flock", saved.getState(), restored.getState());
+            TestFlocks.step(saved, 3);
+            TestFlocks.step(restored, 3);
+            TestFlocks.assertSameFlock(precision + " after restoring", saved.getState(), restored.getState());
+        }
+    }
+
+    // Version 1 had no precision field and always saved doubles.
+    public void testVersionOneStillReads() throws IOException {
+        FlockSimulation saved = TestFlocks.create(400, 300, 60, 26);
+        Path file = write(saved, "grid");
+        ByteBuffer v2 = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        int nameLength = v2.getInt(36);
+        int v2Data = (40 + nameLength + 7) & ~7;
+        int v1Data = (36 + nameLength + 7) & ~7;
+        ByteBuffer v1 = ByteBuffer.allocate(v2.capacity() - v2Data + v1Data).order(ByteOrder.LITTLE_ENDIAN);
+        v1.put(v2.array(), 0, 24).put(v2.array(), 28, 12 + nameLength);
+        v1.position(v1Data).put(v2.array(), v2Data, v2.capacity() - v2Data);
+        v1.putInt(4, 1);
+        Files.write(file, v1.array());
+        FlockSimulation restored = Checkpoint.read(file).getSimulation();
+        assertEquals("precision", Precision.DOUBLE, restored.getPrecision());
+        TestFlocks.assertSameFlock("version 1 flock", saved.getState(), restored.getState());
+    }
+
+    public void testUnknownVersionIsRejected() throws IOException {
+        Path file = write(TestFlocks.create(400, 300, 50, 23), "grid");
+        for (int version : new int[] {0, 3, -1}) {
+            patchInt(file, 4, version);
+            assertThrows("version " + version, IOException.class, () -> Checkpoint.read(file));
+        }
+    }
+
+    public void testUnknownPrecisionIsRejected() throws IOException {
+        Path file = write(TestFlocks.create(400, 300, 50, 24), "grid");
+        patchInt(file, 24, Precision.values().length);
+        assertThrows("precision past the last one", IOException.class, () -> Checkpoint.read(file));
+    }
+
+    public void testTruncatedFileIsRejected() throws IOException {
+        Path file = write(TestFlocks.create(400, 300, 50, 25), "grid");
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows("one byte short", IOException.class, () -> Checkpoint.read(file));
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(20);
+        }
+        assertThrows("header only", IOException.class, () -> Checkpoint.read(file));
+    }
+
+    private static Path write(FlockSimulation simulation, String indexName) throws IOException {
+        Path file = Files.createTempFile("checkpoint", ".boids");
+        file.toFile().deleteOnExit();
+        Checkpoint.write(file, simulation, indexName);
+        return file;
+    }
+
+    private static void patchInt(Path file, long offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value);
+            channel.write(buffer.flip(), offset);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.spatial.SpatialHashIndex;
+import main.spatial.SpatialIndex;
+import main.spatial.UniformGridIndex;
+
+import java.lang.management.ManagementFactory;
+
+import static main.Assert.*;
+
+public class FrameAllocationTest {
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    // With JFR off, a warm sequential frame allocates nothing: no events, no per-boid
+    // scratch, and the grid and the hash index rebuild into the storage they already
+    // have. Until C2 compiles the step a few bytes escape, so the warm-up runs well past
+    // that. What reading the counter allocates is subtracted.
+    public void testWarmFrameDoesNotAllocate() {
+        for (SpatialIndex index : new SpatialIndex[] {new UniformGridIndex(1000, 600, 50),
+                new SpatialHashIndex(1000, 600), new SpatialHashIndex(1000, 600, true)}) {
+            FlockSimulation simulation = TestFlocks.create(1000, 600, 2000, 17);
+            simulation.setSpatialIndex(index);
+            TestFlocks.step(simulation, 200);
+            long overhead = Long.MAX_VALUE;
+            long allocated = Long.MAX_VALUE;
+            for (int frame = 0; frame < 30; frame++) {
+                long before = allocatedBytes();
+                overhead = Math.min(overhead, allocatedBytes() - before);
+                before = allocatedBytes();
+                simulation.update();
+                allocated = Math.min(allocated, allocatedBytes() - before);
+            }
+            assertEquals("bytes allocated by a warm frame on " + index.getName(), 0, allocated - overhead);
+        }
+    }
+}
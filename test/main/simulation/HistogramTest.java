@@ -0,0 +1,146 @@
+package main.simulation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static main.Assert.*;
+
+// Percentiles are nearest-rank: the smallest recorded value with at least p% of the
+// samples at or below it, reported as the top of its bucket. Buckets are exact below 128
+// and 1/64 of their lower bound wide above, so a report is never below the true value
+// and never more than 1/64 (about 1.6%) above it.
+public class HistogramTest {
+
+    public void testEmptyHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals("count", 0, histogram.getCount());
+        assertEquals("max", 0, histogram.getMax());
+        assertSame("mean", 0, histogram.getMean());
+        assertEquals("p50", 0, histogram.valueAtPercentile(50));
+        assertEquals("p100", 0, histogram.valueAtPercentile(100));
+    }
+
+    // The top of the sample's bucket is capped at the maximum, so one sample reports
+    // exactly, whatever its size.
+    public void testSingleSample() {
+        for (long value : new long[] {0, 1, 127, 128, 1000, 123_456_789L}) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            assertEquals(value + ": count", 1, histogram.getCount());
+            assertSame(value + ": mean", value, histogram.getMean());
+            for (double percentile : new double[] {0, 1, 50, 99.9, 100}) {
+                assertEquals(value + ": p" + percentile, value, histogram.valueAtPercentile(percentile));
+            }
+        }
+    }
+
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 128; value++) {
+            histogram.record(value);
+        }
+        for (int rank = 1; rank <= 128; rank++) {
+            double percentile = rank * 100.0 / 128;
+            assertEquals("p" + percentile, rank - 1, histogram.valueAtPercentile(percentile));
+        }
+    }
+
+    // 128 and 129 share a bucket, 130 starts the next; from 256 buckets are four wide.
+    public void testBucketBoundaries() {
+        assertEquals("128", 129, lowerOfTwo(128));
+        assertEquals("129", 129, lowerOfTwo(129));
+        assertEquals("130", 131, lowerOfTwo(130));
+        assertEquals("255", 255, lowerOfTwo(255));
+        assertEquals("256", 259, lowerOfTwo(256));
+        assertEquals("259", 259, lowerOfTwo(259));
+        assertEquals("260", 263, lowerOfTwo(260));
+        for (int shift = 7; shift < 62; shift++) {
+            long low = 1L << shift;
+            long width = 1L << (shift - 6);
+            assertEquals("2^" + shift, low + width - 1, lowerOfTwo(low));
+            assertEquals("2^" + shift + " + width", low + 2 * width - 1, lowerOfTwo(low + width));
+        }
+    }
+
+    // Every non-negative long has a bucket; the largest reports as itself.
+    public void testLargestValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(Long.MAX_VALUE - 1);
+        histogram.record(1L << 62);
+        assertEquals("max", Long.MAX_VALUE, histogram.getMax());
+        assertEquals("p100", Long.MAX_VALUE, histogram.valueAtPercentile(100));
+        assertEquals("p50", Long.MAX_VALUE, histogram.valueAtPercentile(50));
+        assertEquals("p10", (1L << 62) + (1L << 56) - 1, histogram.valueAtPercentile(10));
+        assertThrows("negative", IllegalArgumentException.class, () -> histogram.record(-1));
+    }
+
+    public void testUniformPercentilesWithinError() {
+        Histogram histogram = new Histogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+            histogram.record(values[i]);
+        }
+        assertPercentilesWithinError("uniform", histogram, values);
+        assertSame("mean", 50_000.5, histogram.getMean());
+    }
+
+    // Latencies spread over several powers of two, with a long tail.
+    public void testLogNormalPercentilesWithinError() {
+        Random random = new Random(16);
+        Histogram histogram = new Histogram();
+        long[] values = new long[50_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(11 + random.nextGaussian() * 1.5);
+            histogram.record(values[i]);
+        }
+        assertPercentilesWithinError("log-normal", histogram, values);
+        assertEquals("max", Arrays.stream(values).max().getAsLong(), histogram.getMax());
+    }
+
+    // Merging per-thread histograms gives what one histogram of every sample gives.
+    public void testAddMatchesOneHistogram() {
+        Random random = new Random(17);
+        Histogram whole = new Histogram();
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(1 << 20);
+            whole.record(value);
+            (i % 3 == 0 ? first : second).record(value);
+        }
+        first.add(second);
+        assertEquals("count", whole.getCount(), first.getCount());
+        assertEquals("max", whole.getMax(), first.getMax());
+        assertSame("mean", whole.getMean(), first.getMean());
+        for (double percentile = 0; percentile <= 100; percentile += 0.5) {
+            assertEquals("p" + percentile, whole.valueAtPercentile(percentile), first.valueAtPercentile(percentile));
+        }
+        first.reset();
+        assertEquals("count after reset", 0, first.getCount());
+        assertEquals("p50 after reset", 0, first.valueAtPercentile(50));
+    }
+
+    // Reports the top of value's bucket: the lower of two samples is the median, and the
+    // larger one keeps the cap from hiding the bucket's top.
+    private static long lowerOfTwo(long value) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.valueAtPercentile(50);
+    }
+
+    private static void assertPercentilesWithinError(String what, Histogram histogram, long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double percentile : new double[] {0.1, 1, 10, 25, 50, 75, 90, 99, 99.9, 99.99, 100}) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * sorted.length));
+            long exact = sorted[(int) rank - 1];
+            long reported = histogram.valueAtPercentile(percentile);
+            String message = what + " p" + percentile + ": exact " + exact + ", reported " + reported;
+            assertTrue(message, reported >= exact);
+            assertTrue(message, reported <= exact + exact / 64);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.model.FlockState;
+import main.spatial.UniformGridIndex;
+
+import java.util.Arrays;
+
+import static main.Assert.*;
+
+public class ParallelStepTest {
+    private static FlockSimulation run(int parallelism) {
+        FlockSimulation simulation = TestFlocks.create(800, 600, 1500, 5);
+        simulation.setSpatialIndex(new UniformGridIndex(800, 600, 50));
+        simulation.setDoubleBuffered(true);
+        simulation.setParallelism(parallelism);
+        TestFlocks.step(simulation, 40);
+        return simulation;
+    }
+
+    public void testThreadCountDoesNotChangeTheFlock() {
+        FlockSimulation single = run(1);
+        for (int parallelism : new int[] {2, 3, 8}) {
+            TestFlocks.assertSameFlock(parallelism + " threads", single.getState(), run(parallelism).getState());
+        }
+    }
+
+    // Every boid reads frame t, so the order boids are stepped in can only change the
+    // rounding of the neighbor sums: reversing the slots must give the same flock.
+    public void testDoubleBufferedStepDoesNotDependOnSlotOrder() {
+        int count = 400;
+        FlockSimulation forward = TestFlocks.create(400, 300, count, 9);
+        FlockSimulation reversed = TestFlocks.create(400, 300, count, 9);
+        FlockState from = forward.getState();
+        FlockState to = reversed.getState();
+        for (int i = 0; i < count; i++) {
+            int j = count - 1 - i;
+            to.x()[j] = from.x()[i];
+            to.y()[j] = from.y()[i];
+            to.vx()[j] = from.vx()[i];
+            to.vy()[j] = from.vy()[i];
+        }
+        forward.setDoubleBuffered(true);
+        reversed.setDoubleBuffered(true);
+
+        forward.update();
+        reversed.update();
+        for (int i = 0; i < count; i++) {
+            int j = count - 1 - i;
+            assertClose("x of boid " + i, from.x()[i], to.x()[j], 1e-9);
+            assertClose("y of boid " + i, from.y()[i], to.y()[j], 1e-9);
+            assertClose("vx of boid " + i, from.vx()[i], to.vx()[j], 1e-9);
+            assertClose("vy of boid " + i, from.vy()[i], to.vy()[j], 1e-9);
+        }
+    }
+
+    private static FlockSimulation spawn(long seed, int parallelism) {
+        FlockSimulation simulation = new FlockSimulation(800, 600);
+        simulation.setParallelism(parallelism);
+        simulation.setRandomSource(new RandomSource(seed));
+        simulation.setBoidCount(3000);
+        simulation.setBoidCount(5000);
+        return simulation;
+    }
+
+    // Spawning splits one stream per fixed chunk, so a seed gives the same flock on any
+    // number of threads, both for the first spawn and for boids added later.
+    public void testSpawnDependsOnlyOnTheSeed() {
+        FlockSimulation single = spawn(11, 1);
+        for (int parallelism : new int[] {2, 3, 8}) {
+            TestFlocks.assertSameFlock(parallelism + " threads", single.getState(), spawn(11, parallelism).getState());
+        }
+    }
+
+    public void testSeedsGiveDifferentFlocks() {
+        FlockState first = spawn(11, 4).getState();
+        FlockState second = spawn(12, 4).getState();
+        assertFalse("x", Arrays.equals(first.x(), 0, first.size(), second.x(), 0, second.size()));
+        assertFalse("y", Arrays.equals(first.y(), 0, first.size(), second.y(), 0, second.size()));
+        assertFalse("vx", Arrays.equals(first.vx(), 0, first.size(), second.vx(), 0, second.size()));
+        assertFalse("vy", Arrays.equals(first.vy(), 0, first.size(), second.vy(), 0, second.size()));
+    }
+
+    public void testParallelismMustBePositive() {
+        FlockSimulation simulation = new FlockSimulation(100, 100);
+        assertThrows("zero threads", IllegalArgumentException.class, () -> simulation.setParallelism(0));
+    }
+}
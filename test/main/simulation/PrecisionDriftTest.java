@@ -0,0 +1,96 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.model.FlockState;
+import main.model.Precision;
+import main.spatial.SpatialIndexes;
+
+import static main.Assert.*;
+
+public class PrecisionDriftTest {
+    private static final String[] INDICES = {"naive", "grid", "hash"};
+
+    private static FlockSimulation run(String index, Precision precision) {
+        return run(index, precision, false);
+    }
+
+    private static FlockSimulation run(String index, Precision precision, boolean pairwise) {
+        FlockSimulation simulation = TestFlocks.create(800, 600, 1200, 24);
+        simulation.setSpatialIndex(SpatialIndexes.create(index, 800, 600));
+        simulation.setPrecision(precision);
+        simulation.setDoubleBuffered(true);
+        simulation.setPairwise(pairwise);
+        TestFlocks.step(simulation, 30);
+        return simulation;
+    }
+
+    // Every value a step stores is already on the precision's grid.
+    public void testStepsStoreRoundedValues() {
+        for (Precision precision : new Precision[] {Precision.FLOAT, Precision.FIXED16}) {
+            FlockState state = run("grid", precision).getState();
+            for (int i = 0; i < state.size(); i++) {
+                String what = precision + " boid " + i;
+                assertSame(what + " x", precision.roundPosition(state.x()[i], 800), state.x()[i]);
+                assertSame(what + " y", precision.roundPosition(state.y()[i], 600), state.y()[i]);
+                assertSame(what + " vx", precision.roundVelocity(state.vx()[i], Boid.getMaxSpeed()), state.vx()[i]);
+                assertSame(what + " vy", precision.roundVelocity(state.vy()[i], Boid.getMaxSpeed()), state.vy()[i]);
+            }
+        }
+    }
+
+    // The grid keeps float copies of reduced-precision positions; they are exact, so it
+    // finds the same neighbors at the same distances as the indices that read doubles.
+    // Each index visits them in its own order, which only moves the last bits of the
+    // double sums, and storing at reduced precision rounds that away. Sequential steps
+    // are left out: there naive and hash see boids that already moved this frame.
+    public void testIndicesAgreeAtReducedPrecision() {
+        for (Precision precision : new Precision[] {Precision.FLOAT, Precision.FIXED16}) {
+            for (boolean pairwise : new boolean[] {false, true}) {
+                String what = precision + (pairwise ? " pairwise " : " double-buffered ");
+                FlockState naive = run("naive", precision, pairwise).getState();
+                for (String index : INDICES) {
+                    TestFlocks.assertSameFlock(what + index + " vs naive", naive,
+                            run(index, precision, pairwise).getState());
+                }
+            }
+        }
+    }
+
+    public void testNoDriftFromItself() {
+        FlockSimulation first = run("grid", Precision.FIXED16);
+        PrecisionDrift drift = PrecisionDrift.between(first, run("grid", Precision.FIXED16));
+        assertSame("rms position", 0, drift.rmsPosition());
+        assertSame("max position", 0, drift.maxPosition());
+        assertSame("rms velocity", 0, drift.rmsVelocity());
+        assertSame("polarization", drift.referencePolarization(), drift.polarization());
+        assertSame("mean speed", drift.referenceMeanSpeed(), drift.meanSpeed());
+    }
+
+    // A few steps in, a float run sits well under a pixel from the double run, and the
+    // flock as a whole is indistinguishable.
+    public void testFloatDriftIsSmallAtFirst() {
+        PrecisionDrift drift = PrecisionDrift.between(run("grid", Precision.DOUBLE), run("grid", Precision.FLOAT));
+        assertTrue("rms position " + drift.rmsPosition(), drift.rmsPosition() > 0 && drift.rmsPosition() < 0.01);
+        assertClose("polarization", drift.referencePolarization(), drift.polarization(), 1e-3);
+        assertClose("mean speed", drift.referenceMeanSpeed(), drift.meanSpeed(), 1e-3);
+    }
+
+    // Boids on opposite edges are one step apart across the wrap, not a world apart.
+    public void testPositionsComparedByMinimumImage() {
+        FlockSimulation reference = TestFlocks.create(800, 600, 2, 25);
+        FlockSimulation moved = TestFlocks.create(800, 600, 2, 25);
+        reference.getState().x()[0] = 799;
+        moved.getState().x()[0] = 1;
+        reference.getState().y()[1] = 0.5;
+        moved.getState().y()[1] = 599.5;
+        PrecisionDrift drift = PrecisionDrift.between(reference, moved);
+        assertClose("max position", 2, drift.maxPosition(), 1e-9);
+        assertClose("rms position", Math.sqrt((4 + 1) / 2.0), drift.rmsPosition(), 1e-9);
+    }
+
+    public void testFlocksMustMatchInSize() {
+        assertThrows("sizes differ", IllegalArgumentException.class,
+                () -> PrecisionDrift.between(TestFlocks.create(800, 600, 10, 1), TestFlocks.create(800, 600, 11, 1)));
+    }
+}
@@ -0,0 +1,168 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.behavior.FlockBehavior;
+import main.behavior.Steering;
+import main.model.Boid;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static main.Assert.*;
+
+// Drives the runner the way BoidPanel does, without a window: commands in through
+// submit(), frames out through latest() on the calling thread.
+public class SimulationRunnerTest {
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+    private static SimulationRunner runner(FlockSimulation simulation) {
+        SimulationRunner runner = new SimulationRunner(simulation, 1000);
+        runner.start();
+        return runner;
+    }
+
+    private static Snapshot awaitSize(SimulationRunner runner, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            Snapshot snapshot = runner.latest();
+            if (snapshot.size() == size) {
+                return snapshot;
+            }
+            Thread.sleep(1);
+        }
+        fail("no snapshot of " + size + " boids");
+        return null;
+    }
+
+    private static long awaitSequencePast(SimulationRunner runner, long sequence) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            long latest = runner.latest().getSequence();
+            if (latest > sequence) {
+                return latest;
+            }
+            Thread.sleep(1);
+        }
+        fail("no snapshot after " + sequence);
+        return sequence;
+    }
+
+    // Finds the runner's thread by running a command on it.
+    private static Thread runnerThread(SimulationRunner runner) throws InterruptedException {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        runner.submit(simulation -> thread.set(Thread.currentThread()));
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (thread.get() == null && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("command ran", thread.get() != null);
+        return thread.get();
+    }
+
+    // A paused runner still applies commands and publishes the result.
+    public void testBoidCountChangeReachesSnapshots() throws InterruptedException {
+        SimulationRunner runner = runner(TestFlocks.create(400, 300, 100, 15));
+        try {
+            assertTrue("starts paused", runner.isPaused());
+            runner.submit(simulation -> simulation.setBoidCount(250));
+            awaitSize(runner, 250);
+            runner.setPaused(false);
+            runner.submit(simulation -> simulation.setBoidCount(60));
+            awaitSize(runner, 60);
+        } finally {
+            runner.stop();
+        }
+    }
+
+    public void testSequenceOnlyIncreases() throws InterruptedException {
+        SimulationRunner runner = runner(TestFlocks.create(400, 300, 200, 16));
+        try {
+            runner.setPaused(false);
+            long last = runner.latest().getSequence();
+            long first = last;
+            for (int i = 0; i < 20_000; i++) {
+                long sequence = runner.latest().getSequence();
+                assertTrue("sequence " + sequence + " after " + last, sequence >= last);
+                last = sequence;
+            }
+            assertTrue("stepped", awaitSequencePast(runner, last) > first);
+        } finally {
+            runner.stop();
+        }
+    }
+
+    // Commands run on the runner's thread and never while a step is in progress.
+    public void testCommandsRunBetweenSteps() throws InterruptedException {
+        FlockSimulation simulation = TestFlocks.create(400, 300, 200, 17);
+        AtomicBoolean inCommand = new AtomicBoolean();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicReference<Thread> stepThread = new AtomicReference<>();
+        simulation.setBehavior(new FlockBehavior() {
+            @Override
+            public void begin(Boid boid, Steering steering) {
+                stepThread.set(Thread.currentThread());
+                if (inCommand.get()) {
+                    overlaps.incrementAndGet();
+                }
+            }
+        });
+        SimulationRunner runner = runner(simulation);
+        try {
+            runner.setPaused(false);
+            AtomicInteger commandsRun = new AtomicInteger();
+            AtomicReference<Thread> commandThread = new AtomicReference<>();
+            for (int i = 0; i < 50; i++) {
+                runner.submit(s -> {
+                    inCommand.set(true);
+                    commandThread.set(Thread.currentThread());
+                    spin(200_000);
+                    inCommand.set(false);
+                    commandsRun.incrementAndGet();
+                });
+                Thread.sleep(1);
+            }
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (commandsRun.get() < 50 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals("commands run", 50, commandsRun.get());
+            assertEquals("steps during a command", 0, overlaps.get());
+            assertTrue("stepped", stepThread.get() != null);
+            assertTrue("same thread", commandThread.get() == stepThread.get());
+            assertTrue("not the caller", commandThread.get() != Thread.currentThread());
+        } finally {
+            runner.stop();
+        }
+    }
+
+    // Pausing stops the steps without ending the thread; stopping ends it, paused or not.
+    public void testPauseAndStop() throws InterruptedException {
+        for (boolean pausedWhenStopped : new boolean[] {false, true}) {
+            SimulationRunner runner = runner(TestFlocks.create(400, 300, 100, 18));
+            Thread thread = runnerThread(runner);
+            runner.setPaused(false);
+            awaitSequencePast(runner, runner.latest().getSequence());
+
+            runner.setPaused(true);
+            // The step in progress when pausing may still publish.
+            Thread.sleep(20);
+            long paused = runner.latest().getSequence();
+            Thread.sleep(50);
+            assertEquals("sequence while paused", paused, runner.latest().getSequence());
+            assertTrue("alive while paused", thread.isAlive());
+
+            runner.setPaused(pausedWhenStopped);
+            runner.stop();
+            thread.join(TIMEOUT_NANOS / 1_000_000);
+            assertFalse("alive after stop" + (pausedWhenStopped ? " while paused" : ""), thread.isAlive());
+        }
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
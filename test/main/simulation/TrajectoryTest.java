@@ -0,0 +1,161 @@
+package main.simulation;
+
+import main.TestFlocks;
+import main.model.BoidType;
+import main.model.FlockState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static main.Assert.*;
+
+// Replayed values are the recorded ones quantized to 1/256 px and 1/4096 px per step,
+// exactly: keyframes, deltas and residuals only rearrange those integers.
+public class TrajectoryTest {
+
+    // Keyframes every 4 frames, so the replay mixes both record kinds, and seeks land
+    // on and between keyframes, forward and backward.
+    public void testRoundTripThroughKeyframesAndDeltas() throws IOException {
+        FlockSimulation simulation = TestFlocks.create(600, 400, 300, 22);
+        List<FlockState> frames = new ArrayList<>();
+        Path file = record(simulation, 4, frames, 18, (frame, state) -> { });
+        try (TrajectoryPlayer player = new TrajectoryPlayer(file)) {
+            assertEquals("frames", frames.size(), player.getFrameCount());
+            assertEquals("width", 600, player.getWidth());
+            assertEquals("height", 400, player.getHeight());
+            for (int frame = 0; frame < frames.size(); frame++) {
+                assertFrame("next() to frame " + frame, frames.get(frame), player.next());
+            }
+            for (int frame : new int[] {13, 4, 7, 0, 17, 9, 10}) {
+                assertFrame("seek(" + frame + ")", frames.get(frame), player.seek(frame));
+            }
+        }
+    }
+
+    // Boids that wrap around the world or stop dead leave the predicted position, so
+    // their residuals are large; type changes ride along in the delta records.
+    public void testWrapsCrashesAndTypeChanges() throws IOException {
+        FlockSimulation simulation = TestFlocks.create(600, 400, 50, 23);
+        List<FlockState> frames = new ArrayList<>();
+        Path file = record(simulation, 100, frames, 6, (frame, state) -> {
+            state.x()[frame] = frame % 2 == 0 ? 599.9 : 0.05;
+            state.vx()[frame] = 3.5;
+            state.y()[10 + frame] = 400 - state.y()[10 + frame];
+            state.vx()[20 + frame] = 0;
+            state.vy()[20 + frame] = 0;
+            state.type()[20 + frame] = (byte) BoidType.CRASHED.ordinal();
+        });
+        try (TrajectoryPlayer player = new TrajectoryPlayer(file)) {
+            for (int frame = 0; frame < frames.size(); frame++) {
+                assertFrame("frame " + frame, frames.get(frame), player.next());
+            }
+        }
+    }
+
+    // A new boid count starts a keyframe wherever it falls.
+    public void testBoidCountChange() throws IOException {
+        FlockSimulation simulation = TestFlocks.create(600, 400, 200, 24);
+        List<FlockState> frames = new ArrayList<>();
+        Path file = record(simulation, 100, frames, 9, (frame, state) -> {
+            if (frame == 3) {
+                simulation.setBoidCount(260);
+            } else if (frame == 6) {
+                simulation.setBoidCount(120);
+            }
+        });
+        try (TrajectoryPlayer player = new TrajectoryPlayer(file)) {
+            for (int frame = 0; frame < frames.size(); frame++) {
+                assertFrame("next() to frame " + frame, frames.get(frame), player.next());
+            }
+            for (int frame : new int[] {5, 2, 8, 4}) {
+                assertFrame("seek(" + frame + ")", frames.get(frame), player.seek(frame));
+            }
+        }
+    }
+
+    // A recording that was never closed has no index and may end inside a record. The
+    // player scans the complete records and stops before the broken one.
+    public void testRecordingWithoutIndex() throws IOException {
+        FlockSimulation simulation = TestFlocks.create(600, 400, 150, 25);
+        List<FlockState> frames = new ArrayList<>();
+        Path file = record(simulation, 3, frames, 10, (frame, state) -> { });
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(offset.clear(), TrajectoryRecorder.INDEX_OFFSET_POSITION);
+            long index = offset.flip().getLong();
+            // Cut the index and the last few bytes of the last record.
+            channel.truncate(index - 7);
+            channel.write(offset.clear().putLong(0).flip(), TrajectoryRecorder.INDEX_OFFSET_POSITION);
+        }
+        try (TrajectoryPlayer player = new TrajectoryPlayer(file)) {
+            assertEquals("complete frames", frames.size() - 1, player.getFrameCount());
+            for (int frame : new int[] {8, 0, 5, 3}) {
+                assertFrame("seek(" + frame + ")", frames.get(frame), player.seek(frame));
+            }
+            assertThrows("the cut frame", IndexOutOfBoundsException.class, () -> player.seek(9));
+        }
+    }
+
+    public void testOtherFilesAreRejected() throws IOException {
+        Path file = Files.createTempFile("trajectory", ".traj");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[64]);
+        assertThrows("zeros", IOException.class, () -> new TrajectoryPlayer(file));
+    }
+
+    private interface Edit {
+        void apply(int frame, FlockState state);
+    }
+
+    // Records frames of the simulation, applying edit to the state before each frame is
+    // taken, and keeps a copy of every recorded frame.
+    private static Path record(FlockSimulation simulation, int keyframeInterval, List<FlockState> frames, int count,
+            Edit edit) throws IOException {
+        Path file = Files.createTempFile("trajectory", ".traj");
+        file.toFile().deleteOnExit();
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(file, simulation.getWidth(), simulation.getHeight(),
+                keyframeInterval)) {
+            for (int frame = 0; frame < count; frame++) {
+                if (frame > 0) {
+                    simulation.update();
+                }
+                edit.apply(frame, simulation.getState());
+                recorder.record(simulation);
+                frames.add(copy(simulation.getState()));
+            }
+        }
+        return file;
+    }
+
+    private static FlockState copy(FlockState state) {
+        FlockState copy = new FlockState(state.size());
+        for (int i = 0; i < state.size(); i++) {
+            copy.add(state.id()[i], state.x()[i], state.y()[i], state.vx()[i], state.vy()[i],
+                    BoidType.values()[state.type()[i]]);
+        }
+        return copy;
+    }
+
+    private static void assertFrame(String what, FlockState expected, Snapshot actual) {
+        assertEquals(what + ": size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(what + ": x of boid " + i, quantized(expected.x()[i], 256), actual.x()[i]);
+            assertSame(what + ": y of boid " + i, quantized(expected.y()[i], 256), actual.y()[i]);
+            assertSame(what + ": vx of boid " + i, quantized(expected.vx()[i], 4096), actual.vx()[i]);
+            assertSame(what + ": vy of boid " + i, quantized(expected.vy()[i], 4096), actual.vy()[i]);
+            assertEquals(what + ": type of boid " + i, expected.type()[i], actual.type()[i]);
+        }
+    }
+
+    private static double quantized(double value, int scale) {
+        return (double) Math.round(value * scale) / scale;
+    }
+}
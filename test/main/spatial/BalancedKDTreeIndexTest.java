@@ -0,0 +1,43 @@
+package main.spatial;
+
+import main.model.Boid;
+
+import java.util.List;
+
+public class BalancedKDTreeIndexTest {
+    public void testRangeQueriesMatchBruteForce() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 3000, 1);
+        BalancedKDTreeIndex index = new BalancedKDTreeIndex();
+        index.insertAll(boids);
+        for (double radius : new double[] {5, 50, 150}) {
+            IndexChecks.assertRangeQueriesMatch(index, boids, radius);
+        }
+    }
+
+    // Single inserts only mark the tree dirty; the first query builds it.
+    public void testSingleInsertsBuildOnFirstQuery() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 500, 2);
+        BalancedKDTreeIndex index = new BalancedKDTreeIndex();
+        for (Boid boid : boids) {
+            index.insert(boid);
+        }
+        IndexChecks.assertRangeQueriesMatch(index, boids, 50);
+    }
+
+    public void testStackedBoids() {
+        List<Boid> boids = IndexChecks.stacked(200, 1000, 600);
+        BalancedKDTreeIndex index = new BalancedKDTreeIndex();
+        index.insertAll(boids);
+        IndexChecks.assertRangeQueriesMatch(index, boids, 1);
+    }
+
+    public void testFewerBoidsThanALeaf() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 3, 3);
+        BalancedKDTreeIndex index = new BalancedKDTreeIndex();
+        index.insertAll(boids);
+        IndexChecks.assertRangeQueriesMatch(index, boids, 2000);
+        index.clear();
+        index.insertAll(boids.subList(0, 1));
+        IndexChecks.assertRangeQueriesMatch(index, boids.subList(0, 1), 2000);
+    }
+}
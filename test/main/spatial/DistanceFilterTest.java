@@ -0,0 +1,118 @@
+package main.spatial;
+
+import java.util.Random;
+
+import static main.Assert.*;
+
+// Every filter must keep the same slots with bitwise the same distances as the scalar
+// loop. The vector filter is only loaded under just test-simd; under just test only
+// the scalar filter is listed and the comparisons check it against itself.
+public class DistanceFilterTest {
+    private static final int SLOTS = 300;
+
+    public void testFiltersMatchScalarOnDoubles() {
+        DistanceFilter scalar = DistanceFilters.get("scalar");
+        Random random = new Random(23);
+        for (String name : DistanceFilters.names()) {
+            DistanceFilter filter = DistanceFilters.get(name);
+            for (int round = 0; round < 2000; round++) {
+                double[] xs = new double[SLOTS];
+                double[] ys = new double[SLOTS];
+                double x = random.nextDouble() * 200;
+                double y = random.nextDouble() * 200;
+                double radius = 1 + random.nextDouble() * 60;
+                fill(random, xs, ys, x, y, radius);
+                int from = random.nextInt(SLOTS);
+                int to = from + random.nextInt(Math.min(70, SLOTS - from) + 1);
+                double radiusSquared = boundary(random, xs, ys, from, to, x, y, radius);
+                int[] expectedHits = new int[to - from + DistanceFilter.PADDING];
+                double[] expectedDistances = new double[to - from + DistanceFilter.PADDING];
+                int[] hits = new int[to - from + DistanceFilter.PADDING];
+                double[] distances = new double[to - from + DistanceFilter.PADDING];
+                int expected = scalar.filter(xs, ys, from, to, x, y, radiusSquared, expectedHits, expectedDistances);
+                int found = filter.filter(xs, ys, from, to, x, y, radiusSquared, hits, distances);
+                assertHits(name + " doubles, round " + round, expected, expectedHits, expectedDistances,
+                        found, hits, distances);
+            }
+        }
+    }
+
+    // The float overload widens to double, so it must also agree with the double overload
+    // on the same, float-exact positions.
+    public void testFiltersMatchScalarOnFloats() {
+        DistanceFilter scalar = DistanceFilters.get("scalar");
+        Random random = new Random(24);
+        for (String name : DistanceFilters.names()) {
+            DistanceFilter filter = DistanceFilters.get(name);
+            for (int round = 0; round < 2000; round++) {
+                double[] xs = new double[SLOTS];
+                double[] ys = new double[SLOTS];
+                double x = random.nextDouble() * 200;
+                double y = random.nextDouble() * 200;
+                double radius = 1 + random.nextDouble() * 60;
+                fill(random, xs, ys, x, y, radius);
+                float[] floatXs = new float[SLOTS];
+                float[] floatYs = new float[SLOTS];
+                for (int i = 0; i < SLOTS; i++) {
+                    floatXs[i] = (float) xs[i];
+                    floatYs[i] = (float) ys[i];
+                    xs[i] = floatXs[i];
+                    ys[i] = floatYs[i];
+                }
+                int from = random.nextInt(SLOTS);
+                int to = from + random.nextInt(Math.min(70, SLOTS - from) + 1);
+                double radiusSquared = boundary(random, xs, ys, from, to, x, y, radius);
+                int[] expectedHits = new int[to - from + DistanceFilter.PADDING];
+                double[] expectedDistances = new double[to - from + DistanceFilter.PADDING];
+                int[] hits = new int[to - from + DistanceFilter.PADDING];
+                double[] distances = new double[to - from + DistanceFilter.PADDING];
+                int expected = scalar.filter(xs, ys, from, to, x, y, radiusSquared, expectedHits, expectedDistances);
+                int found = filter.filter(floatXs, floatYs, from, to, x, y, radiusSquared, hits, distances);
+                assertHits(name + " floats, round " + round, expected, expectedHits, expectedDistances,
+                        found, hits, distances);
+            }
+        }
+    }
+
+    public void testUnknownFilterIsRejected() {
+        assertThrows("no such filter", IllegalArgumentException.class, () -> DistanceFilters.get("gpu"));
+    }
+
+    // A mix of candidates well inside, well outside, on the circle and just past it, so
+    // the comparison is decided by the last bit of the distance for some of them.
+    private static void fill(Random random, double[] xs, double[] ys, double x, double y, double radius) {
+        for (int i = 0; i < xs.length; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = switch (random.nextInt(4)) {
+                case 0 -> random.nextDouble() * radius;
+                case 1 -> radius + random.nextDouble() * radius;
+                case 2 -> radius;
+                default -> Math.nextUp(radius);
+            };
+            xs[i] = x + Math.cos(angle) * distance;
+            ys[i] = y + Math.sin(angle) * distance;
+        }
+    }
+
+    // Half the time the squared distance of one of the candidates, so that candidate and
+    // any at the same distance sit exactly on the boundary.
+    private static double boundary(Random random, double[] xs, double[] ys, int from, int to, double x, double y,
+                                   double radius) {
+        if (from == to || random.nextBoolean()) {
+            return radius * radius;
+        }
+        int i = from + random.nextInt(to - from);
+        double dx = x - xs[i];
+        double dy = y - ys[i];
+        return dx * dx + dy * dy;
+    }
+
+    private static void assertHits(String what, int expected, int[] expectedHits, double[] expectedDistances,
+                                   int found, int[] hits, double[] distances) {
+        assertEquals(what + ": hits", expected, found);
+        for (int i = 0; i < expected; i++) {
+            assertEquals(what + ": hit " + i, expectedHits[i], hits[i]);
+            assertSame(what + ": distance of hit " + i, expectedDistances[i], distances[i]);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package main.spatial;
+
+import main.model.Boid;
+import main.model.BoidType;
+import main.model.FlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static main.Assert.*;
+
+// Brute-force references for the spatial index tests.
+final class IndexChecks {
+    private IndexChecks() {
+    }
+
+    // Half the boids spread over the world, half in a tight cluster, so tests see both
+    // sparse cells and crowded ones. Positions stay inside [0, width) x [0, height).
+    static List<Boid> scatter(int width, int height, int count, long seed) {
+        Random random = new Random(seed);
+        FlockState state = new FlockState(count);
+        List<Boid> boids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double x = i % 2 == 0 ? width * 0.3 + random.nextGaussian() * 20 : random.nextDouble() * width;
+            double y = i % 2 == 0 ? height * 0.6 + random.nextGaussian() * 20 : random.nextDouble() * height;
+            x = Math.max(0, Math.min(Math.nextDown((double) width), x));
+            y = Math.max(0, Math.min(Math.nextDown((double) height), y));
+            state.add(i, x, y, random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1, BoidType.STANDARD);
+            boids.add(new Boid(state, i));
+        }
+        return boids;
+    }
+
+    // Boids stacked on a handful of points, which defeats median splits and quadrant
+    // subdivision alike.
+    static List<Boid> stacked(int count, double width, double height) {
+        FlockState state = new FlockState(count);
+        List<Boid> boids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double x = (i % 3) * width / 3 + 10;
+            double y = (i % 3) * height / 3 + 10;
+            state.add(i, x, y, 0, 0, BoidType.STANDARD);
+            boids.add(new Boid(state, i));
+        }
+        return boids;
+    }
+
+    // Neighbor id to squared distance, by minimum image when width and height are positive.
+    static TreeMap<Integer, Double> bruteForce(List<Boid> boids, Boid target, double radius, double width,
+                                               double height) {
+        TreeMap<Integer, Double> expected = new TreeMap<>();
+        for (Boid other : boids) {
+            if (other.getId() == target.getId()) {
+                continue;
+            }
+            double dx = target.getX() - other.getX();
+            double dy = target.getY() - other.getY();
+            if (width > 0) {
+                if (dx > width / 2) dx -= width;
+                else if (dx < -width / 2) dx += width;
+                if (dy > height / 2) dy -= height;
+                else if (dy < -height / 2) dy += height;
+            }
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radius * radius) {
+                expected.put(other.getId(), distanceSquared);
+            }
+        }
+        return expected;
+    }
+
+    static TreeMap<Integer, Double> query(NeighborSource index, Boid target, double radius) {
+        TreeMap<Integer, Double> found = new TreeMap<>();
+        index.forEachNeighbor(target, radius, (neighbor, distanceSquared) -> {
+            Double previous = found.put(neighbor.getId(), distanceSquared);
+            assertTrue(index.getName() + " reported boid " + neighbor.getId() + " twice to " + target.getId(),
+                    previous == null);
+        });
+        return found;
+    }
+
+    static void assertRangeQueriesMatch(SpatialIndex index, List<Boid> boids, double radius) {
+        for (Boid target : boids) {
+            assertEquals(index.getName() + " neighbors of " + target.getId() + " within " + radius,
+                    bruteForce(boids, target, radius, 0, 0), query(index, target, radius));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package main.spatial;
+
+import main.behavior.BehaviorStrategy;
+import main.behavior.Steering;
+import main.model.Boid;
+import main.simulation.Forces;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static main.Assert.*;
+
+public class KNearestTest {
+
+    public void testFindKNearestMatchesSortedBruteForce() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 13);
+        for (String name : SpatialIndexes.names()) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            for (int k : new int[] {1, 7, 30}) {
+                for (double radius : new double[] {20, 150}) {
+                    for (int t = 0; t < boids.size(); t += 7) {
+                        Boid target = boids.get(t);
+                        assertNearest(name + " k=" + k + " r=" + radius + " of " + target.getId(),
+                                IndexChecks.bruteForce(boids, target, radius, 0, 0), k,
+                                index.findKNearest(target, radius, k));
+                    }
+                }
+            }
+        }
+    }
+
+    // A heap reused across queries and indices must not keep neighbors of the last one.
+    public void testHeapIsReusedBetweenQueries() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 800, 15);
+        NeighborHeap heap = new NeighborHeap(5);
+        for (String name : SpatialIndexes.names()) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            for (Boid target : boids) {
+                index.collectNearest(target, 25, heap);
+                assertNearest(name + " reused heap, neighbors of " + target.getId(),
+                        IndexChecks.bruteForce(boids, target, 25, 0, 0), 5, heap.toSortedList());
+            }
+        }
+    }
+
+    // With a cap the behavior sees the k nearest neighbors inside the radius, nearest first.
+    public void testSteeringCapFeedsNearestFirst() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 14);
+        Recorder recorder = new Recorder();
+        Steering steering = new Steering();
+        steering.setMaxNeighbors(7);
+        for (String name : SpatialIndexes.names()) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            for (int t = 0; t < boids.size(); t += 11) {
+                Boid target = boids.get(t);
+                recorder.seen.clear();
+                steering.begin(target, recorder);
+                steering.gather(index, 60);
+                String what = name + " capped neighbors of " + target.getId();
+                TreeMap<Integer, Double> expected = IndexChecks.bruteForce(boids, target, 60, 0, 0);
+                assertEquals(what + " count", Math.min(7, expected.size()), recorder.seen.size());
+                for (int i = 1; i < recorder.distances.size(); i++) {
+                    assertTrue(what + " nearest first",
+                            recorder.distances.get(i - 1) <= recorder.distances.get(i));
+                }
+                assertNearest(what, expected, 7, recorder.seen);
+                recorder.distances.clear();
+            }
+        }
+    }
+
+    public void testCapacityMustBePositive() {
+        assertThrows("k = 0", IllegalArgumentException.class, () -> new NeighborHeap(0));
+    }
+
+    // Ties make the ids ambiguous, so the kept distances are compared with the k smallest
+    // brute-force distances, and every kept boid must be a true neighbor.
+    private static void assertNearest(String what, Map<Integer, Double> expected, int k, List<Boid> found) {
+        List<Double> expectedDistances = new ArrayList<>(expected.values());
+        expectedDistances.sort(null);
+        expectedDistances = expectedDistances.subList(0, Math.min(k, expectedDistances.size()));
+        List<Double> foundDistances = new ArrayList<>();
+        for (Boid neighbor : found) {
+            assertTrue(what + " kept " + neighbor.getId(), expected.containsKey(neighbor.getId()));
+            foundDistances.add(expected.get(neighbor.getId()));
+        }
+        assertEquals(what, expectedDistances, foundDistances);
+    }
+
+    private static final class Recorder implements BehaviorStrategy {
+        final List<Boid> seen = new ArrayList<>();
+        final List<Double> distances = new ArrayList<>();
+
+        @Override
+        public Forces calculateForces(Boid boid, List<Boid> neighbors) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void accumulate(Boid boid, Boid neighbor, double distanceSquared, Steering steering) {
+            seen.add(neighbor);
+            distances.add(distanceSquared);
+        }
+    }
+}
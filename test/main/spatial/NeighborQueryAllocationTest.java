@@ -0,0 +1,36 @@
+package main.spatial;
+
+import main.model.Boid;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static main.Assert.*;
+
+public class NeighborQueryAllocationTest {
+    private long visited;
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    // Once warm, a pass of forEachNeighbor over every boid allocates nothing; the few
+    // bytes allowed cover the measurement itself.
+    public void testForEachNeighborDoesNotAllocate() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 2000, 1);
+        NeighborVisitor visitor = (neighbor, distanceSquared) -> visited++;
+        for (String name : SpatialIndexes.names()) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            long allocated = Long.MAX_VALUE;
+            for (int pass = 0; pass < 30; pass++) {
+                long before = allocatedBytes();
+                for (Boid boid : boids) {
+                    index.forEachNeighbor(boid, 50, visitor);
+                }
+                allocated = Math.min(allocated, allocatedBytes() - before);
+            }
+            assertTrue(name + " allocated " + allocated + " bytes for " + boids.size() + " queries", allocated < 1024);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package main.spatial;
+
+import main.model.Boid;
+import main.model.BoidType;
+import main.model.FlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static main.Assert.*;
+
+public class PeriodicIndexTest {
+    private static final String[] PERIODIC = {"naive", "hash", "grid"};
+
+    public void testMinimumImageMatchesBruteForce() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 2000, 12);
+        for (String name : PERIODIC) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600, true);
+            assertTrue(name + " is periodic", index.isPeriodic());
+            index.insertAll(boids);
+            for (double radius : new double[] {10, 50, 120}) {
+                assertWrappedQueriesMatch(index, boids, radius);
+            }
+        }
+    }
+
+    // Boids hugging every edge and corner, where each neighbor lies across the wrap.
+    public void testNeighborsAcrossTheWrap() {
+        List<Boid> boids = corners(1000, 600);
+        for (String name : PERIODIC) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600, true);
+            index.insertAll(boids);
+            assertWrappedQueriesMatch(index, boids, 30);
+            TreeMap<Integer, Double> found = IndexChecks.query(index, boids.get(0), 30);
+            assertEquals(name + " neighbors of the corner at the origin", 3, found.size());
+        }
+    }
+
+    // Each neighbor is reported at its minimum image: the same point on the torus, at
+    // the reported distance from the querying boid.
+    public void testImagePositions() {
+        List<Boid> boids = corners(1000, 600);
+        boids.addAll(IndexChecks.scatter(1000, 600, 300, 13));
+        for (String name : PERIODIC) {
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600, true);
+            index.insertAll(boids);
+            for (Boid target : boids) {
+                index.forEachNeighbor(target, 40, new NeighborVisitor() {
+                    @Override
+                    public void visit(Boid neighbor, double distanceSquared) {
+                        fail(name + " reported " + neighbor.getId() + " without its image");
+                    }
+
+                    @Override
+                    public void visit(Boid neighbor, double imageX, double imageY, double distanceSquared) {
+                        String what = name + " image of " + neighbor.getId() + " seen from " + target.getId();
+                        assertClose(what + " x", 0, wrappedOffset(imageX - neighbor.getX(), 1000), 1e-9);
+                        assertClose(what + " y", 0, wrappedOffset(imageY - neighbor.getY(), 600), 1e-9);
+                        double dx = imageX - target.getX();
+                        double dy = imageY - target.getY();
+                        assertClose(what + " distance", dx * dx + dy * dy, distanceSquared, 1e-9);
+                    }
+                });
+            }
+        }
+    }
+
+    public void testUnsupportedIndexRejectsPeriodic() {
+        assertThrows("kdtree has no periodic mode", IllegalArgumentException.class,
+                () -> SpatialIndexes.create("kdtree", 1000, 600, true));
+    }
+
+    private static void assertWrappedQueriesMatch(SpatialIndex index, List<Boid> boids, double radius) {
+        for (Boid target : boids) {
+            TreeMap<Integer, Double> expected = IndexChecks.bruteForce(boids, target, radius, 1000, 600);
+            TreeMap<Integer, Double> found = IndexChecks.query(index, target, radius);
+            String what = index.getName() + " neighbors of " + target.getId() + " within " + radius;
+            assertEquals(what, expected.keySet(), found.keySet());
+            for (int id : expected.keySet()) {
+                assertClose(what + ", distance to " + id, expected.get(id), found.get(id), 1e-9);
+            }
+        }
+    }
+
+    private static List<Boid> corners(double width, double height) {
+        double[][] points = {{2, 3}, {width - 4, 5}, {6, height - 2}, {width - 1, height - 7},
+                {width / 2, 1}, {width / 2, height - 1}, {0, height / 2}, {Math.nextDown(width), height / 2}};
+        FlockState state = new FlockState(points.length);
+        List<Boid> boids = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            state.add(10_000 + i, points[i][0], points[i][1], 0, 0, BoidType.STANDARD);
+            boids.add(new Boid(state, i));
+        }
+        return boids;
+    }
+
+    // Distance from zero to the nearest multiple of the period.
+    private static double wrappedOffset(double offset, double period) {
+        return offset - Math.rint(offset / period) * period;
+    }
+}
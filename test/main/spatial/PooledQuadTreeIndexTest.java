@@ -0,0 +1,47 @@
+package main.spatial;
+
+import main.model.Boid;
+
+import java.util.List;
+
+import static main.Assert.*;
+
+public class PooledQuadTreeIndexTest {
+    public void testRangeQueriesMatchBruteForce() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 3000, 1);
+        PooledQuadTreeIndex index = new PooledQuadTreeIndex(1000, 600);
+        index.insertAll(boids);
+        for (double radius : new double[] {5, 50, 150}) {
+            IndexChecks.assertRangeQueriesMatch(index, boids, radius);
+        }
+    }
+
+    // The depth limit keeps stacked boids in one oversized leaf instead of splitting forever.
+    public void testStackedBoidsStopAtMaxDepth() {
+        List<Boid> boids = IndexChecks.stacked(200, 1000, 600);
+        PooledQuadTreeIndex index = new PooledQuadTreeIndex(1000, 600, 4, 6);
+        index.insertAll(boids);
+        IndexChecks.assertRangeQueriesMatch(index, boids, 1);
+    }
+
+    // Node and leaf arrays are reused after clear(), whatever the previous shape.
+    public void testReuseAfterClear() {
+        PooledQuadTreeIndex index = new PooledQuadTreeIndex(1000, 600);
+        List<Boid> stacked = IndexChecks.stacked(300, 1000, 600);
+        List<Boid> spread = IndexChecks.scatter(1000, 600, 1000, 4);
+        index.insertAll(stacked);
+        index.clear();
+        index.insertAll(spread);
+        IndexChecks.assertRangeQueriesMatch(index, spread, 50);
+        index.clear();
+        index.insertAll(spread.subList(0, 10));
+        IndexChecks.assertRangeQueriesMatch(index, spread.subList(0, 10), 300);
+    }
+
+    public void testRejectsInvalidLimits() {
+        assertThrows("no boids per node", IllegalArgumentException.class,
+                () -> new PooledQuadTreeIndex(100, 100, 0, 4));
+        assertThrows("negative depth", IllegalArgumentException.class,
+                () -> new PooledQuadTreeIndex(100, 100, 4, -1));
+    }
+}
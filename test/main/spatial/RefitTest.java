@@ -0,0 +1,74 @@
+package main.spatial;
+
+import main.model.Boid;
+import main.model.FlockState;
+
+import java.util.List;
+import java.util.Random;
+
+import static main.Assert.*;
+
+public class RefitTest {
+    private static final double[] STEPS = {2, 2, 10, 2, 200, 2};
+
+    // Moves every boid by up to step in each axis, clamped to [0, maxX] x [0, maxY].
+    private static void move(List<Boid> boids, double step, long seed, double maxX, double maxY) {
+        Random random = new Random(seed);
+        FlockState state = boids.get(0).getState();
+        for (Boid boid : boids) {
+            int i = boid.getIndex();
+            state.x()[i] = Math.max(0, Math.min(maxX, state.x()[i] + (random.nextDouble() * 2 - 1) * step));
+            state.y()[i] = Math.max(0, Math.min(maxY, state.y()[i] + (random.nextDouble() * 2 - 1) * step));
+        }
+    }
+
+    // Small steps take the incremental path; the 200 px step moves more than a quarter
+    // of the boids to another cell or node, which makes the indices rebuild.
+    public void testRefitMatchesBruteForceAfterMoves() {
+        for (String name : SpatialIndexes.names()) {
+            List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 6);
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            for (int round = 0; round < STEPS.length; round++) {
+                move(boids, STEPS[round], round, Math.nextDown(1000.0), Math.nextDown(600.0));
+                index.refit(boids);
+                IndexChecks.assertRangeQueriesMatch(index, boids, 50);
+            }
+        }
+    }
+
+    // The grid, the kd-tree and the quadtree relocate the few boids a small step moves;
+    // after a large step, and in every other index, refit() rebuilds and says so.
+    public void testRefitReportsWhetherItWasIncremental() {
+        List<String> incremental = List.of("grid", "kdtree", "quadtree");
+        for (String name : SpatialIndexes.names()) {
+            List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 8);
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            move(boids, 0.1, 1, Math.nextDown(1000.0), Math.nextDown(600.0));
+            assertEquals(name + " after a small step", incremental.contains(name), index.refit(boids));
+            move(boids, 200, 2, Math.nextDown(1000.0), Math.nextDown(600.0));
+            assertEquals(name + " after a large step", false, index.refit(boids));
+        }
+    }
+
+    // Boids pushed onto the far edges as well. The original QuadTree never finds boids
+    // at x = width or y = height, so here a refit only has to match a fresh build.
+    public void testRefitMatchesRebuildWithBoidsOnTheEdges() {
+        for (String name : SpatialIndexes.names()) {
+            List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 7);
+            SpatialIndex index = SpatialIndexes.create(name, 1000, 600);
+            index.insertAll(boids);
+            for (int round = 0; round < STEPS.length; round++) {
+                move(boids, STEPS[round], round, 1000, 600);
+                index.refit(boids);
+                SpatialIndex fresh = SpatialIndexes.create(name, 1000, 600);
+                fresh.insertAll(boids);
+                for (Boid target : boids) {
+                    assertEquals(name + " neighbors of " + target.getId() + " in round " + round,
+                            IndexChecks.query(fresh, target, 50), IndexChecks.query(index, target, 50));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package main.spatial;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.simulation.FlockSimulation;
+
+import java.util.List;
+
+import static main.Assert.*;
+
+public class SpatialHashIndexTest {
+
+    public void testCellSizeFollowsQueryRadius() {
+        SpatialHashIndex index = new SpatialHashIndex(1000, 600);
+        index.setQueryRadius(120);
+        assertClose("cells at radius 120 split it in three", 40, index.getCellSize(), 0);
+        index.setQueryRadius(50);
+        assertClose("cells at radius 50", 50, index.getCellSize(), 0);
+        index.setQueryRadius(75);
+        assertClose("cells at radius 75 split it in two", 37.5, index.getCellSize(), 0);
+        index.setQueryRadius(30);
+        assertClose("cells at radius 30", 30, index.getCellSize(), 0);
+        index.setQueryRadius(5);
+        assertClose("cells at radius 5 stop at the floor", 16, index.getCellSize(), 0);
+    }
+
+    public void testFixedCellSizeIgnoresQueryRadius() {
+        SpatialHashIndex index = new SpatialHashIndex(1000, 600, 50.0);
+        index.setQueryRadius(120);
+        assertClose("fixed cells", 50, index.getCellSize(), 0);
+    }
+
+    public void testSimulationPassesItsRadiusOn() {
+        FlockSimulation simulation = TestFlocks.create(1000, 600, 100, 18);
+        SpatialHashIndex index = new SpatialHashIndex(1000, 600);
+        simulation.setSpatialIndex(index);
+        simulation.setNeighborRadius(40);
+        assertClose("cells after setNeighborRadius", 40, index.getCellSize(), 0);
+    }
+
+    // Queries scan 3x3 cells up to 50 and wider blocks past it, for sparse and crowded
+    // flocks alike.
+    public void testRadiusCellsFindEveryNeighbor() {
+        for (List<Boid> boids : List.of(IndexChecks.scatter(1000, 600, 500, 19), IndexChecks.stacked(3000, 1000, 600))) {
+            for (double radius : new double[] {10, 50, 150}) {
+                SpatialHashIndex index = new SpatialHashIndex(1000, 600);
+                index.setQueryRadius(radius);
+                index.insertAll(boids);
+                IndexChecks.assertRangeQueriesMatch(index, boids, radius);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package main.spatial;
+
+import main.model.Boid;
+
+import java.util.List;
+
+public class UniformGridIndexTest {
+    public void testRangeQueriesMatchBruteForce() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 3000, 1);
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        index.insertAll(boids);
+        for (double radius : new double[] {10, 50, 120}) {
+            IndexChecks.assertRangeQueriesMatch(index, boids, radius);
+        }
+    }
+
+    // Cells smaller and larger than the radius, and a world that is not a whole number of cells.
+    public void testCellSizeDoesNotChangeResults() {
+        List<Boid> boids = IndexChecks.scatter(999, 601, 1500, 2);
+        for (double cellSize : new double[] {17, 64, 333}) {
+            UniformGridIndex index = new UniformGridIndex(999, 601, cellSize);
+            index.insertAll(boids);
+            IndexChecks.assertRangeQueriesMatch(index, boids, 50);
+        }
+    }
+
+    // Boid's wraparound puts boids exactly on the far edges, at x = width or y = height.
+    public void testBoidsOnTheWorldEdges() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 400, 4);
+        double[][] edges = {{0, 0}, {1000, 0}, {0, 600}, {1000, 600}, {1000, 300}, {500, 600}};
+        for (int i = 0; i < edges.length; i++) {
+            boids.get(i).getState().x()[i] = edges[i][0];
+            boids.get(i).getState().y()[i] = edges[i][1];
+        }
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        index.insertAll(boids);
+        IndexChecks.assertRangeQueriesMatch(index, boids, 60);
+    }
+
+    public void testRebuildAfterClear() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 1000, 3);
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        index.insertAll(boids.subList(0, 500));
+        index.clear();
+        index.insertAll(boids);
+        IndexChecks.assertRangeQueriesMatch(index, boids, 50);
+    }
+}
@@ -0,0 +1,100 @@
+package main.spatial;
+
+import main.TestFlocks;
+import main.model.Boid;
+import main.model.FlockState;
+import main.simulation.FlockSimulation;
+
+import java.util.List;
+import java.util.Random;
+
+import static main.Assert.*;
+
+public class VerletNeighborListTest {
+
+    // Boids drift by up to a pixel per step and a few jump across the world, as wrapping
+    // boids do. Whether the lists are reused or rebuilt, they answer like brute force.
+    public void testListsMatchBruteForceAsBoidsMove() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 20);
+        FlockState state = boids.get(0).getState();
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        VerletNeighborList lists = new VerletNeighborList(10, 1000, 600);
+        Random random = new Random(21);
+        int rebuilds = 0;
+        for (int step = 0; step < 12; step++) {
+            if (!lists.isValid(boids, 50)) {
+                index.clear();
+                index.insertAll(boids);
+                lists.rebuild(index, boids, 50);
+                rebuilds++;
+            }
+            for (Boid target : boids) {
+                assertEquals("neighbors of " + target.getId() + " at step " + step,
+                        IndexChecks.bruteForce(boids, target, 50, 0, 0), IndexChecks.query(lists, target, 50));
+            }
+            for (int i = 0; i < state.size(); i++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                state.x()[i] = clamp(state.x()[i] + Math.cos(angle), 1000);
+                state.y()[i] = clamp(state.y()[i] + Math.sin(angle), 600);
+            }
+            for (int jump = 0; jump < 3; jump++) {
+                int i = random.nextInt(state.size());
+                state.x()[i] = random.nextDouble() * 1000;
+            }
+        }
+        assertTrue("lists rebuilt " + rebuilds + " times in 12 steps", rebuilds > 1 && rebuilds < 12);
+    }
+
+    // Stepping in place moves a boid after isValid() has measured it, so by the time it is
+    // queried it can be past skin / 2 from where its list was built.
+    public void testTargetThatMovedDuringTheFrame() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 1500, 22);
+        FlockState state = boids.get(0).getState();
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        index.insertAll(boids);
+        VerletNeighborList lists = new VerletNeighborList(10, 1000, 600);
+        lists.rebuild(index, boids, 50);
+        assertTrue("lists valid before anything moved", lists.isValid(boids, 50));
+        for (int i = 0; i < state.size(); i += 10) {
+            double x = state.x()[i];
+            state.x()[i] = clamp(x + 12, 1000);
+            Boid target = boids.get(i);
+            assertEquals("neighbors of " + target.getId() + " after it moved 12 px",
+                    IndexChecks.bruteForce(boids, target, 50, 0, 0), IndexChecks.query(lists, target, 50));
+            state.x()[i] = x;
+        }
+    }
+
+    public void testLargerRadiusIsRefused() {
+        List<Boid> boids = IndexChecks.scatter(1000, 600, 100, 23);
+        UniformGridIndex index = new UniformGridIndex(1000, 600, 50);
+        index.insertAll(boids);
+        VerletNeighborList lists = new VerletNeighborList(10, 1000, 600);
+        lists.rebuild(index, boids, 50);
+        assertThrows("radius beyond the lists", IllegalArgumentException.class,
+                () -> lists.forEachNeighbor(boids.get(0), 61, (neighbor, distanceSquared) -> { }));
+        assertFalse("lists for another radius", lists.isValid(boids, 40));
+    }
+
+    // Sequential steps from the lists land close to steps from the grid: the same
+    // neighbors, visited in a different order.
+    public void testSimulationWithSkinFollowsPlainIndex() {
+        FlockSimulation lists = TestFlocks.create(1000, 600, 1500, 24);
+        FlockSimulation plain = TestFlocks.create(1000, 600, 1500, 24);
+        lists.setSpatialIndex(new UniformGridIndex(1000, 600, 50));
+        plain.setSpatialIndex(new UniformGridIndex(1000, 600, 50));
+        lists.setNeighborSkin(10);
+        lists.update();
+        plain.update();
+        for (int i = 0; i < plain.getState().size(); i++) {
+            assertClose("x of boid " + i, plain.getState().x()[i], lists.getState().x()[i], 1e-9);
+            assertClose("y of boid " + i, plain.getState().y()[i], lists.getState().y()[i], 1e-9);
+        }
+        TestFlocks.step(lists, 10);
+        assertTrue("lists rebuilt every frame", lists.getNeighborListBuilds() < 11);
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(Math.nextDown(max), value));
+    }
+}